@@ -0,0 +1,209 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.MessageProducer;
+import io.spoud.kafka.PartitionRebalancer;
+import io.spoud.kafka.ProbeVariant;
+import io.spoud.kafka.VariantProducer;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.spoud.MetricService.TAG_BROKER;
+import static io.spoud.MetricService.TAG_BROKER_RACK;
+import static io.spoud.MetricService.TAG_FROM_RACK;
+import static io.spoud.MetricService.TAG_RACK;
+import static io.spoud.MetricService.TAG_TO_RACK;
+
+/**
+ * Sends probes with different acks settings side by side to the same partition of each broker. As all modes share
+ * the same leader and network path, the difference between the ack latency with `acks=all` and `acks=1` is the time
+ * the followers need to replicate the probe. This delta is exported per broker, so that a slow follower shows up as a
+ * growing delta on the brokers whose partitions it replicates.
+ */
+@ApplicationScoped
+public class AcksComparisonService {
+    public static final String ACKS_ACK_METER_NAME = "synth-client.acks.ack.latency";
+    public static final String ACKS_E2E_METER_NAME = "synth-client.acks.e2e.latency";
+    public static final String ACKS_RECORDS_FAILED_METER_NAME = "synth-client.acks.records-failed";
+    public static final String REPLICATION_DELTA_METER_NAME = "synth-client.acks.replication-delta";
+
+    public static final String TAG_ACKS = "acks";
+
+    static final String MODE_LEADER = "1";
+    static final String MODE_ALL = "all";
+    static final String MODE_ALL_IDEMPOTENT = "all-idempotent";
+
+    private final SynthClientConfig config;
+    private final MessageProducer messageProducer;
+    private final KafkaSynthClient kafkaSynthClient;
+    private final PartitionRebalancer partitionRebalancer;
+    private final ProbeVariantRegistry probeVariantRegistry;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AcksProbe> probesByMode = new LinkedHashMap<>();
+    private final Set<String> brokersWithDeltaGauge = ConcurrentHashMap.newKeySet();
+
+    public AcksComparisonService(SynthClientConfig config,
+                                 MessageProducer messageProducer,
+                                 KafkaSynthClient kafkaSynthClient,
+                                 PartitionRebalancer partitionRebalancer,
+                                 ProbeVariantRegistry probeVariantRegistry,
+                                 MetricService metricService,
+                                 MeterRegistry meterRegistry) {
+        this.config = config;
+        this.messageProducer = messageProducer;
+        this.kafkaSynthClient = kafkaSynthClient;
+        this.partitionRebalancer = partitionRebalancer;
+        this.probeVariantRegistry = probeVariantRegistry;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the mode is not supported
+     */
+    static ProbeVariant variant(String mode) {
+        var overrides = switch (mode) {
+            case "0", MODE_LEADER, MODE_ALL -> Map.<String, Object>of(
+                    ProducerConfig.ACKS_CONFIG, mode,
+                    ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+            case MODE_ALL_IDEMPOTENT -> Map.<String, Object>of(
+                    ProducerConfig.ACKS_CONFIG, "all",
+                    ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            default -> throw new IllegalArgumentException("Unknown acks mode " + mode);
+        };
+        return new ProbeVariant("acks-" + mode, overrides, Tags.of(TAG_ACKS, mode));
+    }
+
+    @Startup
+    void start() {
+        if (!config.acksComparison().enabled()) {
+            return;
+        }
+        for (var mode : config.acksComparison().modes()) {
+            var variant = variant(mode.trim());
+            Log.infof("Starting acks probe %s", variant.name());
+            var probe = new AcksProbe(messageProducer.createVariantProducer(variant));
+            probeVariantRegistry.register(variant.name(), probe::recordE2eLatency);
+            probesByMode.put(mode.trim(), probe);
+        }
+    }
+
+    @Shutdown
+    void stop() {
+        probesByMode.values().forEach(probe -> {
+            probeVariantRegistry.unregister(probe.producer.getVariant().name());
+            probe.producer.close();
+        });
+        probesByMode.clear();
+    }
+
+    @Scheduled(every = "1s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void produceMessages() {
+        if (probesByMode.isEmpty() || kafkaSynthClient.isPaused() || partitionRebalancer.isInitialRefreshPending()) {
+            return;
+        }
+        var random = ThreadLocalRandom.current();
+        for (var partitions : partitionRebalancer.getPartitionsByBroker().values()) {
+            if (partitions.isEmpty()) {
+                continue;
+            }
+            // all modes use the same partition, so that they only differ in the acks setting
+            var partition = partitions.getFirst();
+            for (int i = 0; i < config.acksComparison().messagesPerSecond(); i++) {
+                for (var probe : probesByMode.values()) {
+                    try {
+                        probe.producer.send(partition, random.nextLong(), kafkaSynthClient.nextPayload(), probe::onAck);
+                    } catch (Exception e) {
+                        Log.debugf(e, "Failed to send acks probe %s", probe.producer.getVariant().name());
+                        probe.failed.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return p99 ack latency with acks=all minus p99 ack latency with acks=1 for the given broker, NaN if unknown
+     */
+    double getReplicationDelta(String broker) {
+        var leaderOnly = probesByMode.get(MODE_LEADER);
+        var all = probesByMode.containsKey(MODE_ALL) ? probesByMode.get(MODE_ALL) : probesByMode.get(MODE_ALL_IDEMPOTENT);
+        if (leaderOnly == null || all == null) {
+            return Double.NaN;
+        }
+        var leaderOnlyLatency = leaderOnly.ackLatencyByBroker.get(broker);
+        var allLatency = all.ackLatencyByBroker.get(broker);
+        if (leaderOnlyLatency == null || allLatency == null) {
+            return Double.NaN;
+        }
+        return MetricService.getPercentile(allLatency, 0.99) - MetricService.getPercentile(leaderOnlyLatency, 0.99);
+    }
+
+    private void ensureDeltaGauge(String broker, String brokerRack) {
+        if (brokersWithDeltaGauge.add(broker)) {
+            Gauge.builder(REPLICATION_DELTA_METER_NAME, () -> getReplicationDelta(broker))
+                    .tags(Tags.of(TAG_BROKER, broker, TAG_BROKER_RACK, brokerRack, TAG_RACK, config.rack()))
+                    .baseUnit("ms")
+                    .description("Difference between the p99 ack latency with acks=all and acks=1")
+                    .register(meterRegistry);
+        }
+    }
+
+    private class AcksProbe {
+        private final VariantProducer producer;
+        private final Tags tags;
+        private final Counter failed;
+        private final Map<String, DistributionSummary> ackLatencyByBroker = new ConcurrentHashMap<>();
+        private final Map<String, DistributionSummary> e2eLatencyByBrokerAndRack = new ConcurrentHashMap<>();
+
+        AcksProbe(VariantProducer producer) {
+            this.producer = producer;
+            this.tags = producer.getVariant().tags();
+            this.failed = Counter.builder(ACKS_RECORDS_FAILED_METER_NAME)
+                    .tags(tags.and(TAG_RACK, config.rack()))
+                    .description("Total number of acks probes that failed to produce")
+                    .register(meterRegistry);
+        }
+
+        void onAck(RecordMetadata metadata, Exception exception, double ackLatencyMs) {
+            if (exception != null) {
+                failed.increment();
+                return;
+            }
+            var broker = metricService.getBrokerOfPartition(metadata.partition());
+            var brokerRack = partitionRebalancer.getRackOfPartitionLeader(metadata.partition());
+            ackLatencyByBroker.computeIfAbsent(broker, b -> metricService.newLatencySummary(ACKS_ACK_METER_NAME,
+                            tags.and(TAG_BROKER, b).and(TAG_BROKER_RACK, brokerRack).and(TAG_RACK, config.rack()),
+                            "Ack latency of the acks probes"))
+                    .record(ackLatencyMs);
+            ensureDeltaGauge(broker, brokerRack);
+        }
+
+        void recordE2eLatency(int partition, long latencyMs, String fromRack) {
+            var broker = metricService.getBrokerOfPartition(partition);
+            var brokerRack = partitionRebalancer.getRackOfPartitionLeader(partition);
+            e2eLatencyByBrokerAndRack.computeIfAbsent(broker + "/" + fromRack, k -> metricService.newLatencySummary(ACKS_E2E_METER_NAME,
+                            tags.and(TAG_BROKER, broker).and(TAG_BROKER_RACK, brokerRack)
+                                    .and(TAG_TO_RACK, config.rack()).and(TAG_FROM_RACK, fromRack),
+                            "End-to-end latency of the acks probes"))
+                    .record(latencyMs);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.spoud;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Models the offset of the local clock from the reference time as a linear function of the monotonic clock, i.e. an
+ * offset and a drift, fitted to the most recent measurements. The offset that is actually applied follows the model
+ * and converges towards it at a bounded rate, so that the corrected time does not jump with every measurement.
+ * Only errors above the step threshold are corrected at once. All times and offsets are in nanoseconds.
+ */
+final class ClockDiscipline {
+    // crystal oscillators usually drift by less than this, larger slopes are measurement noise
+    static final double MAX_DRIFT = 500e-6;
+    private static final int MAX_MEASUREMENTS = 8;
+
+    /**
+     * @param refNanos        monotonic time at which the state was computed
+     * @param appliedOffset   offset applied at the reference time
+     * @param estimatedOffset offset estimated by the model at the reference time
+     * @param drift           estimated drift, i.e. change of the offset per nanosecond
+     * @param slewRate        maximum rate at which the applied offset converges towards the estimate
+     */
+    private record State(long refNanos, double appliedOffset, double estimatedOffset, double drift, double slewRate) {
+        double estimatedAt(long nanos) {
+            return estimatedOffset + drift * (nanos - refNanos);
+        }
+
+        double appliedAt(long nanos) {
+            // the applied offset follows the drift and closes the remaining gap at the slew rate
+            var elapsed = Math.max(0, nanos - refNanos);
+            var gap = estimatedOffset - appliedOffset;
+            var correction = Math.min(Math.abs(gap), slewRate * elapsed);
+            return appliedOffset + drift * (nanos - refNanos) + Math.copySign(correction, gap);
+        }
+    }
+
+    private final double maxSlewRate;
+    private final long stepThresholdNanos;
+    private final Deque<long[]> measurements = new ArrayDeque<>();
+    private volatile State state;
+    private volatile double residualNanos;
+
+    ClockDiscipline(double maxSlewRate, long stepThresholdNanos) {
+        this.maxSlewRate = maxSlewRate;
+        this.stepThresholdNanos = stepThresholdNanos;
+    }
+
+    /**
+     * @return the offset to add to the local clock at the given monotonic time
+     */
+    long offsetNanos(long monotonicNanos) {
+        var s = state;
+        return s == null ? 0 : Math.round(s.appliedAt(monotonicNanos));
+    }
+
+    /**
+     * @return the estimated drift of the local clock in parts per million
+     */
+    double driftPpm() {
+        var s = state;
+        return s == null ? 0 : s.drift() * 1e6;
+    }
+
+    /**
+     * @return how far the applied offset may be off from the model: the part that is not slewed yet plus the RMS
+     * deviation of the measurements from the model
+     */
+    double errorNanos(long monotonicNanos) {
+        var s = state;
+        if (s == null) {
+            return Double.NaN;
+        }
+        return Math.abs(s.estimatedAt(monotonicNanos) - s.appliedAt(monotonicNanos)) + residualNanos;
+    }
+
+    /**
+     * Adds a measurement and updates the model.
+     *
+     * @return true if the offset was stepped instead of slewed
+     */
+    synchronized boolean update(long monotonicNanos, long measuredOffsetNanos) {
+        var previous = state;
+        if (previous == null || Math.abs(measuredOffsetNanos - previous.appliedAt(monotonicNanos)) > stepThresholdNanos) {
+            measurements.clear();
+            measurements.addLast(new long[]{monotonicNanos, measuredOffsetNanos});
+            residualNanos = 0;
+            state = new State(monotonicNanos, measuredOffsetNanos, measuredOffsetNanos, 0, maxSlewRate);
+            return true;
+        }
+        measurements.addLast(new long[]{monotonicNanos, measuredOffsetNanos});
+        while (measurements.size() > MAX_MEASUREMENTS) {
+            measurements.removeFirst();
+        }
+        // least squares fit with the current time as origin, so that the intercept is the current offset
+        var n = measurements.size();
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (var m : measurements) {
+            double x = m[0] - monotonicNanos;
+            double y = m[1];
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        var denominator = n * sumXX - sumX * sumX;
+        var drift = denominator == 0 ? 0 : (n * sumXY - sumX * sumY) / denominator;
+        drift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, drift));
+        var intercept = (sumY - drift * sumX) / n;
+        double sumSquares = 0;
+        for (var m : measurements) {
+            var residual = m[1] - (intercept + drift * (m[0] - monotonicNanos));
+            sumSquares += residual * residual;
+        }
+        residualNanos = Math.sqrt(sumSquares / n);
+        state = new State(monotonicNanos, previous.appliedAt(monotonicNanos), intercept, drift, maxSlewRate);
+        return false;
+    }
+}
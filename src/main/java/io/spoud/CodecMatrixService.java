@@ -0,0 +1,175 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigCodecMatrix;
+import io.spoud.kafka.MessageProducer;
+import io.spoud.kafka.ProbeVariant;
+import io.spoud.kafka.VariantProducer;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.spoud.MetricService.TAG_FROM_RACK;
+import static io.spoud.MetricService.TAG_RACK;
+import static io.spoud.MetricService.TAG_TO_RACK;
+
+/**
+ * Probes every combination of the configured compression codecs, batch sizes and linger times side by side. Each
+ * combination gets a dedicated producer, and its ack and end-to-end latencies, compression ratio and CPU time are
+ * exported with the combination as tags. The probes use the same payloads as the regular probes, so the compression
+ * ratio depends on {@link io.spoud.config.SynthClientConfigPayload#compressibleFraction()}.
+ */
+@ApplicationScoped
+public class CodecMatrixService {
+    public static final String CODEC_ACK_METER_NAME = "synth-client.codec.ack.latency";
+    public static final String CODEC_E2E_METER_NAME = "synth-client.codec.e2e.latency";
+    public static final String CODEC_COMPRESSION_RATIO_METER_NAME = "synth-client.codec.compression-ratio";
+    public static final String CODEC_CPU_TIME_METER_NAME = "synth-client.codec.cpu-time";
+    public static final String CODEC_RECORDS_FAILED_METER_NAME = "synth-client.codec.records-failed";
+
+    public static final String TAG_CODEC = "codec";
+    public static final String TAG_BATCH_SIZE = "batchSize";
+    public static final String TAG_LINGER_MS = "lingerMs";
+
+    private final SynthClientConfig config;
+    private final MessageProducer messageProducer;
+    private final KafkaSynthClient kafkaSynthClient;
+    private final ProbeVariantRegistry probeVariantRegistry;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final List<CodecProbe> probes = new ArrayList<>();
+
+    public CodecMatrixService(SynthClientConfig config,
+                              MessageProducer messageProducer,
+                              KafkaSynthClient kafkaSynthClient,
+                              ProbeVariantRegistry probeVariantRegistry,
+                              MetricService metricService,
+                              MeterRegistry meterRegistry) {
+        this.config = config;
+        this.messageProducer = messageProducer;
+        this.kafkaSynthClient = kafkaSynthClient;
+        this.probeVariantRegistry = probeVariantRegistry;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return one variant for each combination of codec, batch size and linger time
+     */
+    static List<ProbeVariant> variants(SynthClientConfigCodecMatrix matrix) {
+        var variants = new ArrayList<ProbeVariant>();
+        for (var codec : matrix.codecs()) {
+            for (var batchSize : matrix.batchSizes()) {
+                for (var lingerMs : matrix.lingerMs()) {
+                    variants.add(new ProbeVariant("codec-%s-%d-%d".formatted(codec, batchSize, lingerMs),
+                            Map.of(ProducerConfig.COMPRESSION_TYPE_CONFIG, codec,
+                                    ProducerConfig.BATCH_SIZE_CONFIG, batchSize,
+                                    ProducerConfig.LINGER_MS_CONFIG, lingerMs),
+                            Tags.of(TAG_CODEC, codec,
+                                    TAG_BATCH_SIZE, String.valueOf(batchSize),
+                                    TAG_LINGER_MS, String.valueOf(lingerMs))));
+                }
+            }
+        }
+        return variants;
+    }
+
+    @Startup
+    void start() {
+        if (!config.codecMatrix().enabled()) {
+            return;
+        }
+        for (var variant : variants(config.codecMatrix())) {
+            Log.infof("Starting codec probe %s", variant.name());
+            var probe = new CodecProbe(messageProducer.createVariantProducer(variant));
+            probeVariantRegistry.register(variant.name(), probe::recordE2eLatency);
+            probes.add(probe);
+        }
+    }
+
+    @Shutdown
+    void stop() {
+        probes.forEach(probe -> {
+            probeVariantRegistry.unregister(probe.producer.getVariant().name());
+            probe.producer.close();
+        });
+        probes.clear();
+    }
+
+    @Scheduled(every = "1s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void produceMessages() {
+        if (probes.isEmpty() || kafkaSynthClient.isPaused()) {
+            return;
+        }
+        var random = ThreadLocalRandom.current();
+        for (int i = 0; i < config.codecMatrix().messagesPerSecond(); i++) {
+            for (var probe : probes) {
+                try {
+                    probe.producer.send(null, random.nextLong(), kafkaSynthClient.nextPayload(), probe::onAck);
+                } catch (Exception e) {
+                    Log.debugf(e, "Failed to send codec probe %s", probe.producer.getVariant().name());
+                    probe.failed.increment();
+                }
+            }
+        }
+    }
+
+    private class CodecProbe {
+        private final VariantProducer producer;
+        private final Tags tags;
+        private final DistributionSummary ackLatency;
+        private final Counter failed;
+        private final Map<String, DistributionSummary> e2eLatencyByFromRack = new ConcurrentHashMap<>();
+
+        CodecProbe(VariantProducer producer) {
+            this.producer = producer;
+            this.tags = producer.getVariant().tags();
+            this.ackLatency = metricService.newLatencySummary(CODEC_ACK_METER_NAME, tags.and(TAG_RACK, config.rack()),
+                    "Ack latency of the codec probes");
+            this.failed = Counter.builder(CODEC_RECORDS_FAILED_METER_NAME)
+                    .tags(tags.and(TAG_RACK, config.rack()))
+                    .description("Total number of codec probes that failed to produce")
+                    .register(meterRegistry);
+            Gauge.builder(CODEC_COMPRESSION_RATIO_METER_NAME, producer, VariantProducer::getCompressionRatio)
+                    .tags(tags.and(TAG_RACK, config.rack()))
+                    .description("Average ratio of compressed to uncompressed batch size")
+                    .register(meterRegistry);
+            FunctionCounter.builder(CODEC_CPU_TIME_METER_NAME, producer, p -> p.getCpuTimeNanos() / 1e9)
+                    .tags(tags.and(TAG_RACK, config.rack()))
+                    .baseUnit("seconds")
+                    .description("CPU time spent for sending the codec probes, including the producer's I/O thread")
+                    .register(meterRegistry);
+        }
+
+        void onAck(RecordMetadata metadata, Exception exception, double ackLatencyMs) {
+            if (exception != null) {
+                failed.increment();
+            } else {
+                ackLatency.record(ackLatencyMs);
+            }
+        }
+
+        void recordE2eLatency(int partition, long latencyMs, String fromRack) {
+            e2eLatencyByFromRack.computeIfAbsent(fromRack, rack -> metricService.newLatencySummary(CODEC_E2E_METER_NAME,
+                            tags.and(TAG_TO_RACK, config.rack()).and(TAG_FROM_RACK, rack),
+                            "End-to-end latency of the codec probes"))
+                    .record(latencyMs);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.spoud;
+
+import io.spoud.CommandService.AdjustPayloadSizeCommand;
+import io.spoud.CommandService.Command;
+import io.spoud.CommandService.CommandEnvelope;
+import io.spoud.CommandService.PauseCommand;
+import io.spoud.CommandService.ResumeCommand;
+import io.spoud.CommandService.SetRateCommand;
+import io.spoud.CommandService.SnapshotNowCommand;
+import io.spoud.CommandService.StartLoadStepCommand;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.UUID;
+
+/**
+ * Binary encoding of {@link CommandEnvelope}s. Layout (big endian):
+ * <pre>
+ * magic (1 byte) | version (1 byte) | id (16 bytes) | issued at, epoch millis (8 bytes)
+ * | number of target racks (2 bytes) | target racks (modified UTF-8 each) | command type (1 byte) | command fields
+ * </pre>
+ */
+final class CommandCodec {
+    private static final byte MAGIC = 'S';
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_SET_RATE = 1;
+    private static final byte TYPE_SET_PAYLOAD_SIZE = 2;
+    private static final byte TYPE_PAUSE = 3;
+    private static final byte TYPE_RESUME = 4;
+    private static final byte TYPE_START_LOAD_STEP = 5;
+    private static final byte TYPE_SNAPSHOT_NOW = 6;
+
+    private CommandCodec() {
+    }
+
+    static byte[] encode(CommandEnvelope envelope) {
+        var bytes = new ByteArrayOutputStream(64);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(envelope.id().getMostSignificantBits());
+            out.writeLong(envelope.id().getLeastSignificantBits());
+            out.writeLong(envelope.issuedAt().toEpochMilli());
+            out.writeShort(envelope.targetRacks().size());
+            for (var rack : envelope.targetRacks()) {
+                out.writeUTF(rack);
+            }
+            encodeCommand(envelope.command(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void encodeCommand(Command command, DataOutputStream out) throws IOException {
+        switch (command) {
+            case SetRateCommand c -> {
+                out.writeByte(TYPE_SET_RATE);
+                out.writeInt(c.messagesPerSecond());
+            }
+            case AdjustPayloadSizeCommand c -> {
+                out.writeByte(TYPE_SET_PAYLOAD_SIZE);
+                out.writeInt(c.newSize());
+            }
+            case PauseCommand c -> out.writeByte(TYPE_PAUSE);
+            case ResumeCommand c -> out.writeByte(TYPE_RESUME);
+            case StartLoadStepCommand c -> {
+                out.writeByte(TYPE_START_LOAD_STEP);
+                out.writeInt(c.messagesPerSecond());
+                out.writeInt(c.messageSizeBytes());
+                out.writeLong(c.duration().toMillis());
+            }
+            case SnapshotNowCommand c -> out.writeByte(TYPE_SNAPSHOT_NOW);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes do not represent a command envelope
+     */
+    static CommandEnvelope decode(byte[] bytes) {
+        if (bytes == null || bytes.length < 2 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("Not a command");
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported command version " + bytes[1]);
+        }
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2))) {
+            var id = new UUID(in.readLong(), in.readLong());
+            var issuedAt = Instant.ofEpochMilli(in.readLong());
+            var rackCount = in.readUnsignedShort();
+            var racks = new HashSet<String>();
+            for (int i = 0; i < rackCount; i++) {
+                racks.add(in.readUTF());
+            }
+            return new CommandEnvelope(id, issuedAt, racks, decodeCommand(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated command", e);
+        }
+    }
+
+    private static Command decodeCommand(DataInputStream in) throws IOException {
+        var type = in.readByte();
+        return switch (type) {
+            case TYPE_SET_RATE -> new SetRateCommand(in.readInt());
+            case TYPE_SET_PAYLOAD_SIZE -> new AdjustPayloadSizeCommand(in.readInt());
+            case TYPE_PAUSE -> new PauseCommand();
+            case TYPE_RESUME -> new ResumeCommand();
+            case TYPE_START_LOAD_STEP -> new StartLoadStepCommand(in.readInt(), in.readInt(), Duration.ofMillis(in.readLong()));
+            case TYPE_SNAPSHOT_NOW -> new SnapshotNowCommand();
+            default -> throw new IllegalArgumentException("Unknown command type " + type);
+        };
+    }
+}
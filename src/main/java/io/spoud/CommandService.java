@@ -1,62 +1,220 @@
 package io.spoud;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.CommandChannel;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Issues and handles commands that reconfigure a fleet of synth clients at runtime. Commands are exchanged in a
+ * compact binary encoding (see {@link CommandCodec}) via a dedicated control topic, so that they do not interfere with
+ * the latency measurements on the probe topic. Each command has a unique ID and is applied at most once per instance,
+ * even if it is delivered several times. Commands can be restricted to the instances of specific racks.
+ */
 @ApplicationScoped
+@Path("/commands")
+@Produces("application/json")
 public class CommandService {
 
+    public sealed interface Command permits SetRateCommand, AdjustPayloadSizeCommand, PauseCommand, ResumeCommand,
+            StartLoadStepCommand, SnapshotNowCommand {
+    }
+
+    /**
+     * Command to adjust the number of probes sent per second.
+     * @param messagesPerSecond the new rate
+     */
+    public record SetRateCommand(int messagesPerSecond) implements Command {}
+
     /**
      * Command to adjust the payload size.
      * @param newSize the new payload size
      */
-    public record AdjustPayloadSizeCommand(int newSize) {}
+    public record AdjustPayloadSizeCommand(int newSize) implements Command {}
+
+    /**
+     * Command to stop sending probes until a {@link ResumeCommand} is received.
+     */
+    public record PauseCommand() implements Command {}
+
+    /**
+     * Command to resume sending probes after a {@link PauseCommand}.
+     */
+    public record ResumeCommand() implements Command {}
 
     /**
-     * Wrapper record around all possible commands.
-     * @param adjustPayloadSize
+     * Command to run a single load test step (see {@link LoadTestService}).
      */
-    public record Command(AdjustPayloadSizeCommand adjustPayloadSize) {}
+    public record StartLoadStepCommand(int messagesPerSecond, int messageSizeBytes, Duration duration) implements Command {}
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * Command to immediately write a snapshot of the current latencies to the history database.
+     */
+    public record SnapshotNowCommand() implements Command {}
+
+    /**
+     * A command together with the information needed to route it and to deduplicate it.
+     *
+     * @param id          unique ID of the command, used to apply each command only once
+     * @param issuedAt    when the command was issued
+     * @param targetRacks racks whose instances should apply the command, empty to target all instances
+     * @param command     the actual command
+     */
+    public record CommandEnvelope(UUID id, Instant issuedAt, Set<String> targetRacks, Command command) {
+        boolean targets(String rack) {
+            return targetRacks.isEmpty() || targetRacks.contains(rack);
+        }
+    }
+
+    // number of command IDs to remember for deduplication
+    private static final int SEEN_COMMANDS_CAPACITY = 1024;
 
+    private final Map<UUID, Boolean> seenCommands = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+            return size() > SEEN_COMMANDS_CAPACITY;
+        }
+    };
+
+    private final SynthClientConfig config;
     private final KafkaSynthClient kafkaSynthClient;
+    private final LoadTestService loadTestService;
+    private final HistoryService historyService;
+    private final CommandChannel commandChannel;
 
-    public CommandService(KafkaSynthClient kafkaSynthClient) {
+    public CommandService(SynthClientConfig config,
+                          KafkaSynthClient kafkaSynthClient,
+                          LoadTestService loadTestService,
+                          HistoryService historyService,
+                          CommandChannel commandChannel) {
+        this.config = config;
         this.kafkaSynthClient = kafkaSynthClient;
+        this.loadTestService = loadTestService;
+        this.historyService = historyService;
+        this.commandChannel = commandChannel;
+    }
+
+    @Startup
+    void start() {
+        if (config.commands().enabled()) {
+            commandChannel.start(this::maybeHandleCommand);
+        }
     }
 
     /**
-     * If the given string represents a valid command, it will be handled. Else, it will be ignored.
+     * If the given bytes represent a valid command that targets this instance and has not been seen before, it will
+     * be handled. Else, it will be ignored.
      *
-     * @param string JSON-serialized command
+     * @param bytes binary-encoded command envelope
      */
-    public void maybeHandleCommand(String string) {
+    public void maybeHandleCommand(byte[] bytes) {
         try {
-            var command = objectMapper.readValue(string, Command.class);
-            Log.infof("Received command: %s", command);
-            if (command.adjustPayloadSize != null) {
-                handleAdjustPayloadSizeCommand(command.adjustPayloadSize);
+            var envelope = CommandCodec.decode(bytes);
+            if (!envelope.targets(config.rack())) {
+                Log.debugf("Ignoring command %s as it targets racks %s", envelope.id(), envelope.targetRacks());
+                return;
+            }
+            synchronized (seenCommands) {
+                if (seenCommands.putIfAbsent(envelope.id(), true) != null) {
+                    Log.debugf("Ignoring command %s as it has already been handled", envelope.id());
+                    return;
+                }
             }
-        } catch (JsonProcessingException e) {
+            Log.infof("Received command %s issued at %s: %s", envelope.id(), envelope.issuedAt(), envelope.command());
+            handleCommand(envelope.command());
+        } catch (IllegalArgumentException e) {
             Log.warn("Failed to parse command", e);
         } catch (Exception e) {
             Log.error("Failed to handle command", e);
         }
     }
 
-    public void issueCommand(Command command) {
-        try {
-            kafkaSynthClient.produceSingleMessage(objectMapper.writeValueAsString(command));
-        } catch (JsonProcessingException e) {
-            Log.error("Failed to serialize command", e);
-        }
+    /**
+     * Publishes the given command on the control topic.
+     *
+     * @param command     the command to issue
+     * @param targetRacks racks whose instances should apply the command, empty to target all instances
+     * @return the envelope that was published
+     */
+    public CommandEnvelope issueCommand(Command command, Set<String> targetRacks) {
+        var envelope = new CommandEnvelope(UUID.randomUUID(), Instant.now(), Set.copyOf(targetRacks), command);
+        commandChannel.publish(CommandCodec.encode(envelope));
+        return envelope;
+    }
+
+    @POST
+    @Path("/set-rate")
+    public CommandEnvelope issueSetRate(@QueryParam("messagesPerSecond") int messagesPerSecond,
+                                        @QueryParam("rack") List<String> racks) {
+        return issueCommand(new SetRateCommand(messagesPerSecond), Set.copyOf(racks));
+    }
+
+    @POST
+    @Path("/set-payload-size")
+    public CommandEnvelope issueSetPayloadSize(@QueryParam("messageSizeBytes") int messageSizeBytes,
+                                               @QueryParam("rack") List<String> racks) {
+        return issueCommand(new AdjustPayloadSizeCommand(messageSizeBytes), Set.copyOf(racks));
     }
 
-    private void handleAdjustPayloadSizeCommand(AdjustPayloadSizeCommand command) {
-        Log.infof("Received command to adjust payload size to %d", command.newSize);
-        kafkaSynthClient.setPayloadSize(command.newSize);
+    @POST
+    @Path("/pause")
+    public CommandEnvelope issuePause(@QueryParam("rack") List<String> racks) {
+        return issueCommand(new PauseCommand(), Set.copyOf(racks));
+    }
+
+    @POST
+    @Path("/resume")
+    public CommandEnvelope issueResume(@QueryParam("rack") List<String> racks) {
+        return issueCommand(new ResumeCommand(), Set.copyOf(racks));
+    }
+
+    @POST
+    @Path("/start-load-step")
+    public CommandEnvelope issueStartLoadStep(@QueryParam("messagesPerSecond") int messagesPerSecond,
+                                              @QueryParam("messageSizeBytes") int messageSizeBytes,
+                                              @QueryParam("duration") @DefaultValue("PT1M") Duration duration,
+                                              @QueryParam("rack") List<String> racks) {
+        return issueCommand(new StartLoadStepCommand(messagesPerSecond, messageSizeBytes, duration), Set.copyOf(racks));
+    }
+
+    @POST
+    @Path("/snapshot-now")
+    public CommandEnvelope issueSnapshotNow(@QueryParam("rack") List<String> racks) {
+        return issueCommand(new SnapshotNowCommand(), Set.copyOf(racks));
+    }
+
+    private void handleCommand(Command command) {
+        switch (command) {
+            case SetRateCommand c -> kafkaSynthClient.setMessagesPerSecond(c.messagesPerSecond());
+            case AdjustPayloadSizeCommand c -> {
+                Log.infof("Received command to adjust payload size to %d", c.newSize());
+                kafkaSynthClient.setPayloadSize(c.newSize());
+            }
+            case PauseCommand c -> kafkaSynthClient.setPaused(true);
+            case ResumeCommand c -> kafkaSynthClient.setPaused(false);
+            case StartLoadStepCommand c -> {
+                try {
+                    loadTestService.start(List.of(new LoadTestService.LoadStep(c.messagesPerSecond(), c.messageSizeBytes(), c.duration())));
+                } catch (WebApplicationException e) {
+                    Log.warnf("Cannot start load step: %s", e.getMessage());
+                }
+            }
+            case SnapshotNowCommand c -> historyService.recordSnapshot();
+        }
     }
 }
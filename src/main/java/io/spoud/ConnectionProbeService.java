@@ -0,0 +1,161 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.AdminCalls;
+import io.spoud.kafka.ConnectionProbe;
+import io.spoud.kafka.ConnectionProbe.Phase;
+import io.spoud.kafka.KafkaFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.common.Node;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.spoud.MetricService.TAG_BROKER;
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Measures how long a new client takes to connect to each broker. The regular probes reuse long-lived connections,
+ * so slow TLS handshakes, authentication or metadata requests only show up here, and these are what short-lived
+ * clients suffer from. Every interval, a fresh connection is opened to each broker (see {@link ConnectionProbe}), on a
+ * bounded thread pool so that many brokers or slow handshakes cannot pile up threads.
+ */
+@ApplicationScoped
+public class ConnectionProbeService {
+    public static final String CONNECTION_PHASE_METER_NAME = "synth-client.connection.phase.duration";
+    public static final String CONNECTION_SETUP_METER_NAME = "synth-client.connection.setup.duration";
+    public static final String CONNECTION_FAILURES_METER_NAME = "synth-client.connection.failures";
+
+    public static final String TAG_PHASE = "phase";
+
+    private final SynthClientConfig config;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final String kafkaClientId;
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<Tags, Counter> failures = new ConcurrentHashMap<>();
+    private volatile ConnectionProbe connectionProbe;
+    private ExecutorService executorService;
+
+    public ConnectionProbeService(SynthClientConfig config,
+                                  KafkaFactory kafkaFactory,
+                                  AdminClient adminClient,
+                                  AdminCalls adminCalls,
+                                  MetricService metricService,
+                                  MeterRegistry meterRegistry,
+                                  @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+        this.kafkaClientId = kafkaClientId;
+    }
+
+    @Startup
+    synchronized void start() {
+        if (!config.connectionProbes().enabled()) {
+            return;
+        }
+        try {
+            connectionProbe = new ConnectionProbe(kafkaFactory.getCommonConfig(), kafkaClientId + "-connection-probe",
+                    config.topic(), config.connectionProbes().timeout());
+        } catch (Exception e) {
+            Log.error("Failed to set up the connection probes, connection setups will not be measured", e);
+            return;
+        }
+        var unsupportedMechanism = connectionProbe.getUnsupportedSaslMechanism();
+        if (unsupportedMechanism != null) {
+            Log.warnf("SASL mechanism %s is not supported by the connection probes, only %s are. Authentication and "
+                    + "metadata will not be measured", unsupportedMechanism, ConnectionProbe.SUPPORTED_SASL_MECHANISMS);
+        }
+        executorService = Executors.newFixedThreadPool(Math.max(1, config.connectionProbes().threads()),
+                new NamedThreadFactory("connection-probe"));
+    }
+
+    @Shutdown
+    synchronized void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Scheduled(every = "${synth-client.connection-probes.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    CompletionStage<Void> probeConnections() {
+        if (connectionProbe == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return adminCalls.call("describeCluster", adminClient.describeCluster().nodes())
+                .thenCompose(this::probeAll)
+                .exceptionally(error -> {
+                    Log.warn("Failed to get the brokers for the connection probes", AdminCalls.unwrap(error));
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> probeAll(Collection<Node> nodes) {
+        var probes = new ArrayList<CompletableFuture<Void>>();
+        for (var node : nodes) {
+            probes.add(CompletableFuture.runAsync(() -> probe(node), executorService));
+        }
+        return CompletableFuture.allOf(probes.toArray(CompletableFuture[]::new));
+    }
+
+    private void probe(Node node) {
+        var broker = node.idString();
+        try {
+            var durations = connectionProbe.probe(node.host(), node.port());
+            var total = 0L;
+            for (var entry : durations.entrySet()) {
+                summary(CONNECTION_PHASE_METER_NAME, Tags.of(TAG_BROKER, broker, TAG_PHASE, entry.getKey().tag()),
+                        "Duration of a phase of setting up a new connection to the broker")
+                        .record(entry.getValue() / 1e6);
+                total += entry.getValue();
+            }
+            summary(CONNECTION_SETUP_METER_NAME, Tags.of(TAG_BROKER, broker),
+                    "Duration of setting up a new connection to the broker, from connecting until the first metadata response")
+                    .record(total / 1e6);
+            Log.debugv("Connection setup to broker {0}: {1}", broker, durations);
+        } catch (ConnectionProbe.PhaseException e) {
+            Log.warnf("Connection setup to broker %s (%s:%d) failed in phase %s", broker, node.host(), node.port(), e.getMessage());
+            failureCounter(broker, e.getPhase()).increment();
+        }
+    }
+
+    private DistributionSummary summary(String name, Tags tags, String description) {
+        return summaries.computeIfAbsent(new MeterKey(name, tags.and(TAG_RACK, config.rack())),
+                key -> metricService.newLatencySummary(key.name(), key.tags(), description));
+    }
+
+    private Counter failureCounter(String broker, Phase phase) {
+        return failures.computeIfAbsent(Tags.of(TAG_BROKER, broker, TAG_PHASE, phase.tag(), TAG_RACK, config.rack()),
+                tags -> Counter.builder(CONNECTION_FAILURES_METER_NAME)
+                        .tags(tags)
+                        .description("Number of new connections to the broker that failed, by the phase they failed in")
+                        .register(meterRegistry));
+    }
+
+    private record MeterKey(String name, Tags tags) {
+    }
+}
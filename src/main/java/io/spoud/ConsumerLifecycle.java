@@ -31,10 +31,12 @@ public class ConsumerLifecycle implements HealthCheck {
                              MetricService metricService,
                              AdvertisedListenerRepository advertisedListenerRepository,
                              TimeService timeService,
-                             CommandService commandService) {
+                             LoadTestService loadTestService,
+                             ProbeVariantRegistry probeVariantRegistry,
+                             IncidentAnalyser incidentAnalyser) {
         this.executorService = Executors.newFixedThreadPool(config.consumersCount(), new NamedThreadFactory("kafka-consumer"));
         this.consumers = IntStream.range(0, config.consumersCount())
-                .mapToObj(i -> new MessageConsumer(i, kafkaFactory, config, metricService, timeService, advertisedListenerRepository, commandService))
+                .mapToObj(i -> new MessageConsumer(i, kafkaFactory, config, metricService, timeService, advertisedListenerRepository, loadTestService, probeVariantRegistry, incidentAnalyser))
                 .toList();
     }
 
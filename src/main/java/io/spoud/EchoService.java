@@ -0,0 +1,239 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.EchoChannel;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Measures round trips to the other synth clients that do not depend on synchronized clocks. Each instance
+ * periodically publishes an echo probe on the echo topic, and every other instance reflects it with a reply that
+ * carries the time the peer received it. The round trip is then computed from the local monotonic clock alone, and
+ * half of it estimates the one-way latency via Kafka. It includes the reflect path on the peer, i.e. decoding the probe
+ * and publishing the reply, which is negligible compared to the latency via Kafka. Comparing the peer's receive time with
+ * the local send and receive times yields the offset of the peer's clock, the same way NTP does. Of the recent
+ * echoes, the one with the shortest round trip determines the offset, as it has the smallest error.
+ */
+@ApplicationScoped
+public class EchoService {
+    public static final String ROUND_TRIP_METER_NAME = "synth-client.echo.round-trip";
+    public static final String ONE_WAY_METER_NAME = "synth-client.echo.one-way";
+    public static final String PEER_CLOCK_OFFSET_METER_NAME = "synth-client.echo.peer-clock-offset";
+
+    public static final String TAG_PEER_RACK = "peerRack";
+
+    // number of recent echoes per peer rack among which the shortest round trip determines the clock offset
+    private static final int OFFSET_WINDOW = 16;
+
+    private static final byte MAGIC = 'E';
+    private static final byte VERSION = 2;
+    private static final byte TYPE_PROBE = 1;
+    private static final byte TYPE_REPLY = 2;
+
+    sealed interface Echo permits Probe, Reply {
+    }
+
+    /**
+     * @param origin      random ID of the instance that sent the probe
+     * @param originRack  rack of the instance that sent the probe
+     * @param sentNanos   monotonic time at which the probe was sent, only meaningful to the origin
+     * @param sentMicros  corrected wall clock time at which the probe was sent, microseconds since the epoch
+     */
+    record Probe(long origin, String originRack, long sentNanos, long sentMicros) implements Echo {
+    }
+
+    /**
+     * @param probe          the reflected probe
+     * @param peer           random ID of the instance that reflected the probe
+     * @param peerRack       rack of the instance that reflected the probe
+     * @param receivedMicros corrected wall clock time of the peer when it received the probe
+     */
+    record Reply(Probe probe, long peer, String peerRack, long receivedMicros) implements Echo {
+    }
+
+    /**
+     * @param roundTripNanos  time from sending the probe until receiving the reply
+     * @param peerOffsetNanos offset of the peer's clock from the local clock, positive if the peer's clock is ahead
+     */
+    record Measurement(long roundTripNanos, long peerOffsetNanos) {
+    }
+
+    private final long instanceId = ThreadLocalRandom.current().nextLong();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    private final SynthClientConfig config;
+    private final EchoChannel echoChannel;
+    private final TimeService timeService;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private volatile boolean started = false;
+
+    public EchoService(SynthClientConfig config,
+                       EchoChannel echoChannel,
+                       TimeService timeService,
+                       MetricService metricService,
+                       MeterRegistry meterRegistry) {
+        this.config = config;
+        this.echoChannel = echoChannel;
+        this.timeService = timeService;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Startup
+    void start() {
+        if (config.echo().enabled()) {
+            echoChannel.start(this::onEcho);
+            started = true;
+        }
+    }
+
+    @Scheduled(every = "${synth-client.echo.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void sendProbe() {
+        if (!started) {
+            return;
+        }
+        echoChannel.publish(encode(new Probe(instanceId, config.rack(), System.nanoTime(), timeService.currentTimeMicros())));
+    }
+
+    private void onEcho(byte[] bytes) {
+        var receivedNanos = System.nanoTime();
+        var receivedMicros = timeService.currentTimeMicros();
+        try {
+            switch (decode(bytes)) {
+                case Probe probe when probe.origin() != instanceId -> {
+                    echoChannel.publish(encode(new Reply(probe, instanceId, config.rack(), receivedMicros)));
+                }
+                case Reply reply when reply.probe().origin() == instanceId ->
+                        peers.computeIfAbsent(reply.peerRack(), Peer::new)
+                                .record(measure(reply, receivedNanos, receivedMicros));
+                default -> {
+                    // own probe or reply to another instance
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.warnf("Ignoring invalid echo probe: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * @param receivedNanos  monotonic time at which the reply was received
+     * @param receivedMicros corrected wall clock time at which the reply was received
+     */
+    static Measurement measure(Reply reply, long receivedNanos, long receivedMicros) {
+        var probe = reply.probe();
+        var roundTripNanos = Math.max(0, receivedNanos - probe.sentNanos());
+        // average of the offsets seen on the way there and on the way back, assuming both take equally long
+        var offsetMicros = ((reply.receivedMicros() - probe.sentMicros()) + (reply.receivedMicros() - receivedMicros)) / 2;
+        return new Measurement(roundTripNanos, offsetMicros * 1_000);
+    }
+
+    static byte[] encode(Echo echo) {
+        var bytes = new ByteArrayOutputStream(64);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            switch (echo) {
+                case Probe probe -> {
+                    out.writeByte(TYPE_PROBE);
+                    writeProbe(probe, out);
+                }
+                case Reply reply -> {
+                    out.writeByte(TYPE_REPLY);
+                    writeProbe(reply.probe(), out);
+                    out.writeLong(reply.peer());
+                    out.writeUTF(reply.peerRack());
+                    out.writeLong(reply.receivedMicros());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeProbe(Probe probe, DataOutputStream out) throws IOException {
+        out.writeLong(probe.origin());
+        out.writeUTF(probe.originRack());
+        out.writeLong(probe.sentNanos());
+        out.writeLong(probe.sentMicros());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes do not represent an echo probe or reply
+     */
+    static Echo decode(byte[] bytes) {
+        if (bytes == null || bytes.length < 3 || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("Not an echo probe");
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported echo version " + bytes[1]);
+        }
+        try (var in = new DataInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3))) {
+            var probe = new Probe(in.readLong(), in.readUTF(), in.readLong(), in.readLong());
+            return switch (bytes[2]) {
+                case TYPE_PROBE -> probe;
+                case TYPE_REPLY -> new Reply(probe, in.readLong(), in.readUTF(), in.readLong());
+                default -> throw new IllegalArgumentException("Unknown echo type " + bytes[2]);
+            };
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated echo probe", e);
+        }
+    }
+
+    private final class Peer {
+        private final DistributionSummary roundTrip;
+        private final DistributionSummary oneWay;
+        private final long[] roundTrips = new long[OFFSET_WINDOW];
+        private final long[] offsets = new long[OFFSET_WINDOW];
+        private int count = 0;
+        private volatile double offsetMs = Double.NaN;
+
+        private Peer(String peerRack) {
+            var tags = Tags.of(TAG_RACK, config.rack(), TAG_PEER_RACK, peerRack);
+            roundTrip = metricService.newLatencySummary(ROUND_TRIP_METER_NAME, tags,
+                    "Round trip of an echo probe to a peer and back");
+            oneWay = metricService.newLatencySummary(ONE_WAY_METER_NAME, tags,
+                    "Half of the round trip of an echo probe, independent of the clocks of both ends");
+            Gauge.builder(PEER_CLOCK_OFFSET_METER_NAME, this, p -> p.offsetMs)
+                    .tags(tags)
+                    .baseUnit("ms")
+                    .description("Offset of the peer's corrected clock from the local corrected clock")
+                    .register(meterRegistry);
+            Log.infof("Receiving echo replies from rack %s", peerRack);
+        }
+
+        private synchronized void record(Measurement measurement) {
+            roundTrip.record(measurement.roundTripNanos() / 1e6);
+            oneWay.record(measurement.roundTripNanos() / 2e6);
+            var slot = count++ % OFFSET_WINDOW;
+            roundTrips[slot] = measurement.roundTripNanos();
+            offsets[slot] = measurement.peerOffsetNanos();
+            var best = 0;
+            for (int i = 1; i < Math.min(count, OFFSET_WINDOW); i++) {
+                if (roundTrips[i] < roundTrips[best]) {
+                    best = i;
+                }
+            }
+            offsetMs = offsets[best] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.AdminCalls;
+import io.spoud.kafka.GroupProbeConsumer;
+import io.spoud.kafka.KafkaFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.spoud.MetricService.TAG_BROKER;
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Measures the latency of the group coordinator, which applications notice as slow offset commits and rebalances,
+ * but which the produce and consume probes never touch. A consumer in a dedicated probe group (see
+ * {@link GroupProbeConsumer}) commits and fetches offsets and rebalances periodically, and the durations are
+ * attributed to the broker that coordinates the group, so that coordinator hotspots become visible.
+ */
+@ApplicationScoped
+public class GroupProbeService {
+    public static final String GROUP_COMMIT_METER_NAME = "synth-client.group.commit.latency";
+    public static final String GROUP_OFFSET_FETCH_METER_NAME = "synth-client.group.offset-fetch.latency";
+    public static final String GROUP_REBALANCE_METER_NAME = "synth-client.group.rebalance.latency";
+    public static final String GROUP_JOIN_METER_NAME = "synth-client.group.join.latency";
+    public static final String GROUP_SYNC_METER_NAME = "synth-client.group.sync.latency";
+    public static final String GROUP_FAILURES_METER_NAME = "synth-client.group.failures";
+
+    public static final String TAG_OPERATION = "operation";
+
+    private static final String UNKNOWN_COORDINATOR = "unknown";
+
+    private final SynthClientConfig config;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final String kafkaClientId;
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<Tags, Counter> failures = new ConcurrentHashMap<>();
+    private volatile String coordinator = UNKNOWN_COORDINATOR;
+    private GroupProbeConsumer consumer;
+
+    public GroupProbeService(SynthClientConfig config,
+                             KafkaFactory kafkaFactory,
+                             AdminClient adminClient,
+                             AdminCalls adminCalls,
+                             MetricService metricService,
+                             MeterRegistry meterRegistry,
+                             @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+        this.kafkaClientId = kafkaClientId;
+    }
+
+    @Startup
+    synchronized void start() {
+        if (!config.groupProbes().enabled()) {
+            return;
+        }
+        Log.infof("Probing the group coordinator with group %s", config.groupProbes().groupId());
+        refreshCoordinator();
+        consumer = new GroupProbeConsumer(config.topic(), kafkaFactory.createConsumer(Map.of(
+                ConsumerConfig.GROUP_ID_CONFIG, config.groupProbes().groupId(),
+                ConsumerConfig.CLIENT_ID_CONFIG, kafkaClientId + "-group-probe",
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false)),
+                config.groupProbes().interval(), config.groupProbes().rebalanceInterval(), new Listener());
+        Thread.ofPlatform().daemon().name("group-probe").start(consumer);
+    }
+
+    @Shutdown
+    synchronized void stop() {
+        if (consumer != null) {
+            consumer.close();
+        }
+    }
+
+    /**
+     * Looks up the coordinator of the probe group. Its result applies to the following measurements, as the
+     * coordinator only moves when the group's partition of the offsets topic gets a new leader.
+     */
+    private void refreshCoordinator() {
+        var groupId = config.groupProbes().groupId();
+        adminCalls.call("describeConsumerGroups", adminClient.describeConsumerGroups(List.of(groupId)).describedGroups().get(groupId))
+                .whenComplete((description, error) -> {
+                    if (error != null) {
+                        Log.warnf("Failed to get the coordinator of group %s: %s", groupId, AdminCalls.unwrap(error).getMessage());
+                        coordinator = UNKNOWN_COORDINATOR;
+                    } else if (description.coordinator() != null && !description.coordinator().idString().equals(coordinator)) {
+                        Log.infof("Group %s is coordinated by broker %s", groupId, description.coordinator().idString());
+                        coordinator = description.coordinator().idString();
+                    }
+                });
+    }
+
+    private void record(String name, double latencyMs, String description) {
+        summaries.computeIfAbsent(new MeterKey(name, Tags.of(TAG_BROKER, coordinator, TAG_RACK, config.rack())),
+                        key -> metricService.newLatencySummary(key.name(), key.tags(), description))
+                .record(latencyMs);
+    }
+
+    private record MeterKey(String name, Tags tags) {
+    }
+
+    private class Listener implements GroupProbeConsumer.Listener {
+        @Override
+        public void onCommit(long durationNanos) {
+            record(GROUP_COMMIT_METER_NAME, durationNanos / 1e6, "Latency of committing the offsets of the probe group");
+        }
+
+        @Override
+        public void onOffsetFetch(long durationNanos) {
+            record(GROUP_OFFSET_FETCH_METER_NAME, durationNanos / 1e6, "Latency of fetching the committed offsets of the probe group");
+        }
+
+        @Override
+        public void onRebalance(long durationNanos, double joinTimeMs, double syncTimeMs) {
+            record(GROUP_REBALANCE_METER_NAME, durationNanos / 1e6,
+                    "Duration of a rebalance of the probe group, from triggering it until the partitions were assigned");
+            if (!Double.isNaN(joinTimeMs)) {
+                record(GROUP_JOIN_METER_NAME, joinTimeMs, "Time the probe consumer spent joining the group during a rebalance");
+            }
+            if (!Double.isNaN(syncTimeMs)) {
+                record(GROUP_SYNC_METER_NAME, syncTimeMs, "Time the probe consumer spent syncing the group during a rebalance");
+            }
+            refreshCoordinator();
+        }
+
+        @Override
+        public void onFailure(String operation, Exception e) {
+            Log.warnf("Group probe %s failed for group %s: %s", operation, config.groupProbes().groupId(), e.getMessage());
+            failures.computeIfAbsent(Tags.of(TAG_BROKER, coordinator, TAG_OPERATION, operation, TAG_RACK, config.rack()),
+                            tags -> Counter.builder(GROUP_FAILURES_METER_NAME)
+                                    .tags(tags)
+                                    .description("Number of failed offset commits and fetches of the probe group")
+                                    .register(meterRegistry))
+                    .increment();
+            refreshCoordinator();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package io.spoud;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.logging.Log;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigFederation;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Combines the views of all instances of the fleet into a global one, without a central database. The other
+ * instances are configured, or found via their advertised listeners (see {@link AdvertisedListenerRepository}) if
+ * their host is trusted, and queried in parallel. Their responses are cached and revalidated with their ETags, so that a dashboard that refreshes
+ * periodically does not multiply the load on the fleet, and an instance that does not respond in time is served from
+ * its last response, or left out if there is none.
+ */
+@ApplicationScoped
+public class HistoryFederation {
+    static final String TOPOLOGY_PATH = "history/topology";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final long cacheTtlNanos;
+    private final String rack;
+    private final Supplier<Map<String, String>> peers;
+    private final Map<String, PeerResponse> responses = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<PeerResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The global view of the rack topology.
+     *
+     * @param racks    topology of each instance that is part of the view, by rack
+     * @param paths    paths of all instances, the latencies that several instances know of are combined
+     * @param failures reason why the data of an instance is missing or outdated, by rack
+     */
+    public record GlobalTopology(Map<String, RackTopology> racks, List<RackTopology.Path> paths, Map<String, String> failures) {
+    }
+
+    private record PeerResponse(String etag, String body, long fetchedNanos) {
+    }
+
+    private record Query(String url, CompletableFuture<PeerResponse> response) {
+    }
+
+    @Inject
+    public HistoryFederation(SynthClientConfig config, AdvertisedListenerRepository advertisedListenerRepository) {
+        this(config.federation().timeout(), config.federation().cacheTtl(), config.rack(),
+                () -> peers(config.federation(), advertisedListenerRepository.getListeners()));
+    }
+
+    /**
+     * @param peers supplies the base URL of each instance by rack, may include this instance
+     */
+    HistoryFederation(Duration timeout, Duration cacheTtl, String rack, Supplier<Map<String, String>> peers) {
+        this.timeout = timeout;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.rack = rack;
+        this.peers = peers;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * @param discovered advertised listeners by rack
+     * @return the configured peers and the discovered ones whose host is trusted, the configured ones take precedence
+     */
+    static Map<String, String> peers(SynthClientConfigFederation config, Map<String, String> discovered) {
+        var hosts = config.discoveryHosts().orElse(List.of()).stream()
+                .map(host -> host.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        var peers = new HashMap<String, String>();
+        discovered.forEach((peerRack, url) -> {
+            if (isTrusted(url, hosts)) {
+                peers.put(peerRack, url);
+            } else {
+                Log.debugf("Ignoring the advertised listener %s of rack %s, as its host is not a discovery host", url, peerRack);
+            }
+        });
+        peers.putAll(config.peers());
+        return peers;
+    }
+
+    private static boolean isTrusted(String url, Set<String> hosts) {
+        try {
+            var host = URI.create(url).getHost();
+            return host != null && hosts.contains(host.toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the URL is a plain HTTP(S) URL that can be queried, i.e. without credentials, query or fragment
+     */
+    static boolean isValidPeerUrl(String url) {
+        try {
+            var uri = URI.create(url);
+            return ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))
+                    && uri.getHost() != null
+                    && uri.getRawUserInfo() == null
+                    && uri.getRawQuery() == null
+                    && uri.getRawFragment() == null;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param local topology of this instance
+     * @return a future that completes once all other instances responded or timed out, never exceptionally
+     */
+    public CompletableFuture<GlobalTopology> getGlobalTopology(RackTopology local) {
+        var queries = new TreeMap<String, Query>();
+        var invalid = new TreeMap<String, String>();
+        peers.get().forEach((peerRack, baseUrl) -> {
+            if (peerRack.equals(rack)) {
+                return;
+            }
+            if (!isValidPeerUrl(baseUrl)) {
+                invalid.put(peerRack, "Invalid URL");
+                return;
+            }
+            var url = join(baseUrl, TOPOLOGY_PATH);
+            queries.put(peerRack, new Query(url, fetch(url)));
+        });
+        return CompletableFuture.allOf(queries.values().stream()
+                        .map(query -> query.response().exceptionally(e -> null))
+                        .toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    var racks = new TreeMap<String, RackTopology>();
+                    var failures = new TreeMap<String, String>(invalid);
+                    racks.put(rack, local);
+                    queries.forEach((peerRack, query) -> collect(peerRack, query, racks, failures));
+                    return new GlobalTopology(racks, merge(racks.values()), failures);
+                });
+    }
+
+    private void collect(String peerRack, Query query, Map<String, RackTopology> racks, Map<String, String> failures) {
+        PeerResponse response;
+        try {
+            response = query.response().join();
+        } catch (Exception e) {
+            var cause = e.getCause() != null ? e.getCause() : e;
+            Log.debugf(cause, "Failed to query the topology of rack %s", peerRack);
+            response = responses.get(query.url());
+            failures.put(peerRack, (response != null ? "Showing the last response, as the query failed: " : "") + reason(cause));
+            if (response == null) {
+                return;
+            }
+        }
+        try {
+            racks.put(peerRack, objectMapper.readValue(response.body(), RackTopology.class));
+        } catch (IOException e) {
+            Log.debugf(e, "Invalid topology response of rack %s", peerRack);
+            failures.put(peerRack, "Invalid response");
+        }
+    }
+
+    /**
+     * @return a reason that does not include anything the other instance sent, as the failures are served to anyone
+     */
+    private static String reason(Throwable error) {
+        if (error instanceof HttpTimeoutException) {
+            return "Timed out";
+        }
+        if (error instanceof StatusException status) {
+            return "HTTP status " + status.status;
+        }
+        if (error instanceof IOException) {
+            return "Not reachable";
+        }
+        return "Query failed";
+    }
+
+    /**
+     * Combines the paths that several instances know of, e.g. the end-to-end latency that the instance of the target
+     * rack measured and the ack latency that the instance of the source rack measured.
+     */
+    static List<RackTopology.Path> merge(Iterable<RackTopology> topologies) {
+        var paths = new LinkedHashMap<String, RackTopology.Path>();
+        for (var topology : topologies) {
+            for (var path : topology.paths()) {
+                paths.merge(path.fromRack() + "\n" + path.viaBrokerRack() + "\n" + path.toRack(), path, (a, b) ->
+                        new RackTopology.Path(a.fromRack(), a.viaBrokerRack(), a.toRack(),
+                                either(a.p50Latency(), b.p50Latency()), either(a.p99Latency(), b.p99Latency()),
+                                either(a.p50AckLatency(), b.p50AckLatency()), either(a.p99AckLatency(), b.p99AckLatency())));
+            }
+        }
+        var result = new ArrayList<>(paths.values());
+        result.sort(Comparator.comparing(RackTopology.Path::fromRack)
+                .thenComparing(RackTopology.Path::viaBrokerRack)
+                .thenComparing(RackTopology.Path::toRack));
+        return List.copyOf(result);
+    }
+
+    private static Double either(Double a, Double b) {
+        return a != null ? a : b;
+    }
+
+    /**
+     * @return the cached response if it is recent enough, else the response of a new query that is shared with all
+     * concurrent callers
+     */
+    private CompletableFuture<PeerResponse> fetch(String url) {
+        var cached = responses.get(url);
+        if (cached != null && System.nanoTime() - cached.fetchedNanos() < cacheTtlNanos) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        var query = inFlight.computeIfAbsent(url, u -> send(u, cached));
+        query.whenComplete((response, error) -> {
+            if (response != null) {
+                responses.put(url, response);
+            }
+            inFlight.remove(url, query);
+        });
+        return query;
+    }
+
+    private CompletableFuture<PeerResponse> send(String url, PeerResponse cached) {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(timeout)
+                .header("Accept", "application/json");
+        if (cached != null && cached.etag() != null) {
+            request.header("If-None-Match", cached.etag());
+        }
+        try {
+            return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> {
+                        if (response.statusCode() == 304 && cached != null) {
+                            return new PeerResponse(cached.etag(), cached.body(), System.nanoTime());
+                        }
+                        if (response.statusCode() != 200) {
+                            throw new StatusException(response.statusCode());
+                        }
+                        return new PeerResponse(response.headers().firstValue("ETag").orElse(null), response.body(), System.nanoTime());
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static final class StatusException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private StatusException(int status) {
+            super("HTTP status " + status);
+            this.status = status;
+        }
+    }
+
+    static String join(String baseUrl, String path) {
+        return baseUrl.endsWith("/") ? baseUrl + path : baseUrl + "/" + path;
+    }
+}
@@ -1,35 +1,65 @@
 package io.spoud;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkus.logging.Log;
 import io.quarkus.scheduler.Scheduled;
 import io.spoud.config.SynthClientConfig;
+import io.spoud.jfr.SnapshotPersistedEvent;
+import io.spoud.kafka.PartitionRebalancer;
 import jakarta.inject.Singleton;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import org.duckdb.DuckDBAppender;
 import org.duckdb.DuckDBConnection;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 @Singleton
 @Path("/history")
 @Produces("application/json")
 public class HistoryService {
+    private static final ObjectMapper ETAG_MAPPER = new ObjectMapper();
+
     private final MetricService metricService;
     private final TimeService timeService;
     private final DuckDBConnection conn;
     private final Duration retentionTime;
     private final AdvertisedListenerRepository advertisedListenerRepository;
     private final SynthClientConfig synthClientConfig;
+    private final PartitionRebalancer partitionRebalancer;
+    private final ReplicaLatencyService replicaLatencyService;
+    private final IncidentAnalyser incidentAnalyser;
+    private final HistoryFederation historyFederation;
+    private volatile RackTopology topology;
 
     public HistoryService(MetricService metricService,
                           TimeService timeService,
-                          SynthClientConfig config, AdvertisedListenerRepository advertisedListenerRepository, SynthClientConfig synthClientConfig) throws ClassNotFoundException, SQLException {
+                          SynthClientConfig config, AdvertisedListenerRepository advertisedListenerRepository, SynthClientConfig synthClientConfig,
+                          PartitionRebalancer partitionRebalancer,
+                          ReplicaLatencyService replicaLatencyService,
+                          IncidentAnalyser incidentAnalyser,
+                          HistoryFederation historyFederation) throws ClassNotFoundException, SQLException {
         this.metricService = metricService;
+        this.historyFederation = historyFederation;
+        this.partitionRebalancer = partitionRebalancer;
+        this.replicaLatencyService = replicaLatencyService;
+        this.incidentAnalyser = incidentAnalyser;
         this.timeService = timeService;
         this.retentionTime = config.historyRetentionPeriod();
         this.advertisedListenerRepository = advertisedListenerRepository;
@@ -47,6 +77,15 @@ public class HistoryService {
         conn.createStatement().execute("""
                 CREATE TABLE IF NOT EXISTS ack_latencies (timestamp TIMESTAMPTZ, rack VARCHAR, broker_rack VARCHAR, latency_ms REAL, percentile INT);
                 """);
+        conn.createStatement().execute("""
+                CREATE TABLE IF NOT EXISTS broker_pair_latencies (timestamp TIMESTAMPTZ, rack VARCHAR, leader VARCHAR, follower VARCHAR, source VARCHAR, latency_ms REAL);
+                """);
+        conn.createStatement().execute("""
+                CREATE TABLE IF NOT EXISTS incidents (timestamp TIMESTAMPTZ, ended TIMESTAMPTZ, rack VARCHAR, partition INT, leader_before VARCHAR, leader_after VARCHAR, unavailable_ms BIGINT, max_latency_ms REAL, probes_lost BIGINT, probes_delayed BIGINT, causes VARCHAR, resolved BOOLEAN);
+                """);
+        conn.createStatement().execute("""
+                CREATE TABLE IF NOT EXISTS load_test_steps (timestamp TIMESTAMPTZ, run_id VARCHAR, step INT, rack VARCHAR, messages_per_second INT, message_size_bytes INT, sent BIGINT, failed BIGINT, e2e_p50_ms REAL, e2e_p99_ms REAL, ack_p50_ms REAL, ack_p99_ms REAL, knee BOOLEAN);
+                """);
     }
 
     @Scheduled(every = "15s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
@@ -54,6 +93,8 @@ public class HistoryService {
         if (conn == null) {
             return;
         }
+        var snapshotEvent = new SnapshotPersistedEvent();
+        snapshotEvent.begin();
         int rowCount = 0;
         var now = timeService.now();
         try (var appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "e2e_latencies")) {
@@ -69,7 +110,7 @@ public class HistoryService {
                     appender.append(now);
                     appender.append(fromRack);
                     appender.append(toRack);
-                    appender.append(String.format("%s (ID %s)", brokerRack, brokerId));
+                    appender.append(RackTopology.viaBrokerRack(brokerRack, brokerId));
                     appender.append((float)v.value());
                     appender.append((int) (100. * v.percentile()));
                     appender.endRow();
@@ -81,6 +122,7 @@ public class HistoryService {
             rowCount = 0;
         }
         Log.debugf("%d e2e latency rows successfully saved to history", rowCount);
+        snapshotEvent.e2eRows = rowCount;
         rowCount = 0;
         try (var appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "ack_latencies")) {
             for (var summary : metricService.getAckLatencies()) {
@@ -93,7 +135,7 @@ public class HistoryService {
                     appender.beginRow();
                     appender.append(now);
                     appender.append(rack);
-                    appender.append(String.format("%s (ID %s)", brokerRack, brokerId));
+                    appender.append(RackTopology.viaBrokerRack(brokerRack, brokerId));
                     appender.append((float) v.value());
                     appender.append((int) (100. * v.percentile()));
                     appender.endRow();
@@ -105,6 +147,99 @@ public class HistoryService {
             rowCount = 0;
         }
         Log.debugf("%d ack latency rows successfully saved to history", rowCount);
+        snapshotEvent.ackRows = rowCount;
+        recordBrokerPairLatencies(now);
+        recordIncidents();
+        snapshotEvent.commit();
+    }
+
+    private void recordIncidents() {
+        var incidents = incidentAnalyser.drainClosedIncidents();
+        if (incidents.isEmpty()) {
+            return;
+        }
+        try (var appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "incidents")) {
+            for (var incident : incidents) {
+                appender.beginRow();
+                appender.append(incident.started().atOffset(ZoneOffset.UTC));
+                appender.append(incident.ended().atOffset(ZoneOffset.UTC));
+                appender.append(synthClientConfig.rack());
+                appender.append(incident.partition());
+                appender.append(incident.leaderBefore());
+                appender.append(incident.leaderAfter());
+                appender.append(incident.unavailableMs());
+                appender.append((float) incident.maxLatencyMs());
+                appender.append(incident.probesLost());
+                appender.append(incident.probesDelayed());
+                appender.append(String.join(",", incident.causes()));
+                appender.append(incident.resolved());
+                appender.endRow();
+            }
+        } catch (SQLException e) {
+            Log.error("Failed to record incidents", e);
+        }
+        Log.debugf("%d incidents saved to history", incidents.size());
+    }
+
+    /**
+     * Attributes the p99 ack latency of each partition to every (leader, follower) pair of the partition, as with
+     * acks=all the ack includes the replication to each follower. If replica latencies are measured, their p99 is
+     * recorded per pair as well.
+     */
+    private void recordBrokerPairLatencies(OffsetDateTime now) {
+        int rowCount = 0;
+        try (var appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "broker_pair_latencies")) {
+            for (var summary : metricService.getAckLatencies()) {
+                var id = summary.distributionSummary().getId();
+                var p99 = MetricService.getPercentile(summary.distributionSummary(), 0.99);
+                var partition = id.getTag(MetricService.TAG_PARTITION);
+                if (Double.isNaN(p99) || partition == null) {
+                    continue;
+                }
+                var leader = id.getTag(MetricService.TAG_BROKER);
+                for (var follower : partitionRebalancer.getReplicasOfPartition(Integer.parseInt(partition))) {
+                    if (!String.valueOf(follower).equals(leader)) {
+                        appendBrokerPairLatency(appender, now, leader, String.valueOf(follower), "ack", p99);
+                        rowCount++;
+                    }
+                }
+            }
+            for (var summary : replicaLatencyService.getLatencies()) {
+                var id = summary.getId();
+                var p99 = MetricService.getPercentile(summary, 0.99);
+                var leader = id.getTag(ReplicaLatencyService.TAG_LEADER);
+                var replica = id.getTag(ReplicaLatencyService.TAG_REPLICA);
+                if (!Double.isNaN(p99) && !Objects.equals(leader, replica)) {
+                    appendBrokerPairLatency(appender, now, leader, replica, "replica", p99);
+                    rowCount++;
+                }
+            }
+        } catch (SQLException e) {
+            Log.error("Failed to record broker pair latency snapshot", e);
+            rowCount = 0;
+        }
+        Log.debugf("%d broker pair latency rows successfully saved to history", rowCount);
+    }
+
+    private void appendBrokerPairLatency(DuckDBAppender appender, OffsetDateTime now, String leader,
+                                         String follower, String source, double latencyMs) throws SQLException {
+        appender.beginRow();
+        appender.append(now);
+        appender.append(synthClientConfig.rack());
+        appender.append(leader);
+        appender.append(follower);
+        appender.append(source);
+        appender.append((float) latencyMs);
+        appender.endRow();
+    }
+
+    /**
+     * Takes the rack topology at the same pace as the history snapshots, so that its ETag stays the same in between
+     * and the dashboard can revalidate it cheaply.
+     */
+    @Scheduled(every = "15s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void refreshTopology() {
+        topology = metricService.getRackTopology();
     }
 
     @Scheduled(every = "1h", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
@@ -114,6 +249,34 @@ public class HistoryService {
         }
         cleanUpTable("e2e_latencies");
         cleanUpTable("ack_latencies");
+        cleanUpTable("load_test_steps");
+        cleanUpTable("broker_pair_latencies");
+        cleanUpTable("incidents");
+    }
+
+    void recordLoadTestStep(LoadTestService.StepResult result) {
+        if (conn == null) {
+            return;
+        }
+        try (var appender = conn.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "load_test_steps")) {
+            appender.beginRow();
+            appender.append(result.started().atOffset(ZoneOffset.UTC));
+            appender.append(result.runId());
+            appender.append(result.step());
+            appender.append(synthClientConfig.rack());
+            appender.append(result.messagesPerSecond());
+            appender.append(result.messageSizeBytes());
+            appender.append(result.sent());
+            appender.append(result.failed());
+            appender.append((float) result.e2eP50());
+            appender.append((float) result.e2eP99());
+            appender.append((float) result.ackP50());
+            appender.append((float) result.ackP99());
+            appender.append(result.knee());
+            appender.endRow();
+        } catch (SQLException e) {
+            Log.error("Failed to record load test step", e);
+        }
     }
 
     private void cleanUpTable(String table) {
@@ -151,6 +314,64 @@ public class HistoryService {
         return result;
     }
 
+    /**
+     * @return the current latencies between the racks as seen by this instance, with an ETag so that unchanged
+     * topologies are answered with 304 Not Modified. Does not need the history database.
+     */
+    @GET
+    @Path("/topology")
+    public Response getTopology(@Context Request request) {
+        return withETag(request, currentTopology());
+    }
+
+    /**
+     * @return the rack topology of all instances that could be reached, see {@link HistoryFederation}, with an ETag
+     * like {@link #getTopology(Request)}
+     */
+    @GET
+    @Path("/global/topology")
+    public CompletionStage<Response> getGlobalTopology(@Context Request request) {
+        return historyFederation.getGlobalTopology(currentTopology())
+                .thenApply(globalTopology -> withETag(request, globalTopology));
+    }
+
+    private RackTopology currentTopology() {
+        if (topology == null) {
+            refreshTopology();
+        }
+        return topology;
+    }
+
+    /**
+     * Serializes the entity itself, so that the ETag is a digest of the exact body that is sent. A hash code would
+     * collide for different topologies and let the clients keep showing outdated latencies.
+     */
+    private static Response withETag(Request request, Object entity) {
+        byte[] body;
+        try {
+            body = ETAG_MAPPER.writeValueAsBytes(entity);
+        } catch (JsonProcessingException e) {
+            throw new InternalServerErrorException("Failed to serialize the response", e);
+        }
+        var etag = new EntityTag(digest(body));
+        var cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        var notModified = request.evaluatePreconditions(etag);
+        if (notModified != null) {
+            return notModified.tag(etag).cacheControl(cacheControl).build();
+        }
+        return Response.ok(body, MediaType.APPLICATION_JSON_TYPE).tag(etag).cacheControl(cacheControl).build();
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+
     public record LatencySummary(long[] timestamps, Map<String, Double[]> percentiles) {
     }
 
@@ -196,6 +417,103 @@ public class HistoryService {
         }
     }
 
+    @GET
+    @Path("/load-tests")
+    public List<LoadTestService.StepResult> getLoadTestSteps() throws SQLException {
+        if (conn == null) {
+            return Collections.emptyList();
+        }
+        var steps = conn.createStatement().executeQuery("""
+                SELECT run_id, step, timestamp, messages_per_second, message_size_bytes, sent, failed, e2e_p50_ms, e2e_p99_ms, ack_p50_ms, ack_p99_ms, knee
+                FROM load_test_steps
+                ORDER BY timestamp ASC, step ASC
+                """);
+        var result = new ArrayList<LoadTestService.StepResult>();
+        while (steps.next()) {
+            result.add(new LoadTestService.StepResult(steps.getString(1), steps.getInt(2),
+                    steps.getObject(3, OffsetDateTime.class).toInstant(), steps.getInt(4), steps.getInt(5),
+                    steps.getLong(6), steps.getLong(7), steps.getFloat(8), steps.getFloat(9), steps.getFloat(10),
+                    steps.getFloat(11), steps.getBoolean(12)));
+        }
+        return result;
+    }
+
+    public record BrokerPairLatency(String leader, String follower, float p99Latency, long samples) {
+    }
+
+    public record BrokerMatrix(List<String> brokers, List<BrokerPairLatency> pairs) {
+    }
+
+    /**
+     * @param source `ack` for latencies derived from the ack latency of the partitions or `replica` for the latencies
+     *               measured by consuming from the followers
+     * @return median of the recorded p99 latencies of each (leader, follower) pair in the given interval
+     */
+    @GET
+    @Path("/broker-matrix")
+    public BrokerMatrix getBrokerMatrix(@QueryParam("source") @DefaultValue("ack") String source,
+                                       @QueryParam("interval_start") Instant start,
+                                       @QueryParam("interval_end") Instant end) throws SQLException {
+        if (conn == null) {
+            return new BrokerMatrix(List.of(), List.of());
+        }
+        var endTime = (end != null ? end : timeService.now().toInstant()).atOffset(ZoneOffset.UTC);
+        var startTime = (start != null ? start : endTime.minusHours(1).toInstant()).atOffset(ZoneOffset.UTC);
+        try (var stmt = conn.prepareStatement("""
+                SELECT leader, follower, median(latency_ms), count(*)
+                FROM broker_pair_latencies
+                WHERE source = ? AND timestamp >= ? AND timestamp <= ?
+                GROUP BY leader, follower
+                ORDER BY leader, follower
+                """)) {
+            stmt.setString(1, source);
+            stmt.setObject(2, startTime);
+            stmt.setObject(3, endTime);
+            var rows = stmt.executeQuery();
+            var pairs = new ArrayList<BrokerPairLatency>();
+            var brokers = new TreeSet<String>();
+            while (rows.next()) {
+                var pair = new BrokerPairLatency(rows.getString(1), rows.getString(2), rows.getFloat(3), rows.getLong(4));
+                pairs.add(pair);
+                brokers.add(pair.leader());
+                brokers.add(pair.follower());
+            }
+            return new BrokerMatrix(List.copyOf(brokers), pairs);
+        }
+    }
+
+    /**
+     * @return the incidents that started in the given interval, most recent first
+     */
+    @GET
+    @Path("/incidents")
+    public List<IncidentAnalyser.Incident> getIncidents(@QueryParam("interval_start") Instant start,
+                                                        @QueryParam("interval_end") Instant end) throws SQLException {
+        if (conn == null) {
+            return Collections.emptyList();
+        }
+        var endTime = (end != null ? end : timeService.now().toInstant()).atOffset(ZoneOffset.UTC);
+        var startTime = (start != null ? start : endTime.minusHours(24).toInstant()).atOffset(ZoneOffset.UTC);
+        try (var stmt = conn.prepareStatement("""
+                SELECT partition, leader_before, leader_after, timestamp, ended, unavailable_ms, max_latency_ms, probes_lost, probes_delayed, causes, resolved
+                FROM incidents
+                WHERE timestamp >= ? AND timestamp <= ?
+                ORDER BY timestamp DESC
+                """)) {
+            stmt.setObject(1, startTime);
+            stmt.setObject(2, endTime);
+            var rows = stmt.executeQuery();
+            var result = new ArrayList<IncidentAnalyser.Incident>();
+            while (rows.next()) {
+                result.add(new IncidentAnalyser.Incident(rows.getInt(1), rows.getString(2), rows.getString(3),
+                        rows.getObject(4, OffsetDateTime.class).toInstant(), rows.getObject(5, OffsetDateTime.class).toInstant(),
+                        rows.getLong(6), rows.getFloat(7), rows.getLong(8), rows.getLong(9),
+                        List.of(rows.getString(10).split(",")), rows.getBoolean(11)));
+            }
+            return result;
+        }
+    }
+
     @GET
     @Path("/other-racks")
     public Map<String, String> getOtherRackUrls() {
@@ -0,0 +1,265 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigIncidents;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Correlates leader changes, failed sends and delayed probes into incidents per partition, e.g. to see how long each
+ * partition was unavailable during a rolling restart of the brokers. An incident is opened by the first problem on a
+ * partition and closed by the first probe that was sent after the last problem and arrived within the latency
+ * threshold. A gap in consumption is not tracked separately, as the probes that were held up show up as delayed
+ * probes once the consumer catches up. The analyser is purely event-driven: as long as no incident is open, each event
+ * costs a single lookup. Closed incidents are persisted by the {@link HistoryService}.
+ */
+@ApplicationScoped
+public class IncidentAnalyser {
+    public static final String INCIDENTS_METER_NAME = "synth-client.incidents";
+    public static final String INCIDENTS_OPEN_METER_NAME = "synth-client.incidents.open";
+    public static final String UNAVAILABILITY_METER_NAME = "synth-client.incidents.unavailability";
+
+    public static final String CAUSE_LEADER_CHANGE = "leader-change";
+    public static final String CAUSE_SEND_ERROR = "send-error";
+    public static final String CAUSE_DELAYED_PROBE = "delayed-probe";
+
+    // closed incidents that are kept if the history is not persisted
+    static final int MAX_PENDING_INCIDENTS = 1000;
+
+    /**
+     * @param partition     partition of the probe topic
+     * @param leaderBefore  leader of the partition when the incident started, "unknown" if not known
+     * @param leaderAfter   leader of the partition when the incident ended, "unknown" if not known
+     * @param started       time of the first problem, for delayed probes the time they were sent
+     * @param ended         time the first healthy probe was consumed, or the time of the last problem if unresolved
+     * @param unavailableMs time between start and end
+     * @param maxLatencyMs  highest ack or end-to-end latency observed during the incident
+     * @param probesLost    number of probes that could not be sent
+     * @param probesDelayed number of probes whose end-to-end latency exceeded the threshold
+     * @param causes        kinds of problems observed during the incident
+     * @param resolved      false if no healthy probe arrived within the maximum duration
+     */
+    public record Incident(int partition, String leaderBefore, String leaderAfter, Instant started, Instant ended,
+                           long unavailableMs, double maxLatencyMs, long probesLost, long probesDelayed,
+                           List<String> causes, boolean resolved) {
+    }
+
+    private static final class OpenIncident {
+        private final int partition;
+        private final String leaderBefore;
+        private String leaderAfter;
+        private long startedMs;
+        private long lastProblemMs;
+        private double maxLatencyMs;
+        private long probesLost;
+        private long probesDelayed;
+        private final Set<String> causes = new TreeSet<>();
+
+        private OpenIncident(int partition, String leader, long startedMs) {
+            this.partition = partition;
+            this.leaderBefore = leader;
+            this.leaderAfter = leader;
+            this.startedMs = startedMs;
+            this.lastProblemMs = startedMs;
+        }
+
+        private synchronized void problem(String cause, long atMs) {
+            causes.add(cause);
+            startedMs = Math.min(startedMs, atMs);
+            lastProblemMs = Math.max(lastProblemMs, atMs);
+        }
+
+        private synchronized void latency(double latencyMs) {
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+        }
+
+        private synchronized Incident close(long endedMs, boolean resolved) {
+            return new Incident(partition, leaderBefore, leaderAfter, Instant.ofEpochMilli(startedMs),
+                    Instant.ofEpochMilli(endedMs), Math.max(0, endedMs - startedMs), maxLatencyMs, probesLost,
+                    probesDelayed, List.copyOf(causes), resolved);
+        }
+    }
+
+    private final SynthClientConfigIncidents config;
+    private final String rack;
+    private final LongSupplier clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, OpenIncident> openIncidents = new ConcurrentHashMap<>();
+    private final Queue<Incident> closedIncidents = new ConcurrentLinkedQueue<>();
+    private final DistributionSummary unavailability;
+
+    @Inject
+    public IncidentAnalyser(SynthClientConfig config, TimeService timeService, MeterRegistry meterRegistry) {
+        this(config.incidents(), config.rack(), timeService::currentTimeMillis, meterRegistry);
+    }
+
+    /**
+     * @param clock supplies the current time in milliseconds since the epoch
+     */
+    IncidentAnalyser(SynthClientConfigIncidents config, String rack, LongSupplier clock, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.rack = rack;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(INCIDENTS_OPEN_METER_NAME, openIncidents, Map::size)
+                .tag(TAG_RACK, rack)
+                .description("Number of partitions with an open incident")
+                .register(meterRegistry);
+        unavailability = DistributionSummary.builder(UNAVAILABILITY_METER_NAME)
+                .tag(TAG_RACK, rack)
+                .baseUnit("ms")
+                .description("Duration for which a partition was unavailable or slow per incident")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Called when the leader of a partition changed.
+     *
+     * @param oldLeader previous leader, null if the partition had no leader
+     * @param newLeader new leader, null if the partition has no leader
+     */
+    public void onLeaderChange(int partition, Integer oldLeader, Integer newLeader) {
+        if (!config.enabled()) {
+            return;
+        }
+        var incident = open(partition, oldLeader != null ? String.valueOf(oldLeader) : "unknown");
+        incident.problem(CAUSE_LEADER_CHANGE, clock.getAsLong());
+        synchronized (incident) {
+            incident.leaderAfter = newLeader != null ? String.valueOf(newLeader) : "unknown";
+        }
+    }
+
+    /**
+     * Called when a probe could not be sent to the given partition.
+     *
+     * @param leader current leader of the partition as far as known
+     */
+    public void onSendFailure(int partition, String leader) {
+        if (!config.enabled() || partition < 0) {
+            return;
+        }
+        var incident = open(partition, leader);
+        incident.problem(CAUSE_SEND_ERROR, clock.getAsLong());
+        synchronized (incident) {
+            incident.probesLost++;
+        }
+    }
+
+    /**
+     * Called when a probe was acknowledged. Only has an effect while an incident is open for the partition.
+     */
+    public void onAck(int partition, double latencyMs) {
+        var incident = openIncidents.get(partition);
+        if (incident != null) {
+            incident.latency(latencyMs);
+        }
+    }
+
+    /**
+     * Called when a probe was consumed. Opens an incident if the probe was delayed, or closes the open incident of
+     * the partition if the probe was sent after its last problem and arrived in time.
+     *
+     * @param produceTimeMs time the probe was sent
+     * @param latencyMs     end-to-end latency of the probe
+     * @param leader        current leader of the partition as far as known
+     */
+    public void onProbeConsumed(int partition, long produceTimeMs, long latencyMs, String leader) {
+        if (latencyMs > config.latencyThreshold().toMillis()) {
+            if (!config.enabled()) {
+                return;
+            }
+            var incident = open(partition, leader);
+            incident.problem(CAUSE_DELAYED_PROBE, produceTimeMs);
+            incident.latency(latencyMs);
+            synchronized (incident) {
+                incident.probesDelayed++;
+            }
+            return;
+        }
+        var incident = openIncidents.get(partition);
+        if (incident == null) {
+            return;
+        }
+        incident.latency(latencyMs);
+        boolean recovered;
+        synchronized (incident) {
+            recovered = produceTimeMs > incident.lastProblemMs;
+            incident.leaderAfter = leader;
+        }
+        if (recovered && openIncidents.remove(partition, incident)) {
+            closed(incident.close(produceTimeMs + latencyMs, true));
+        }
+    }
+
+    @Scheduled(every = "10s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void closeStaleIncidents() {
+        if (openIncidents.isEmpty()) {
+            return;
+        }
+        var cutoff = clock.getAsLong() - config.maxDuration().toMillis();
+        for (var incident : openIncidents.values()) {
+            long lastProblemMs;
+            synchronized (incident) {
+                lastProblemMs = incident.lastProblemMs;
+            }
+            if (lastProblemMs < cutoff && openIncidents.remove(incident.partition, incident)) {
+                closed(incident.close(lastProblemMs, false));
+            }
+        }
+    }
+
+    /**
+     * @return the incidents that were closed since the last call
+     */
+    List<Incident> drainClosedIncidents() {
+        var incidents = new ArrayList<Incident>();
+        Incident incident;
+        while ((incident = closedIncidents.poll()) != null) {
+            incidents.add(incident);
+        }
+        return incidents;
+    }
+
+    private OpenIncident open(int partition, String leader) {
+        return openIncidents.computeIfAbsent(partition, p -> {
+            Log.infof("Incident opened for partition %d (leader %s)", p, leader);
+            return new OpenIncident(p, leader, clock.getAsLong());
+        });
+    }
+
+    private void closed(Incident incident) {
+        Log.infof("Incident closed for partition %d after %dms: causes %s, max. latency %.1fms, %d probes lost, %d probes delayed, leader %s -> %s",
+                incident.partition(), incident.unavailableMs(), incident.causes(), incident.maxLatencyMs(),
+                incident.probesLost(), incident.probesDelayed(), incident.leaderBefore(), incident.leaderAfter());
+        unavailability.record(incident.unavailableMs());
+        Counter.builder(INCIDENTS_METER_NAME)
+                .tag(TAG_RACK, rack)
+                .tag("resolved", String.valueOf(incident.resolved()))
+                .description("Number of closed incidents")
+                .register(meterRegistry)
+                .increment();
+        closedIncidents.add(incident);
+        while (closedIncidents.size() > MAX_PENDING_INCIDENTS) {
+            closedIncidents.poll();
+        }
+    }
+}
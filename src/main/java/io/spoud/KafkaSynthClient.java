@@ -5,6 +5,7 @@ import io.quarkus.logging.Log;
 import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
 import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.AdminCalls;
 import io.spoud.kafka.MessageProducer;
 import io.spoud.kafka.PartitionRebalancer;
 import jakarta.annotation.Priority;
@@ -19,17 +20,24 @@ import org.apache.kafka.common.errors.TopicExistsException;
 
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.random.RandomGenerator;
 
 @ApplicationScoped
 public class KafkaSynthClient {
     private final RandomGenerator randomGenerator = RandomGenerator.getDefault();
-    private volatile String message;
+    private volatile PayloadGenerator payloads;
     private final MessageProducer producer;
-    private final int messagesPerSecond;
+    private volatile int messagesPerSecond;
+    private volatile boolean paused = false;
+    private int nextPartition = 0;
     private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final PartitionRebalancer partitionRebalancer;
+    private final StartupState startupState;
     private final SynthClientConfig config;
     private final AtomicBoolean waitForTopicCreated = new AtomicBoolean(true);
 
@@ -38,146 +46,198 @@ public class KafkaSynthClient {
             PartitionRebalancer partitionRebalancer,
             MeterRegistry meterRegistry,
             MessageProducer producer,
-            AdminClient adminClient) {
+            AdminClient adminClient,
+            AdminCalls adminCalls,
+            StartupState startupState) {
         this.config = config;
         setPayloadSize(config.messages().messageSizeBytes());
         this.producer = producer;
         this.messagesPerSecond = Math.max(config.messages().messagesPerSecond(), 1);
         this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.partitionRebalancer = partitionRebalancer;
+        this.startupState = startupState;
     }
 
+    public void setMessagesPerSecond(int messagesPerSecond) {
+        this.messagesPerSecond = Math.max(messagesPerSecond, 1);
+        Log.infof("Setting message rate to %d messages per second", this.messagesPerSecond);
+    }
+
+    public int getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /**
+     * Stops or resumes sending probes.
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        Log.info(paused ? "Pausing probes" : "Resuming probes");
+    }
+
+    /**
+     * Regenerates the payload pool. The given length is the size of all payloads for the fixed distribution and the
+     * median size for the log-normal distribution.
+     */
     public void setPayloadSize(long length) {
-        length = Math.max(1, length);
-        Log.infof("Setting message size to %s bytes", length);
-        this.message = randomString(length);
+        length = Math.max(1, Math.min(Integer.MAX_VALUE, length));
+        var payloadConfig = config.messages().payload();
+        Log.infof("Setting message size to %s bytes (%s distribution)", length, payloadConfig.distribution());
+        this.payloads = PayloadGenerator.fromConfig((int) length, payloadConfig);
     }
 
     long getPayloadSize() {
-        return message.length();
+        return payloads.getBaseSize();
     }
 
-    private static String randomString(long length) {
-        var strb = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            strb.append((char) ('a' + (int) (Math.random() * 26)));
-        }
-        return strb.toString();
+    /**
+     * @return a payload from the current pool, must not be modified
+     */
+    public byte[] nextPayload() {
+        return payloads.next();
     }
 
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Sets up the topic, then refreshes the partitions and warms up the producer concurrently before sending probes.
+     */
     public void start(@Observes @Priority(Interceptor.Priority.APPLICATION - 1) StartupEvent event) {
-        if (config.autoCreateTopic()) {
-            Log.infof("Creating topic %s", config.topic());
-            adminClient.describeCluster().nodes().whenComplete((nodes, t) -> {
-                Log.debugf("Nodes %s", nodes);
-                if (t != null) {
-                    throw new RuntimeException("Failed to get nodes", t);
-                }
-                short replicationFactor = (short) Math.max(Math.min(config.topicReplicationFactor(), nodes.size()), 1);
-                Log.debugf("ReplicationFactor calculated %s", replicationFactor);
-                if (config.topicReplicationFactor() <= 0) {
-                    Log.infof("Replication factor set to %s assuming number of nodes %s", config.topicReplicationFactor(), nodes.size());
-                    replicationFactor = (short) nodes.size();
-                }
-                short finalReplicationFactor = replicationFactor;
-                int minInSyncReplicas = Math.max(finalReplicationFactor - 1, 1);
-                this.adminClient.listTopics().names().whenComplete((topics, throwable) -> {
-                    if (throwable != null) {
-                        throw new RuntimeException("Failed to list topics", throwable);
-                    }
-                    if (!topics.contains(config.topic())) {
-
-                        this.adminClient.createTopics(List.of(new NewTopic(config.topic(), nodes.size(), finalReplicationFactor).configs(
-                                Map.of(TopicConfig.RETENTION_MS_CONFIG, "3600000",
-                                        TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, String.valueOf(minInSyncReplicas),
-                                        TopicConfig.MESSAGE_TIMESTAMP_TYPE_CONFIG, "CreateTime"
-                                )
-                        ))).all().whenComplete((v, t1) -> {
-                            if (t1 != null) {
-                                // if there is auto.create concurrently happening, we might get a TopicExistsException
-                                if (t1 instanceof TopicExistsException) {
-                                    Log.infof("Topic already exists %s", config.topic());
-                                    validateTopic();
-                                } else {
-                                    throw new RuntimeException("Failed to create topic", t1);
-                                }
-                            } else {
-                                Log.infof("Topic created %s", config.topic());
-                                validateTopic();
-                            }
-                        });
+        startupState.setPhase(StartupState.Phase.SETTING_UP_TOPIC);
+        var topicReady = config.autoCreateTopic() ? createOrCheckTopic() : checkCreateTime();
+        topicReady.thenCompose(v -> {
+                    startupState.setPhase(StartupState.Phase.WARMING_UP);
+                    return CompletableFuture.allOf(partitionRebalancer.refreshNow().toCompletableFuture(), producer.warmUp());
+                })
+                .whenComplete((v, error) -> {
+                    if (error != null) {
+                        Log.errorf(AdminCalls.unwrap(error), "Failed to set up topic %s, will not send any probes", config.topic());
+                        startupState.setPhase(StartupState.Phase.FAILED);
                     } else {
-                        validateTopic();
-                        Log.infof("Topic already exists %s", config.topic());
-                        // check replication factor and min in sync replicas config for topic
-                        adminClient.describeTopics(List.of(config.topic())).allTopicNames().whenComplete((v, t1) -> {
-                            if (t1 != null) {
-                                throw new RuntimeException("Failed to describe topic", t1);
-                            }
-                            var replicationFactorConfig = v.get(config.topic()).partitions().getFirst().replicas().size();
-                            if (replicationFactorConfig != finalReplicationFactor) {
-                                Log.errorf("Replication factor for topic %s is %s, expected %s", config.topic(), replicationFactorConfig, finalReplicationFactor);
-                            }
-
-                        });
-
-                        ConfigResource cr = new ConfigResource(ConfigResource.Type.TOPIC, config.topic());
-                        adminClient.describeConfigs(List.of(cr)).all().whenComplete((configEntries, t1) -> {
-                            if (t1 != null) {
-                                throw new RuntimeException("Failed to get topic config", t1);
-                            }
-                            var minInSyncReplicasConfig = configEntries.get(cr).get(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG);
-                            if (minInSyncReplicasConfig == null || Integer.parseInt(minInSyncReplicasConfig.value()) != minInSyncReplicas) {
-                                Log.errorf("Min in sync replicas for topic %s is %s, expected %s", config.topic(), minInSyncReplicasConfig, minInSyncReplicas);
-                            }
-                        });
-
+                        waitForTopicCreated.set(false);
+                        startupState.setPhase(StartupState.Phase.WAITING_FOR_FIRST_SAMPLE);
                     }
                 });
-            });
-        } else {
-            validateTopic();
-        }
     }
 
-    private void validateTopic() {
-        isCreateTimeConfiguredForTopic()
-                .thenRun(() -> waitForTopicCreated.set(false));
+    /**
+     * Creates the probe topic if it does not exist yet, else checks its settings. The brokers and the existing topics
+     * are requested concurrently, and so are the checks of an existing topic.
+     */
+    private CompletableFuture<Void> createOrCheckTopic() {
+        Log.infof("Creating topic %s", config.topic());
+        var nodesFuture = adminCalls.call("describeCluster", adminClient.describeCluster().nodes());
+        var topicsFuture = adminCalls.call("listTopics", adminClient.listTopics().names());
+        return nodesFuture.thenCombine(topicsFuture, (nodes, topics) -> {
+            Log.debugf("Nodes %s", nodes);
+            short replicationFactor = (short) Math.max(Math.min(config.topicReplicationFactor(), nodes.size()), 1);
+            Log.debugf("ReplicationFactor calculated %s", replicationFactor);
+            if (config.topicReplicationFactor() <= 0) {
+                Log.infof("Replication factor set to %s assuming number of nodes %s", config.topicReplicationFactor(), nodes.size());
+                replicationFactor = (short) nodes.size();
+            }
+            int minInSyncReplicas = Math.max(replicationFactor - 1, 1);
+            if (topics.contains(config.topic())) {
+                Log.infof("Topic already exists %s", config.topic());
+                return CompletableFuture.allOf(checkTopicSettings(replicationFactor, minInSyncReplicas), checkCreateTime());
+            }
+            return createTopic(nodes.size(), replicationFactor, minInSyncReplicas);
+        }).thenCompose(Function.identity());
     }
 
-    private CompletionStage<Boolean> isCreateTimeConfiguredForTopic() {
-        return adminClient
-                .describeConfigs(List.of(new ConfigResource(ConfigResource.Type.TOPIC, config.topic())))
-                .all()
+    private CompletableFuture<Void> createTopic(int partitions, short replicationFactor, int minInSyncReplicas) {
+        var topic = new NewTopic(config.topic(), partitions, replicationFactor).configs(
+                Map.of(TopicConfig.RETENTION_MS_CONFIG, "3600000",
+                        TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, String.valueOf(minInSyncReplicas),
+                        TopicConfig.MESSAGE_TIMESTAMP_TYPE_CONFIG, "CreateTime"
+                ));
+        return adminCalls.call("createTopics", adminClient.createTopics(List.of(topic)).all())
+                .handle((v, error) -> {
+                    if (error == null) {
+                        Log.infof("Topic created %s", config.topic());
+                        // created with CreateTime, no need to check
+                        return CompletableFuture.<Void>completedFuture(null);
+                    } else if (AdminCalls.unwrap(error) instanceof TopicExistsException) {
+                        // if there is auto.create concurrently happening, we might get a TopicExistsException
+                        Log.infof("Topic already exists %s", config.topic());
+                        return checkCreateTime();
+                    }
+                    throw new CompletionException("Failed to create topic", AdminCalls.unwrap(error));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Checks the replication factor and min in sync replicas config of the existing topic. Mismatches and failures are
+     * only logged.
+     */
+    private CompletableFuture<Void> checkTopicSettings(short replicationFactor, int minInSyncReplicas) {
+        var replicationFactorCheck = adminCalls.call("describeTopics", adminClient.describeTopics(List.of(config.topic())).allTopicNames())
+                .thenAccept(topics -> {
+                    var replicationFactorConfig = topics.get(config.topic()).partitions().getFirst().replicas().size();
+                    if (replicationFactorConfig != replicationFactor) {
+                        Log.errorf("Replication factor for topic %s is %s, expected %s", config.topic(), replicationFactorConfig, replicationFactor);
+                    }
+                });
+        var cr = new ConfigResource(ConfigResource.Type.TOPIC, config.topic());
+        var minInSyncReplicasCheck = adminCalls.call("describeConfigs", adminClient.describeConfigs(List.of(cr)).all())
+                .thenAccept(configEntries -> {
+                    var minInSyncReplicasConfig = configEntries.get(cr).get(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG);
+                    if (minInSyncReplicasConfig == null || Integer.parseInt(minInSyncReplicasConfig.value()) != minInSyncReplicas) {
+                        Log.errorf("Min in sync replicas for topic %s is %s, expected %s", config.topic(), minInSyncReplicasConfig, minInSyncReplicas);
+                    }
+                });
+        return CompletableFuture.allOf(replicationFactorCheck, minInSyncReplicasCheck)
+                .exceptionally(error -> {
+                    Log.warn("Failed to check the settings of the topic", AdminCalls.unwrap(error));
+                    return null;
+                });
+    }
+
+    /**
+     * Fails if the topic is configured with LogAppendTime, as the latencies are derived from the record timestamps.
+     */
+    private CompletableFuture<Void> checkCreateTime() {
+        return adminCalls.call("describeConfigs", adminClient
+                        .describeConfigs(List.of(new ConfigResource(ConfigResource.Type.TOPIC, config.topic())))
+                        .all())
                 .thenApply((configs) -> configs.values()
                         .stream()
                         .findFirst()
                         .stream()
                         .map(c -> c.get(TopicConfig.MESSAGE_TIMESTAMP_TYPE_CONFIG))
                         .noneMatch(c -> "LogAppendTime".equals(c.value())))
-                .toCompletionStage()
-                .handle((isCreateTime, error) -> {
+                .<Void>handle((isCreateTime, error) -> {
                     if (error != null) {
-                        Log.warn("Failed to check topic timestamp type config for topic. Do you have permissions to describe topic configs? Will continue with the assumption that topic has CreateTime timestamp type configured.", error);
-                        return true;
+                        Log.warn("Failed to check topic timestamp type config for topic. Do you have permissions to describe topic configs? Will continue with the assumption that topic has CreateTime timestamp type configured.", AdminCalls.unwrap(error));
+                        return null;
                     } else if (!isCreateTime) {
                         Log.error("Topic does not have CreateTime timestamp type configured. Please change the topic configuration `message.timestamp.type` to `CreateTime`.");
                         throw new RuntimeException("Failed to ensure that topic has CreateTime timestamp type configured.");
                     }
-                    return true;
+                    return null;
                 });
     }
 
+    /**
+     * Sends the probes of the next second, distributed round-robin over the partitions. Probes to partitions that
+     * are stalled are skipped by the producer instead of blocking the probes to the other partitions.
+     */
     @Scheduled(every = "1s")
     void produceMessage() {
-        if (waitForTopicCreated.get()) {
+        if (waitForTopicCreated.get() || paused) {
+            return;
+        }
+        var partitions = producer.getPartitions();
+        if (partitions.isEmpty()) {
             return;
         }
         for (int i = 0; i < messagesPerSecond; i++) {
-            produceSingleMessage(message);
+            var partition = partitions.get(Math.floorMod(nextPartition++, partitions.size()));
+            producer.send(partition, randomGenerator.nextLong(), payloads.next());
         }
     }
-
-    void produceSingleMessage(String payload) {
-        producer.send(randomGenerator.nextLong(), payload);
-    }
 }
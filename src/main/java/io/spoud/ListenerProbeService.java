@@ -0,0 +1,178 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigListenerProbes;
+import io.spoud.kafka.KafkaFactory;
+import io.spoud.kafka.MessageProducer;
+import io.spoud.kafka.ProbeVariant;
+import io.spoud.kafka.VariantConsumer;
+import io.spoud.kafka.VariantProducer;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.spoud.MetricService.TAG_FROM_RACK;
+import static io.spoud.MetricService.TAG_RACK;
+import static io.spoud.MetricService.TAG_TO_RACK;
+
+/**
+ * Probes the cluster through additional listeners, e.g. internal and external ones, PrivateLink endpoints, or TLS
+ * next to plaintext. Each listener gets a dedicated producer and consumer that connect via its bootstrap servers, so
+ * that the ack and end-to-end latencies of all network paths are measured side by side from the same instance. The
+ * probes of a listener are marked as a variant (see {@link ProbeVariant}) and only its own consumer records their
+ * end-to-end latency, including the probes sent via the same listener by the other instances.
+ */
+@ApplicationScoped
+public class ListenerProbeService {
+    public static final String LISTENER_ACK_METER_NAME = "synth-client.listener.ack.latency";
+    public static final String LISTENER_E2E_METER_NAME = "synth-client.listener.e2e.latency";
+    public static final String LISTENER_RECORDS_FAILED_METER_NAME = "synth-client.listener.records-failed";
+
+    public static final String TAG_LISTENER = "listener";
+
+    private final SynthClientConfig config;
+    private final MessageProducer messageProducer;
+    private final KafkaSynthClient kafkaSynthClient;
+    private final KafkaFactory kafkaFactory;
+    private final TimeService timeService;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final String kafkaClientId;
+    private final List<ListenerProbe> probes = new ArrayList<>();
+    private ExecutorService executorService;
+
+    public ListenerProbeService(SynthClientConfig config,
+                                MessageProducer messageProducer,
+                                KafkaSynthClient kafkaSynthClient,
+                                KafkaFactory kafkaFactory,
+                                TimeService timeService,
+                                MetricService metricService,
+                                MeterRegistry meterRegistry,
+                                @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.messageProducer = messageProducer;
+        this.kafkaSynthClient = kafkaSynthClient;
+        this.kafkaFactory = kafkaFactory;
+        this.timeService = timeService;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+        this.kafkaClientId = kafkaClientId;
+    }
+
+    /**
+     * @return the client properties that make a producer or consumer connect via the given listener
+     */
+    static Map<String, Object> clientConfig(SynthClientConfigListenerProbes.Listener listener) {
+        var clientConfig = new HashMap<String, Object>(listener.properties());
+        clientConfig.put(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, listener.bootstrapServers());
+        return clientConfig;
+    }
+
+    @Startup
+    synchronized void start() {
+        var listeners = config.listenerProbes().listeners();
+        if (listeners.isEmpty()) {
+            return;
+        }
+        executorService = Executors.newFixedThreadPool(listeners.size(), new NamedThreadFactory("listener-consumer"));
+        listeners.forEach((name, listener) -> {
+            Log.infof("Starting probes via listener %s (%s)", name, listener.bootstrapServers());
+            var clientConfig = clientConfig(listener);
+            var variant = new ProbeVariant("listener-" + name, clientConfig, Tags.of(TAG_LISTENER, name));
+            var probe = new ListenerProbe(name, messageProducer.createVariantProducer(variant));
+            var consumerConfig = new HashMap<>(clientConfig);
+            consumerConfig.put(ConsumerConfig.CLIENT_ID_CONFIG, kafkaClientId + "-listener-" + name);
+            consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+            probe.consumer = new VariantConsumer(config.topic(), variant, kafkaFactory.createConsumer(consumerConfig),
+                    timeService, probe::recordE2eLatency);
+            executorService.submit(probe.consumer);
+            probes.add(probe);
+        });
+    }
+
+    @Shutdown
+    synchronized void stop() {
+        probes.forEach(probe -> {
+            probe.consumer.close();
+            probe.producer.close();
+        });
+        probes.clear();
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    @Scheduled(every = "1s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void produceMessages() {
+        if (probes.isEmpty() || kafkaSynthClient.isPaused()) {
+            return;
+        }
+        var random = ThreadLocalRandom.current();
+        for (int i = 0; i < config.listenerProbes().messagesPerSecond(); i++) {
+            for (var probe : probes) {
+                try {
+                    probe.producer.send(null, random.nextLong(), kafkaSynthClient.nextPayload(), probe::onAck);
+                } catch (Exception e) {
+                    Log.debugf(e, "Failed to send probe via listener %s", probe.listener);
+                    probe.failed.increment();
+                }
+            }
+        }
+    }
+
+    private class ListenerProbe {
+        private final String listener;
+        private final VariantProducer producer;
+        private final DistributionSummary ackLatency;
+        private final Counter failed;
+        private final Map<String, DistributionSummary> e2eLatencyByFromRack = new ConcurrentHashMap<>();
+        private VariantConsumer consumer;
+
+        ListenerProbe(String listener, VariantProducer producer) {
+            this.listener = listener;
+            this.producer = producer;
+            var tags = Tags.of(TAG_LISTENER, listener, TAG_RACK, config.rack());
+            this.ackLatency = metricService.newLatencySummary(LISTENER_ACK_METER_NAME, tags,
+                    "Ack latency of the probes sent via the listener");
+            this.failed = Counter.builder(LISTENER_RECORDS_FAILED_METER_NAME)
+                    .tags(tags)
+                    .description("Total number of probes that failed to produce via the listener")
+                    .register(meterRegistry);
+        }
+
+        void onAck(RecordMetadata metadata, Exception exception, double ackLatencyMs) {
+            if (exception != null) {
+                failed.increment();
+            } else {
+                ackLatency.record(ackLatencyMs);
+            }
+        }
+
+        void recordE2eLatency(int partition, long latencyMs, String fromRack) {
+            e2eLatencyByFromRack.computeIfAbsent(fromRack, rack -> metricService.newLatencySummary(LISTENER_E2E_METER_NAME,
+                            Tags.of(TAG_LISTENER, listener, TAG_TO_RACK, config.rack(), TAG_FROM_RACK, rack),
+                            "End-to-end latency of the probes sent and consumed via the listener"))
+                    .record(latencyMs);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.StartupEvent;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.MessageProducer;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.apache.kafka.clients.producer.KafkaProducer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs stepped load tests: for each step of the schedule, additional messages are produced at the step's rate and
+ * payload size by several producers in parallel, each with its own Kafka producer. The latencies of these messages are recorded separately
+ * from the regular probes, summarized per step and stored in the history database. The first step whose p99 latency
+ * degrades by more than the configured factor compared to the first step is marked as the knee of the latency curve.
+ */
+@Singleton
+@Path("/load-test")
+@Produces("application/json")
+public class LoadTestService {
+    public static final String HEADER_LOAD_STEP = "load-step";
+
+    private static final long TICK_MILLIS = 10;
+    // time to wait after a step for in-flight messages to be acknowledged and consumed
+    private static final Duration DRAIN_TIME = Duration.ofSeconds(2);
+    // maximum number of latency samples kept per step
+    private static final int RESERVOIR_SIZE = 100_000;
+
+    private final SynthClientConfig config;
+    private final MessageProducer producer;
+    private final HistoryService historyService;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(new NamedThreadFactory("load-test"));
+    private final ScheduledExecutorService loadProducers;
+    private final List<StepResult> results = new ArrayList<>();
+    private volatile StepRecorder currentStep;
+    private Future<?> currentRun;
+    private String currentRunId;
+
+    public record LoadStep(int messagesPerSecond, int messageSizeBytes, Duration duration) {
+    }
+
+    public record StepResult(String runId, int step, Instant started, int messagesPerSecond, int messageSizeBytes,
+                             long sent, long failed, double e2eP50, double e2eP99, double ackP50, double ackP99,
+                             boolean knee) {
+    }
+
+    public record LoadTestStatus(String runId, boolean running, List<StepResult> results) {
+    }
+
+    public LoadTestService(SynthClientConfig config, MessageProducer producer, HistoryService historyService) {
+        this.config = config;
+        this.producer = producer;
+        this.historyService = historyService;
+        this.loadProducers = Executors.newScheduledThreadPool(Math.max(1, config.loadTest().producerThreads()),
+                new NamedThreadFactory("load-test-producer"));
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (config.loadTest().startOnStartup()) {
+            start(configuredSchedule());
+        }
+    }
+
+    @Shutdown
+    void shutdown() {
+        stop();
+        loadProducers.shutdownNow();
+        coordinator.shutdownNow();
+    }
+
+    /**
+     * @return every configured rate combined with every configured payload size, ordered by size and then by rate
+     */
+    List<LoadStep> configuredSchedule() {
+        var steps = new ArrayList<LoadStep>();
+        for (var size : config.loadTest().messageSizeBytes()) {
+            for (var rate : config.loadTest().messagesPerSecond()) {
+                steps.add(new LoadStep(rate, size, config.loadTest().stepDuration()));
+            }
+        }
+        return steps;
+    }
+
+    @GET
+    public synchronized LoadTestStatus status() {
+        return new LoadTestStatus(currentRunId, isRunning(), List.copyOf(results));
+    }
+
+    @POST
+    @Path("/start")
+    public LoadTestStatus startConfigured() {
+        return start(configuredSchedule());
+    }
+
+    @POST
+    @Path("/stop")
+    public synchronized LoadTestStatus stop() {
+        if (isRunning()) {
+            Log.infof("Stopping load test %s", currentRunId);
+            currentRun.cancel(true);
+        }
+        return status();
+    }
+
+    /**
+     * Starts a load test with the given schedule.
+     *
+     * @throws WebApplicationException with status 409 if a load test is already running
+     */
+    public synchronized LoadTestStatus start(List<LoadStep> schedule) {
+        if (isRunning()) {
+            throw new WebApplicationException("Load test " + currentRunId + " is already running", Response.Status.CONFLICT);
+        }
+        currentRunId = UUID.randomUUID().toString();
+        results.clear();
+        var runId = currentRunId;
+        Log.infof("Starting load test %s with %d steps", runId, schedule.size());
+        currentRun = coordinator.submit(() -> run(runId, schedule));
+        return status();
+    }
+
+    private boolean isRunning() {
+        return currentRun != null && !currentRun.isDone();
+    }
+
+    private void run(String runId, List<LoadStep> schedule) {
+        var kneeDetector = new KneeDetector(config.loadTest().kneeFactor(), config.loadTest().stopAtKnee());
+        try {
+            for (int i = 0; i < schedule.size(); i++) {
+                var result = runStep(runId, i, schedule.get(i), kneeDetector);
+                synchronized (this) {
+                    results.add(result);
+                }
+                historyService.recordLoadTestStep(result);
+                Log.infof("Load test %s step %d: %d msg/s with %d bytes -> sent %d, failed %d, e2e p99 %.2fms, ack p99 %.2fms%s",
+                        runId, i, result.messagesPerSecond(), result.messageSizeBytes(), result.sent(), result.failed(),
+                        result.e2eP99(), result.ackP99(), result.knee() ? " (knee)" : "");
+                if (kneeDetector.shouldStop(result)) {
+                    Log.infof("Load test %s reached the knee of the latency curve, stopping", runId);
+                    break;
+                }
+            }
+            Log.infof("Load test %s finished", runId);
+        } catch (InterruptedException e) {
+            Log.infof("Load test %s was interrupted", runId);
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.errorf(e, "Load test %s failed", runId);
+        } finally {
+            currentStep = null;
+        }
+    }
+
+    private StepResult runStep(String runId, int stepIndex, LoadStep step, KneeDetector kneeDetector) throws InterruptedException {
+        var stepId = runId + "/" + stepIndex;
+        var recorder = new StepRecorder(stepId);
+        var payloads = PayloadGenerator.fixed(step.messageSizeBytes(), config.messages().payload().poolSize(),
+                config.messages().payload().compressibleFraction());
+        var started = Instant.now();
+        var threads = Math.max(1, config.loadTest().producerThreads());
+        var tasks = new ArrayList<ScheduledFuture<?>>();
+        var kafkaProducers = new ArrayList<KafkaProducer<Long, byte[]>>();
+        currentStep = recorder;
+        try {
+            for (int t = 0; t < threads; t++) {
+                var loadProducer = producer.createLoadProducer(t);
+                kafkaProducers.add(loadProducer);
+                var task = new LoadTask(recorder, producer, loadProducer, payloads, step.messagesPerSecond() / (double) threads);
+                tasks.add(loadProducers.scheduleAtFixedRate(task, 0, TICK_MILLIS, TimeUnit.MILLISECONDS));
+            }
+            try {
+                var warmUp = config.loadTest().stepWarmUp();
+                Thread.sleep(warmUp.toMillis());
+                recorder.endWarmUp();
+                Thread.sleep(Math.max(0, step.duration().minus(warmUp).toMillis()));
+            } finally {
+                tasks.forEach(task -> task.cancel(false));
+            }
+            Thread.sleep(DRAIN_TIME.toMillis());
+            currentStep = null;
+            var e2e = recorder.e2eLatencies.snapshot();
+            var ack = recorder.ackLatencies.snapshot();
+            var e2eP99 = percentile(e2e, 0.99);
+            var failed = recorder.failed.get();
+            var sent = recorder.sent.get();
+            var knee = kneeDetector.isKnee(sent, failed, e2eP99);
+            return new StepResult(runId, stepIndex, started, step.messagesPerSecond(), step.messageSizeBytes(),
+                    sent, failed, percentile(e2e, 0.5), e2eP99, percentile(ack, 0.5), percentile(ack, 0.99), knee);
+        } finally {
+            // messages that are not acknowledged after the drain time are not part of the result anyway
+            kafkaProducers.forEach(loadProducer -> loadProducer.close(Duration.ZERO));
+        }
+    }
+
+    /**
+     * Records the end-to-end latency of a consumed load test message.
+     *
+     * @param stepId value of the {@link #HEADER_LOAD_STEP} header
+     */
+    public void recordE2eLatency(String stepId, long latencyMs) {
+        var step = currentStep;
+        if (step != null && step.stepId.equals(stepId)) {
+            step.e2eLatencies.add(latencyMs);
+        }
+    }
+
+    static double percentile(double[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return Double.NaN;
+        }
+        var index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private static class LoadTask implements Runnable {
+        private final StepRecorder recorder;
+        private final KafkaProducer<Long, byte[]> loadProducer;
+        private final MessageProducer producer;
+        private final PayloadGenerator payloads;
+        private final double messagesPerTick;
+        private final byte[] stepIdHeader;
+        private final byte[] warmUpHeader;
+        private double credit = 0;
+
+        LoadTask(StepRecorder recorder, MessageProducer producer, KafkaProducer<Long, byte[]> loadProducer,
+                 PayloadGenerator payloads, double messagesPerSecond) {
+            this.recorder = recorder;
+            this.producer = producer;
+            this.loadProducer = loadProducer;
+            this.payloads = payloads;
+            this.messagesPerTick = messagesPerSecond * TICK_MILLIS / 1000.0;
+            this.stepIdHeader = recorder.stepId.getBytes();
+            // does not match the step ID, so that the end-to-end latencies of the warm-up are not recorded either
+            this.warmUpHeader = (recorder.stepId + "/warm-up").getBytes();
+        }
+
+        @Override
+        public void run() {
+            credit += messagesPerTick;
+            while (credit >= 1) {
+                credit--;
+                // acks and failures of warm-up messages that arrive after the warm-up must not be recorded
+                var warmUp = recorder.warmingUp;
+                var record = producer.newRecord(null, ThreadLocalRandom.current().nextLong(), payloads.next());
+                record.headers().add(HEADER_LOAD_STEP, warmUp ? warmUpHeader : stepIdHeader);
+                var sendNanos = System.nanoTime();
+                try {
+                    loadProducer.send(record, (metadata, exception) -> {
+                        if (warmUp) {
+                            return;
+                        }
+                        if (exception != null) {
+                            recorder.failed.incrementAndGet();
+                        } else {
+                            recorder.ackLatencies.add((System.nanoTime() - sendNanos) / 1_000_000.0);
+                        }
+                    });
+                    if (!warmUp) {
+                        recorder.sent.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    if (!warmUp) {
+                        recorder.failed.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decides which step is the knee of the latency curve: a step whose p99 latency exceeds the p99 latency of the
+     * first step that sent messages by more than the knee factor, or that failed to send more than 1% of its messages.
+     */
+    static final class KneeDetector {
+        private final double kneeFactor;
+        private final boolean stopAtKnee;
+        private double baselineP99 = Double.NaN;
+
+        KneeDetector(double kneeFactor, boolean stopAtKnee) {
+            this.kneeFactor = kneeFactor;
+            this.stopAtKnee = stopAtKnee;
+        }
+
+        /**
+         * Must be called once per step, in the order of the schedule.
+         */
+        boolean isKnee(long sent, long failed, double e2eP99) {
+            var knee = (!Double.isNaN(baselineP99) && e2eP99 > baselineP99 * kneeFactor) || (sent > 0 && failed > sent / 100);
+            if (Double.isNaN(baselineP99) && sent > 0) {
+                baselineP99 = e2eP99;
+            }
+            return knee;
+        }
+
+        boolean shouldStop(StepResult result) {
+            return result.knee() && stopAtKnee;
+        }
+    }
+
+    private static class StepRecorder {
+        private final String stepId;
+        private final LatencyReservoir e2eLatencies = new LatencyReservoir(RESERVOIR_SIZE);
+        private final LatencyReservoir ackLatencies = new LatencyReservoir(RESERVOIR_SIZE);
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile boolean warmingUp = true;
+
+        StepRecorder(String stepId) {
+            this.stepId = stepId;
+        }
+
+        /**
+         * Starts recording. Messages sent during the warm-up are not recorded, even if they are acknowledged or
+         * consumed afterwards.
+         */
+        void endWarmUp() {
+            warmingUp = false;
+        }
+    }
+
+    /**
+     * Keeps a uniform random sample of at most a fixed number of values.
+     */
+    static class LatencyReservoir {
+        private final double[] values;
+        private long count = 0;
+
+        LatencyReservoir(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        synchronized void add(double value) {
+            if (count < values.length) {
+                values[(int) count] = value;
+            } else {
+                var index = ThreadLocalRandom.current().nextLong(count + 1);
+                if (index < values.length) {
+                    values[(int) index] = value;
+                }
+            }
+            count++;
+        }
+
+        synchronized void clear() {
+            count = 0;
+        }
+
+        synchronized double[] snapshot() {
+            var snapshot = Arrays.copyOf(values, (int) Math.min(count, values.length));
+            Arrays.sort(snapshot);
+            return snapshot;
+        }
+    }
+}
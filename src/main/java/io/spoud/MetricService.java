@@ -12,6 +12,7 @@ import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.ToDoubleFunction;
@@ -21,6 +22,9 @@ public class MetricService {
 
     public static final String E2E_METER_NAME = "synth-client.e2e.latency";
     public static final String ACK_METER_NAME = "synth-client.ack.latency";
+    public static final String E2E_PAUSE_CORRECTED_METER_NAME = "synth-client.e2e.latency.pause-corrected";
+    public static final String ACK_PAUSE_CORRECTED_METER_NAME = "synth-client.ack.latency.pause-corrected";
+    public static final String PAUSE_AFFECTED_SAMPLES_METER_NAME = "synth-client.pause-affected-samples";
     public static final String TIME_SINCE_LAST_CONSUMPTION_METER_NAME = "synth-client.time-since-last-consumption";
     public static final String RECORDS_PRODUCED_METER_NAME = "synth-client.producer.records-produced";
     public static final String RECORDS_FAILED_METER_NAME = "synth-client.producer.records-failed";
@@ -32,27 +36,37 @@ public class MetricService {
     public static final String TAG_FROM_RACK = "fromRack";
     public static final String TAG_BROKER_RACK = "viaBrokerRack";
     public static final String TAG_RACK = "rack";
+    public static final String TAG_LATENCY_TYPE = "type";
 
-    private List<Long> e2eLatencyInitialBuffer = new ArrayList<>();
-    private List<Long> ackLatencyInitialBuffer = new ArrayList<>();
+    private List<BufferedSample> e2eLatencyInitialBuffer = new ArrayList<>();
+    private List<BufferedSample> ackLatencyInitialBuffer = new ArrayList<>();
 
     private final MeterRegistry meterRegistry;
     private final PartitionRebalancer partitionRebalancer;
-    private final Map<PartitionRackPair, WrappedDistributionSummary> e2eLatencies = new HashMap<>();
-    private final Map<Integer, WrappedDistributionSummary> ackLatenciesByPartition = new HashMap<>();
+    private final PauseDetector pauseDetector;
+    private final StartupState startupState;
+    // concurrent, as the summaries are read by the topology refresh and the metrics endpoints while they are recorded
+    private final Map<PartitionRackPair, WrappedDistributionSummary> e2eLatencies = new ConcurrentHashMap<>();
+    private final Map<Integer, WrappedDistributionSummary> ackLatenciesByPartition = new ConcurrentHashMap<>();
     private final SynthClientConfig config;
     private final String kafkaClientId;
     private final AtomicReference<Instant> lastConsumptionTime = new AtomicReference<>(Instant.now());
     private final Map<Integer, Long> messagesConsumedPerPartition = new HashMap<>();
     private Counter recordsProducedCounter;
     private Counter recordsFailedCounter;
+    private Counter e2ePauseAffectedCounter;
+    private Counter ackPauseAffectedCounter;
 
     public MetricService(MeterRegistry meterRegistry,
                          PartitionRebalancer partitionRebalancer,
+                         PauseDetector pauseDetector,
+                         StartupState startupState,
                          SynthClientConfig config,
                          @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
         this.meterRegistry = meterRegistry;
         this.partitionRebalancer = partitionRebalancer;
+        this.pauseDetector = pauseDetector;
+        this.startupState = startupState;
         this.config = config;
         this.kafkaClientId = kafkaClientId;
         TimeGauge.builder(TIME_SINCE_LAST_CONSUMPTION_METER_NAME, this, TimeUnit.MILLISECONDS,
@@ -67,6 +81,16 @@ public class MetricService {
                 .tag(TAG_RACK, config.rack())
                 .description("Total number of records that failed to produce")
                 .register(meterRegistry);
+        e2ePauseAffectedCounter = genPauseAffectedCounter("e2e");
+        ackPauseAffectedCounter = genPauseAffectedCounter("ack");
+    }
+
+    private Counter genPauseAffectedCounter(String latencyType) {
+        return Counter.builder(PAUSE_AFFECTED_SAMPLES_METER_NAME)
+                .tag(TAG_RACK, config.rack())
+                .tag(TAG_LATENCY_TYPE, latencyType)
+                .description("Number of latency samples whose flight window overlapped a pause of the local JVM")
+                .register(meterRegistry);
     }
 
     public <T> void addGauge(String name, Tags tags, T stateObject, ToDoubleFunction<T> valueFunction) {
@@ -89,21 +113,32 @@ public class MetricService {
         recordsFailedCounter.increment();
     }
 
+    /**
+     * @param partition partition of the synth client topic
+     * @return ID of the broker that leads the given partition or "unknown" if the leader is not known (yet)
+     */
+    public String getBrokerOfPartition(int partition) {
+        return partitionRebalancer.getBrokerIdForPartition(partition)
+                .map(String::valueOf)
+                .orElse("unknown");
+    }
+
     synchronized public void recordLatency(String topic, int partition, long latencyMs, String fromRack) {
         Log.debugv("Latency for partition {0}: {1}ms", partition, latencyMs);
         if (partitionRebalancer.isInitialRefreshPending()) {
             Log.info("Ignoring latencies as the initial partition assignment is not done yet");
             return;
         }
-        String broker = partitionRebalancer.getBrokerIdForPartition(partition)
-                .map(String::valueOf)
-                .orElse("unknown");
+        String broker = getBrokerOfPartition(partition);
         String partitionLeaderRack = partitionRebalancer.getRackOfPartitionLeader(partition);
         long recordsSeen = messagesConsumedPerPartition.computeIfAbsent(partition, (k) -> (long) 0);
         messagesConsumedPerPartition.put(partition, Math.max(1, recordsSeen + 1));
-        if (recordsSeen < config.messages().ignoreFirstNMessages()) {
+        // without a consumer group, there are no rebalances whose delays would distort the first latencies
+        var ignoreFirstNMessages = config.consumerMode() == SynthClientConfig.ConsumerMode.SUBSCRIBE
+                ? config.messages().ignoreFirstNMessages() : 0;
+        if (recordsSeen < ignoreFirstNMessages) {
             Log.debugv("Ignoring latency for partition {0} as we have seen only {1} / {2} records",
-                    partition, recordsSeen, config.messages().ignoreFirstNMessages());
+                    partition, recordsSeen, ignoreFirstNMessages);
             return;
         }
         var key = new PartitionRackPair(partition, fromRack);
@@ -111,61 +146,81 @@ public class MetricService {
                 .computeIfAbsent(key, (k) -> genE2eSummary(topic, partition, broker, fromRack, partitionLeaderRack));
         if (!e2eLatency.broker().equals(broker)) {
             // broker changed, recreate the distribution summary
-            meterRegistry.remove(e2eLatency.distributionSummary());
+            e2eLatency.removeFrom(meterRegistry);
             e2eLatency = genE2eSummary(topic, partition, broker, fromRack, partitionLeaderRack);
             e2eLatencies.put(key, e2eLatency);
         }
+        var sample = new BufferedSample(latencyMs, isPauseAffected(latencyMs, e2ePauseAffectedCounter));
         if (e2eLatencyInitialBuffer.size() < config.minSamplesFirstWindow()) {
-            e2eLatencyInitialBuffer.add(latencyMs);
+            e2eLatencyInitialBuffer.add(sample);
             if (e2eLatencyInitialBuffer.size() == config.minSamplesFirstWindow()) {
                 Log.info("Initial e2e latencies recorded");
                 Log.debugf("Initial e2e latencies recorded for partition %s %s", partition, e2eLatencyInitialBuffer);
                 WrappedDistributionSummary finalE2eLatency = e2eLatency;
-                e2eLatencyInitialBuffer.forEach(latency -> finalE2eLatency.distributionSummary().record(latency));
+                e2eLatencyInitialBuffer.forEach(finalE2eLatency::record);
+                startupState.onValidSample();
             }
         } else {
-            e2eLatency.distributionSummary().record(latencyMs);
+            e2eLatency.record(sample);
+            startupState.onValidSample();
+        }
+    }
+
+    private boolean isPauseAffected(double latencyMs, Counter pauseAffectedCounter) {
+        if (pauseDetector.pausedWithinLast(latencyMs)) {
+            pauseAffectedCounter.increment();
+            return true;
         }
+        return false;
     }
 
     public Collection<WrappedDistributionSummary> getE2ELatencies() {
         return e2eLatencies.values();
     }
 
-    public void recordAckLatency(String topic, int partition, Duration between) {
-        Log.debugv("Ack latency for partition {0}: {1}ms", partition, between.toMillis());
+    /**
+     * @param latencyMs ack latency in milliseconds, with a fractional part for sub-millisecond precision
+     */
+    public void recordAckLatency(String topic, int partition, double latencyMs) {
+        Log.debugv("Ack latency for partition {0}: {1}ms", partition, latencyMs);
         if (partitionRebalancer.isInitialRefreshPending()) {
             Log.info("Ignoring ack latency as the initial partition assignment is not done yet");
             return;
         }
-        String broker = partitionRebalancer.getBrokerIdForPartition(partition)
-                .map(String::valueOf)
-                .orElse("unknown");
+        String broker = getBrokerOfPartition(partition);
         String partitionLeaderRack = partitionRebalancer.getRackOfPartitionLeader(partition);
         var ackLatency = ackLatenciesByPartition.computeIfAbsent(partition, (k) -> genAckSummary(topic, partition, broker, partitionLeaderRack));
         if (!ackLatency.broker().equals(broker)) {
             // broker changed, recreate the distribution summary
-            meterRegistry.remove(ackLatency.distributionSummary());
+            ackLatency.removeFrom(meterRegistry);
             ackLatency = genAckSummary(topic, partition, broker, partitionLeaderRack);
             ackLatenciesByPartition.put(partition, ackLatency);
         }
+        var sample = new BufferedSample(latencyMs, isPauseAffected(latencyMs, ackPauseAffectedCounter));
         if (ackLatencyInitialBuffer.size() < config.minSamplesFirstWindow()) {
-            ackLatencyInitialBuffer.add(between.toMillis());
+            ackLatencyInitialBuffer.add(sample);
             if (ackLatencyInitialBuffer.size() == config.minSamplesFirstWindow()) {
                 Log.info("Initial ack latencies recorded");
                 Log.debugf("Initial ack latencies recorded for partition %s %s", partition, ackLatencyInitialBuffer);
                 WrappedDistributionSummary finalAckLatency = ackLatency;
-                ackLatencyInitialBuffer.forEach(latency -> finalAckLatency.distributionSummary().record(latency));
+                ackLatencyInitialBuffer.forEach(finalAckLatency::record);
             }
         } else {
-            ackLatency.distributionSummary().record(between.toMillis());
+            ackLatency.record(sample);
         }
 
     }
 
     private WrappedDistributionSummary genAckSummary(String topic, int partition, String broker, String brokerRack) {
-        return new WrappedDistributionSummary(DistributionSummary
-                .builder(ACK_METER_NAME)
+        return new WrappedDistributionSummary(
+                genAckSummary(ACK_METER_NAME, topic, partition, broker, brokerRack),
+                config.pauseDetection().enabled() ? genAckSummary(ACK_PAUSE_CORRECTED_METER_NAME, topic, partition, broker, brokerRack) : null,
+                broker);
+    }
+
+    private DistributionSummary genAckSummary(String name, String topic, int partition, String broker, String brokerRack) {
+        return DistributionSummary
+                .builder(name)
                 .baseUnit("ms")
                 .tag(TAG_TOPIC, topic)
                 .tag(TAG_PARTITION, String.valueOf(partition))
@@ -178,12 +233,19 @@ public class MetricService {
                 .publishPercentiles(0.5, 0.8, 0.9, 0.95, 0.99)
                 .publishPercentileHistogram(config.publishHistogramBuckets())
                 .distributionStatisticExpiry(config.samplingTimeWindow())
-                .register(meterRegistry), broker);
+                .register(meterRegistry);
     }
 
     private WrappedDistributionSummary genE2eSummary(String topic, int partition, String broker, String fromRack, String brokerRack) {
-        return new WrappedDistributionSummary(DistributionSummary
-                .builder(E2E_METER_NAME)
+        return new WrappedDistributionSummary(
+                genE2eSummary(E2E_METER_NAME, topic, partition, broker, fromRack, brokerRack),
+                config.pauseDetection().enabled() ? genE2eSummary(E2E_PAUSE_CORRECTED_METER_NAME, topic, partition, broker, fromRack, brokerRack) : null,
+                broker);
+    }
+
+    private DistributionSummary genE2eSummary(String name, String topic, int partition, String broker, String fromRack, String brokerRack) {
+        return DistributionSummary
+                .builder(name)
                 .baseUnit("ms")
                 .tag(TAG_TOPIC, topic)
                 .tag(TAG_PARTITION, String.valueOf(partition))
@@ -197,13 +259,49 @@ public class MetricService {
                 .publishPercentiles(0.5, 0.8, 0.9, 0.95, 0.99)
                 .publishPercentileHistogram(config.publishHistogramBuckets())
                 .distributionStatisticExpiry(config.samplingTimeWindow())
-                .register(meterRegistry), broker);
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers a latency summary with the same percentiles, bounds and expiry as the regular latency meters.
+     */
+    public DistributionSummary newLatencySummary(String name, Tags tags, String description) {
+        return DistributionSummary
+                .builder(name)
+                .baseUnit("ms")
+                .tags(tags)
+                .description(description)
+                .minimumExpectedValue(config.expectedMinLatency())
+                .maximumExpectedValue(config.expectedMaxLatency())
+                .publishPercentiles(0.5, 0.8, 0.9, 0.95, 0.99)
+                .publishPercentileHistogram(config.publishHistogramBuckets())
+                .distributionStatisticExpiry(config.samplingTimeWindow())
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the given published percentile of the summary or NaN if it is not published or has no samples
+     */
+    public static double getPercentile(DistributionSummary summary, double percentile) {
+        for (var value : summary.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                return summary.count() == 0 ? Double.NaN : value.value();
+            }
+        }
+        return Double.NaN;
     }
 
     public Collection<WrappedDistributionSummary> getAckLatencies() {
         return ackLatenciesByPartition.values();
     }
 
+    /**
+     * @return the current latencies between the racks, see {@link RackTopology}
+     */
+    public RackTopology getRackTopology() {
+        return RackTopology.of(config.rack(), e2eLatencies.values(), ackLatenciesByPartition.values());
+    }
+
     private Collection<ObjectName> getAvailableMBeanNames() {
         try {
             return ManagementFactory.getPlatformMBeanServer().queryNames(null, null);
@@ -213,7 +311,32 @@ public class MetricService {
         }
     }
 
-    public record WrappedDistributionSummary(DistributionSummary distributionSummary, String broker) {
+    /**
+     * Raw and (optionally) pause-corrected distribution summaries of a single latency series.
+     *
+     * @param distributionSummary   summary of all samples
+     * @param pauseCorrectedSummary summary of the samples that did not overlap a local JVM pause, null if pause detection is disabled
+     * @param broker                broker that the series is attributed to
+     */
+    public record WrappedDistributionSummary(DistributionSummary distributionSummary,
+                                             DistributionSummary pauseCorrectedSummary,
+                                             String broker) {
+        void record(BufferedSample sample) {
+            distributionSummary.record(sample.latencyMs());
+            if (pauseCorrectedSummary != null && !sample.pauseAffected()) {
+                pauseCorrectedSummary.record(sample.latencyMs());
+            }
+        }
+
+        void removeFrom(MeterRegistry meterRegistry) {
+            meterRegistry.remove(distributionSummary);
+            if (pauseCorrectedSummary != null) {
+                meterRegistry.remove(pauseCorrectedSummary);
+            }
+        }
+    }
+
+    private record BufferedSample(double latencyMs, boolean pauseAffected) {
     }
 
     private record PartitionRackPair(int partition, String rack) {
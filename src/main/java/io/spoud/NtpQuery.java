@@ -0,0 +1,147 @@
+package io.spoud;
+
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.NtpV3Packet;
+import org.apache.commons.net.ntp.TimeStamp;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * SNTP requests with nanosecond timestamps, and the combination of the responses of several servers.
+ */
+final class NtpQuery {
+    static final int DEFAULT_PORT = 123;
+    // seconds from 1900 (NTP epoch) to 1970 (Unix epoch)
+    private static final long NTP_EPOCH_OFFSET_SECONDS = 2_208_988_800L;
+
+    /**
+     * @param server      the server that sent the response
+     * @param offsetNanos offset of the server's clock from the local clock
+     * @param delayNanos  round-trip delay, excluding the processing time of the server
+     * @param errorNanos  maximum error of the offset: half the delay plus the server's own error
+     */
+    record Sample(String server, long offsetNanos, long delayNanos, long errorNanos) {
+    }
+
+    /**
+     * @param offsetNanos combined offset from the local clock
+     * @param errorNanos  estimated maximum error of the offset
+     * @param samples     number of samples the offset is based on
+     */
+    record Estimate(long offsetNanos, long errorNanos, int samples) {
+    }
+
+    private NtpQuery() {
+    }
+
+    /**
+     * Parses `host`, `host:port` or `[ipv6]:port`.
+     */
+    static InetSocketAddress parseServer(String server) {
+        server = server.trim();
+        if (server.startsWith("[")) {
+            var end = server.indexOf(']');
+            var host = server.substring(1, end);
+            var port = server.length() > end + 2 ? Integer.parseInt(server.substring(end + 2)) : DEFAULT_PORT;
+            return InetSocketAddress.createUnresolved(host, port);
+        }
+        var colon = server.lastIndexOf(':');
+        if (colon < 0 || server.indexOf(':') != colon) {
+            // no port, or an IPv6 address without brackets
+            return InetSocketAddress.createUnresolved(server, DEFAULT_PORT);
+        }
+        return InetSocketAddress.createUnresolved(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)));
+    }
+
+    /**
+     * Sends a single SNTP request to the given server.
+     *
+     * @throws IOException if the server does not respond in time or is not synchronized
+     */
+    static Sample query(InetSocketAddress server, Duration timeout) throws IOException {
+        var address = new InetSocketAddress(InetAddress.getByName(server.getHostString()), server.getPort());
+        try (var socket = new DatagramSocket()) {
+            socket.setSoTimeout((int) Math.max(1, timeout.toMillis()));
+            var request = new NtpV3Impl();
+            request.setMode(NtpV3Packet.MODE_CLIENT);
+            request.setVersion(NtpV3Packet.VERSION_4);
+            var requestPacket = request.getDatagramPacket();
+            requestPacket.setSocketAddress(address);
+            var response = new NtpV3Impl();
+            var responsePacket = response.getDatagramPacket();
+
+            var t1 = wallClockNanos();
+            var originate = toNtp(t1);
+            request.setTransmitTime(new TimeStamp(originate));
+            socket.send(requestPacket);
+            do {
+                // responses to earlier requests would not match the originate timestamp
+                socket.receive(responsePacket);
+            } while (response.getOriginateTimeStamp().ntpValue() != originate);
+            var t4 = wallClockNanos();
+
+            if (response.getStratum() == 0 || response.getLeapIndicator() == 3) {
+                throw new IOException("Time server " + server + " is not synchronized");
+            }
+            var t2 = fromNtp(response.getReceiveTimeStamp().ntpValue());
+            var t3 = fromNtp(response.getTransmitTimeStamp().ntpValue());
+            var offset = ((t2 - t1) + (t3 - t4)) / 2;
+            var delay = Math.max(0, (t4 - t1) - (t3 - t2));
+            var serverError = (long) ((response.getRootDelayInMillisDouble() / 2 + response.getRootDispersionInMillisDouble()) * 1e6);
+            return new Sample(server.toString(), offset, delay, delay / 2 + serverError);
+        }
+    }
+
+    /**
+     * Discards samples whose delay exceeds the maximum, keeps the better half by delay (but at least three samples),
+     * and takes the median offset of those, which is robust against single servers with a wrong time. The error is
+     * the error of the best sample plus the median deviation of the selected offsets from their median.
+     */
+    static Optional<Estimate> combine(List<Sample> samples, Duration maxRoundTripDelay) {
+        var usable = samples.stream()
+                .filter(s -> s.delayNanos() <= maxRoundTripDelay.toNanos())
+                .sorted(Comparator.comparingLong(Sample::delayNanos))
+                .toList();
+        if (usable.isEmpty()) {
+            return Optional.empty();
+        }
+        var selected = usable.subList(0, Math.min(usable.size(), Math.max(3, (usable.size() + 1) / 2)));
+        var median = median(selected.stream().mapToLong(Sample::offsetNanos).toArray());
+        var deviation = median(selected.stream().mapToLong(s -> Math.abs(s.offsetNanos() - median)).toArray());
+        var bestError = selected.stream().mapToLong(Sample::errorNanos).min().orElse(0);
+        return Optional.of(new Estimate(median, bestError + deviation, selected.size()));
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        var n = values.length;
+        return n % 2 == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2;
+    }
+
+    static long wallClockNanos() {
+        var now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    static long toNtp(long epochNanos) {
+        var seconds = Math.floorDiv(epochNanos, 1_000_000_000L) + NTP_EPOCH_OFFSET_SECONDS;
+        var nanos = Math.floorMod(epochNanos, 1_000_000_000L);
+        var fraction = (nanos << 32) / 1_000_000_000L;
+        return (seconds << 32) | fraction;
+    }
+
+    static long fromNtp(long ntp) {
+        var seconds = (ntp >>> 32) - NTP_EPOCH_OFFSET_SECONDS;
+        var fraction = ntp & 0xFFFFFFFFL;
+        return seconds * 1_000_000_000L + ((fraction * 1_000_000_000L) >>> 32);
+    }
+}
@@ -0,0 +1,145 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigPauseDetection;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Detects pauses of the local JVM (GC, safepoints, CPU throttling, ...) using a sleeper thread in the style of jHiccup:
+ * the thread repeatedly sleeps for a short interval and any time it oversleeps by more than the configured threshold,
+ * the interval is recorded as a pause. Latency samples whose flight window overlaps such a pause were (at least partially)
+ * measured while the probe itself was not running and can therefore be excluded from the pause-corrected meters.
+ * <p>
+ * A sleeper thread was chosen over JFR streaming because it works the same way in JVM and native mode.
+ */
+@ApplicationScoped
+public class PauseDetector {
+    public static final String PAUSE_METER_NAME = "synth-client.jvm.pause";
+
+    // number of most recent pauses that are kept around for overlap checks
+    static final int HISTORY_SIZE = 256;
+
+    private final boolean enabled;
+    private final long resolutionNanos;
+    private final long thresholdNanos;
+    private final DistributionSummary pauses;
+    private final long[] pauseStarts = new long[HISTORY_SIZE];
+    private final long[] pauseEnds = new long[HISTORY_SIZE];
+    private int pauseCount = 0;
+    private volatile long lastPauseEnd;
+    private volatile boolean pauseSeen = false;
+    private volatile boolean running = false;
+    private Thread detectorThread;
+
+    @Inject
+    public PauseDetector(SynthClientConfig config, MeterRegistry meterRegistry) {
+        this(config.pauseDetection(), config.rack(), config.samplingTimeWindow(), meterRegistry);
+    }
+
+    PauseDetector(SynthClientConfigPauseDetection config, String rack, Duration samplingTimeWindow, MeterRegistry meterRegistry) {
+        this.enabled = config.enabled();
+        this.resolutionNanos = config.resolution().toNanos();
+        this.thresholdNanos = config.threshold().toNanos();
+        this.pauses = DistributionSummary.builder(PAUSE_METER_NAME)
+                .baseUnit("ms")
+                .tag(TAG_RACK, rack)
+                .description("Pauses of the synth client JVM as observed by the pause detector")
+                .publishPercentiles(0.5, 0.99)
+                .distributionStatisticExpiry(samplingTimeWindow)
+                .register(meterRegistry);
+    }
+
+    @Startup
+    void start() {
+        if (!enabled) {
+            Log.info("Pause detection is disabled");
+            return;
+        }
+        running = true;
+        detectorThread = Thread.ofPlatform()
+                .daemon()
+                .name("pause-detector")
+                .priority(Thread.MAX_PRIORITY)
+                .start(this::detectPauses);
+    }
+
+    @Shutdown
+    void stop() {
+        running = false;
+        if (detectorThread != null) {
+            detectorThread.interrupt();
+        }
+    }
+
+    private void detectPauses() {
+        Log.infof("Pause detector started with resolution of %dns and threshold of %dns", resolutionNanos, thresholdNanos);
+        while (running) {
+            long before = System.nanoTime();
+            try {
+                TimeUnit.NANOSECONDS.sleep(resolutionNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long after = System.nanoTime();
+            long hiccup = after - before - resolutionNanos;
+            if (hiccup > thresholdNanos) {
+                recordPause(before + resolutionNanos, after);
+            }
+        }
+    }
+
+    synchronized void recordPause(long startNanos, long endNanos) {
+        var slot = pauseCount++ % HISTORY_SIZE;
+        pauseStarts[slot] = startNanos;
+        pauseEnds[slot] = endNanos;
+        lastPauseEnd = endNanos;
+        pauseSeen = true;
+        pauses.record((endNanos - startNanos) / 1_000_000.0);
+        Log.debugf("Detected JVM pause of %.2fms", (endNanos - startNanos) / 1_000_000.0);
+    }
+
+    /**
+     * Checks whether the given window overlaps with any of the recently detected pauses.
+     *
+     * @param startNanos start of the window as returned by {@link System#nanoTime()}
+     * @param endNanos   end of the window as returned by {@link System#nanoTime()}
+     * @return true if the JVM was paused at some point during the window
+     */
+    public boolean overlapsPause(long startNanos, long endNanos) {
+        // fast path: no pause happened since the window started
+        if (!pauseSeen || startNanos - lastPauseEnd > 0) {
+            return false;
+        }
+        synchronized (this) {
+            for (int i = 0; i < Math.min(pauseCount, HISTORY_SIZE); i++) {
+                if (pauseStarts[i] - endNanos < 0 && pauseEnds[i] - startNanos > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the JVM was paused at some point during the given amount of time leading up to now.
+     *
+     * @param windowMillis length of the window in milliseconds (e.g. the latency of a sample that was just measured)
+     * @return true if the JVM was paused during the window
+     */
+    public boolean pausedWithinLast(double windowMillis) {
+        var now = System.nanoTime();
+        return overlapsPause(now - (long) (windowMillis * 1_000_000), now);
+    }
+}
@@ -0,0 +1,147 @@
+package io.spoud;
+
+import io.spoud.config.SynthClientConfigPayload;
+import io.spoud.config.SynthClientConfigPayload.Distribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pre-generates a pool of payloads whose sizes follow the configured distribution. The payloads consist of random
+ * (and thus incompressible) bytes, optionally followed by a compressible section, so that compression behaves like it
+ * would for real traffic. Payloads are handed out as-is and never copied, which keeps generation off the send path.
+ * Callers must not modify the returned arrays.
+ */
+public class PayloadGenerator {
+    private final byte[][] pool;
+    private final long baseSize;
+
+    private PayloadGenerator(byte[][] pool, long baseSize) {
+        this.pool = pool;
+        this.baseSize = baseSize;
+    }
+
+    /**
+     * Creates a pool whose payloads all have the given size.
+     */
+    public static PayloadGenerator fixed(int size, int poolSize, double compressibleFraction) {
+        var sizes = new int[Math.max(1, poolSize)];
+        Arrays.fill(sizes, Math.max(1, size));
+        return new PayloadGenerator(generate(sizes, compressibleFraction), Math.max(1, size));
+    }
+
+    /**
+     * Creates a pool according to the given configuration.
+     *
+     * @param baseSize size of fixed payloads or median size of log-normally distributed payloads
+     */
+    public static PayloadGenerator fromConfig(int baseSize, SynthClientConfigPayload config) {
+        baseSize = Math.max(1, baseSize);
+        var poolSize = Math.max(1, config.poolSize());
+        var random = new SplittableRandom();
+        var sizes = new int[poolSize];
+        var min = Math.max(1, config.minSizeBytes());
+        var max = Math.max(min, config.maxSizeBytes());
+        switch (config.distribution()) {
+            case FIXED -> Arrays.fill(sizes, baseSize);
+            case UNIFORM -> {
+                for (int i = 0; i < poolSize; i++) {
+                    sizes[i] = random.nextInt(min, max + 1);
+                }
+            }
+            case LOGNORMAL -> {
+                var mu = Math.log(baseSize);
+                for (int i = 0; i < poolSize; i++) {
+                    var size = Math.exp(mu + config.lognormalSigma() * random.nextGaussian());
+                    sizes[i] = (int) Math.max(min, Math.min(max, Math.round(size)));
+                }
+            }
+            case HISTOGRAM -> sizes = sizesFromHistogram(config.histogram()
+                    .orElseThrow(() -> new IllegalArgumentException("Payload distribution is histogram but no histogram is configured")),
+                    poolSize);
+        }
+        return new PayloadGenerator(generate(sizes, config.compressibleFraction()),
+                config.distribution() == Distribution.HISTOGRAM ? median(sizes) : baseSize);
+    }
+
+    /**
+     * Distributes the pool slots over the histogram buckets proportionally to their weights.
+     *
+     * @param histogram list of `size:weight` pairs
+     */
+    static int[] sizesFromHistogram(List<String> histogram, int poolSize) {
+        var bucketSizes = new ArrayList<Integer>();
+        var weights = new ArrayList<Double>();
+        for (var entry : histogram) {
+            var parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid histogram entry '" + entry + "', expected size:weight");
+            }
+            bucketSizes.add(Math.max(1, Integer.parseInt(parts[0].trim())));
+            weights.add(Double.parseDouble(parts[1].trim()));
+        }
+        var totalWeight = weights.stream().mapToDouble(Double::doubleValue).sum();
+        if (bucketSizes.isEmpty() || totalWeight <= 0) {
+            throw new IllegalArgumentException("Payload size histogram must not be empty");
+        }
+        var sizes = new int[poolSize];
+        var bucket = 0;
+        var cumulativeWeight = weights.getFirst();
+        for (int i = 0; i < poolSize; i++) {
+            // pick the bucket containing the i-th quantile
+            var quantile = (i + 0.5) / poolSize * totalWeight;
+            while (quantile > cumulativeWeight && bucket < bucketSizes.size() - 1) {
+                bucket++;
+                cumulativeWeight += weights.get(bucket);
+            }
+            sizes[i] = bucketSizes.get(bucket);
+        }
+        return sizes;
+    }
+
+    private static byte[][] generate(int[] sizes, double compressibleFraction) {
+        var random = new SplittableRandom();
+        var fraction = Math.max(0, Math.min(1, compressibleFraction));
+        var pool = new byte[sizes.length][];
+        for (int i = 0; i < sizes.length; i++) {
+            var payload = new byte[sizes[i]];
+            var randomBytes = (int) Math.round(payload.length * (1 - fraction));
+            var randomPart = new byte[randomBytes];
+            random.nextBytes(randomPart);
+            System.arraycopy(randomPart, 0, payload, 0, randomBytes);
+            // the remaining bytes are left as zeros, which compress very well
+            pool[i] = payload;
+        }
+        return pool;
+    }
+
+    private static long median(int[] sizes) {
+        var sorted = sizes.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * @return a random payload from the pool, must not be modified
+     */
+    public byte[] next() {
+        return pool[ThreadLocalRandom.current().nextInt(pool.length)];
+    }
+
+    /**
+     * @return the configured size of fixed payloads, or the median size for the other distributions
+     */
+    public long getBaseSize() {
+        return baseSize;
+    }
+
+    /**
+     * @return the average size of the payloads in the pool
+     */
+    public double getAverageSize() {
+        return Arrays.stream(pool).mapToInt(p -> p.length).average().orElse(0);
+    }
+}
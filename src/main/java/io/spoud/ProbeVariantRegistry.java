@@ -0,0 +1,42 @@
+package io.spoud;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes the end-to-end latencies of consumed variant probes (see {@link io.spoud.kafka.ProbeVariant}) to the
+ * component that sent them.
+ */
+@ApplicationScoped
+public class ProbeVariantRegistry {
+
+    @FunctionalInterface
+    public interface E2eLatencyListener {
+        void recordE2eLatency(int partition, long latencyMs, String fromRack);
+    }
+
+    private final Map<String, E2eLatencyListener> listeners = new ConcurrentHashMap<>();
+
+    public void register(String variant, E2eLatencyListener listener) {
+        listeners.put(variant, listener);
+    }
+
+    public void unregister(String variant) {
+        listeners.remove(variant);
+    }
+
+    /**
+     * @return false if no listener is registered for the given variant, e.g. because the probe was sent by an
+     * instance with a different configuration
+     */
+    public boolean recordE2eLatency(String variant, int partition, long latencyMs, String fromRack) {
+        var listener = listeners.get(variant);
+        if (listener == null) {
+            return false;
+        }
+        listener.recordE2eLatency(partition, latencyMs, fromRack);
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package io.spoud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Current latencies between the racks as seen by this instance: the end-to-end latency of every path from a client
+ * rack via a broker to this instance's rack, and the ack latency of the paths that start at this instance's rack. It
+ * is computed from the live meters, so the dashboard does not have to join the history for the latest values.
+ *
+ * @param rack  rack of this instance
+ * @param paths paths ordered by from rack, via broker rack and to rack
+ */
+public record RackTopology(String rack, List<Path> paths) {
+
+    /**
+     * Latencies of a path in milliseconds. Latencies that are not known are null, e.g. the ack latency of paths that
+     * start at another rack, as it is only known by the instances of that rack.
+     *
+     * @param viaBrokerRack rack and ID of the broker, formatted like in the history, e.g. `rack1 (ID 3)`
+     */
+    public record Path(String fromRack, String viaBrokerRack, String toRack,
+                       Double p50Latency, Double p99Latency, Double p50AckLatency, Double p99AckLatency) {
+    }
+
+    /**
+     * Aggregates the latencies of all partitions led by the same broker, taking the highest percentiles, so that a
+     * single slow partition is not hidden by the others.
+     */
+    static RackTopology of(String rack,
+                           Collection<MetricService.WrappedDistributionSummary> e2eLatencies,
+                           Collection<MetricService.WrappedDistributionSummary> ackLatencies) {
+        var acks = new TreeMap<String, double[]>();
+        for (var summary : ackLatencies) {
+            var id = summary.distributionSummary().getId();
+            merge(acks, viaBrokerRack(id.getTag(MetricService.TAG_BROKER_RACK), summary.broker()), summary);
+        }
+        var e2e = new TreeMap<PathKey, double[]>(Comparator.comparing(PathKey::fromRack)
+                .thenComparing(PathKey::viaBrokerRack)
+                .thenComparing(PathKey::toRack));
+        for (var summary : e2eLatencies) {
+            var id = summary.distributionSummary().getId();
+            merge(e2e, new PathKey(id.getTag(MetricService.TAG_FROM_RACK),
+                    viaBrokerRack(id.getTag(MetricService.TAG_BROKER_RACK), summary.broker()),
+                    id.getTag(MetricService.TAG_TO_RACK)), summary);
+        }
+        var paths = new ArrayList<Path>();
+        e2e.forEach((key, latencies) -> {
+            var ack = key.fromRack().equals(rack) ? acks.get(key.viaBrokerRack()) : null;
+            paths.add(new Path(key.fromRack(), key.viaBrokerRack(), key.toRack(),
+                    value(latencies[0]), value(latencies[1]),
+                    ack != null ? value(ack[0]) : null, ack != null ? value(ack[1]) : null));
+        });
+        return new RackTopology(rack, List.copyOf(paths));
+    }
+
+    static String viaBrokerRack(String brokerRack, String broker) {
+        return String.format("%s (ID %s)", brokerRack, broker);
+    }
+
+    private static <K> void merge(Map<K, double[]> latencies, K key, MetricService.WrappedDistributionSummary summary) {
+        var p50 = MetricService.getPercentile(summary.distributionSummary(), 0.5);
+        var p99 = MetricService.getPercentile(summary.distributionSummary(), 0.99);
+        if (Double.isNaN(p50) && Double.isNaN(p99)) {
+            return;
+        }
+        latencies.merge(key, new double[]{p50, p99}, (a, b) -> new double[]{max(a[0], b[0]), max(a[1], b[1])});
+    }
+
+    private static double max(double a, double b) {
+        return Double.isNaN(a) ? b : Double.isNaN(b) ? a : Math.max(a, b);
+    }
+
+    /**
+     * @return the latency rounded to tenths of a millisecond, which keeps the response compact, or null if unknown
+     */
+    private static Double value(double latencyMs) {
+        return Double.isNaN(latencyMs) ? null : Math.round(latencyMs * 10) / 10.0;
+    }
+
+    private record PathKey(String fromRack, String viaBrokerRack, String toRack) {
+    }
+}
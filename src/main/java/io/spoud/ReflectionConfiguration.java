@@ -5,6 +5,8 @@ import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.consumer.RangeAssignor;
 import org.apache.kafka.clients.producer.RoundRobinPartitioner;
 import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.LongDeserializer;
 import org.apache.kafka.common.serialization.LongSerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -22,6 +24,8 @@ import org.duckdb.DuckDBDriver;
         LongSerializer.class,
         StringSerializer.class,
         StringDeserializer.class,
+        ByteArraySerializer.class,
+        ByteArrayDeserializer.class,
         RangeAssignor.class,
         CooperativeStickyAssignor.class,
         RoundRobinPartitioner.class,
@@ -0,0 +1,166 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.AdminCalls;
+import io.spoud.kafka.KafkaFactory;
+import io.spoud.kafka.ReplicaConsumer;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.Node;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Measures the latency from producing a probe until it can be consumed from each replica of its partition. For each
+ * broker rack, a consumer with `client.rack` set to that rack reads the probe topic, so that the brokers direct it to
+ * the follower in that rack. The latencies are exported per (leader, replica) broker pair, which makes slow
+ * replication links visible.
+ */
+@ApplicationScoped
+public class ReplicaLatencyService {
+    public static final String REPLICA_E2E_METER_NAME = "synth-client.replica.e2e.latency";
+
+    public static final String TAG_LEADER = "leader";
+    public static final String TAG_REPLICA = "replica";
+    public static final String TAG_REPLICA_RACK = "replicaRack";
+    public static final String TAG_ROLE = "role";
+
+    private final SynthClientConfig config;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final TimeService timeService;
+    private final MetricService metricService;
+    private final String kafkaClientId;
+    private final List<ReplicaConsumer> consumers = new CopyOnWriteArrayList<>();
+    private final Map<BrokerPair, DistributionSummary> latencies = new ConcurrentHashMap<>();
+    private ExecutorService executorService;
+    private volatile boolean racksKnown = false;
+    private boolean stopped = false;
+
+    public ReplicaLatencyService(SynthClientConfig config,
+                                 KafkaFactory kafkaFactory,
+                                 AdminClient adminClient,
+                                 AdminCalls adminCalls,
+                                 TimeService timeService,
+                                 MetricService metricService,
+                                 @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.timeService = timeService;
+        this.metricService = metricService;
+        this.kafkaClientId = kafkaClientId;
+    }
+
+    @Startup
+    void start() {
+        if (!config.replicaLatency().enabled()) {
+            return;
+        }
+        config.replicaLatency().racks().ifPresent(this::startConsumers);
+    }
+
+    /**
+     * Starts the consumers once the racks of the brokers are known, unless they are configured. Retried until the
+     * brokers could be described, so that an unavailable cluster at startup does not disable the measurement.
+     */
+    @Scheduled(every = "30s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    CompletionStage<Void> discoverRacks() {
+        if (!config.replicaLatency().enabled() || racksKnown) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return adminCalls.call("describeCluster", adminClient.describeCluster().nodes())
+                .handle((nodes, error) -> {
+                    if (error != null) {
+                        Log.warnf("Failed to get the broker racks, will retry: %s", AdminCalls.unwrap(error).getMessage());
+                        return null;
+                    }
+                    var racks = brokerRacks(nodes);
+                    if (racks.isEmpty()) {
+                        Log.warn("The brokers have no rack configured, replica latencies will not be measured");
+                        racksKnown = true;
+                        return null;
+                    }
+                    startConsumers(racks);
+                    return null;
+                });
+    }
+
+    static List<String> brokerRacks(Collection<Node> nodes) {
+        return nodes.stream()
+                .map(Node::rack)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    private synchronized void startConsumers(List<String> racks) {
+        racksKnown = true;
+        if (stopped) {
+            return;
+        }
+        executorService = Executors.newFixedThreadPool(racks.size(), new NamedThreadFactory("replica-consumer"));
+        for (var rack : racks) {
+            Log.infof("Starting consumer for replicas in rack %s", rack);
+            var consumer = kafkaFactory.createConsumer(Map.of(
+                    ConsumerConfig.CLIENT_RACK_CONFIG, rack,
+                    ConsumerConfig.CLIENT_ID_CONFIG, kafkaClientId + "-replica-" + rack));
+            var replicaConsumer = new ReplicaConsumer(rack, config.topic(), consumer, timeService,
+                    (partition, replica, latencyMs) -> recordLatency(rack, partition, replica, latencyMs));
+            consumers.add(replicaConsumer);
+            executorService.submit(replicaConsumer);
+        }
+    }
+
+    private void recordLatency(String replicaRack, int partition, int replica, long latencyMs) {
+        var leader = metricService.getBrokerOfPartition(partition);
+        var pair = new BrokerPair(leader, replica < 0 ? leader : String.valueOf(replica), replicaRack);
+        latencies.computeIfAbsent(pair, p -> metricService.newLatencySummary(REPLICA_E2E_METER_NAME,
+                        Tags.of(TAG_LEADER, p.leader(), TAG_REPLICA, p.replica(), TAG_REPLICA_RACK, p.replicaRack(),
+                                TAG_ROLE, p.leader().equals(p.replica()) ? "leader" : "follower", TAG_RACK, config.rack()),
+                        "Latency until a probe can be consumed from the replica"))
+                .record(latencyMs);
+    }
+
+    /**
+     * @return the latency summaries of all (leader, replica) pairs seen so far
+     */
+    public Collection<DistributionSummary> getLatencies() {
+        return latencies.values();
+    }
+
+    @Shutdown
+    synchronized void stop() {
+        stopped = true;
+        consumers.forEach(ReplicaConsumer::close);
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    private record BrokerPair(String leader, String replica, String replicaRack) {
+    }
+}
@@ -0,0 +1,79 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.quarkus.logging.Log;
+import io.spoud.config.SynthClientConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Tracks how far the synth client got since it was started. The instance is ready as soon as it sends probes, and
+ * the time until its latency metrics carry data is exported as a metric.
+ */
+@Readiness
+@ApplicationScoped
+public class StartupState implements HealthCheck {
+    public static final String TIME_TO_FIRST_VALID_SAMPLE_METER_NAME = "synth-client.startup.time-to-first-valid-sample";
+
+    public enum Phase {
+        SETTING_UP_TOPIC,
+        WARMING_UP,
+        WAITING_FOR_FIRST_SAMPLE,
+        READY,
+        FAILED
+    }
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private volatile Phase phase = Phase.SETTING_UP_TOPIC;
+    private volatile long timeToFirstValidSampleMillis = -1;
+
+    public StartupState(MeterRegistry meterRegistry, SynthClientConfig config) {
+        TimeGauge.builder(TIME_TO_FIRST_VALID_SAMPLE_METER_NAME, this, TimeUnit.MILLISECONDS,
+                        s -> s.timeToFirstValidSampleMillis >= 0 ? s.timeToFirstValidSampleMillis : Double.NaN)
+                .tag(TAG_RACK, config.rack())
+                .description("Time from the start of the JVM until the first latency sample was recorded")
+                .register(meterRegistry);
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        if (this.phase != Phase.READY) {
+            Log.infof("Startup phase: %s", phase);
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * Called for every recorded latency sample, only the first call has an effect.
+     */
+    public void onValidSample() {
+        if (timeToFirstValidSampleMillis < 0) {
+            synchronized (this) {
+                if (timeToFirstValidSampleMillis < 0) {
+                    timeToFirstValidSampleMillis = System.currentTimeMillis() - jvmStartMillis;
+                    Log.infof("First valid latency sample recorded %dms after start", timeToFirstValidSampleMillis);
+                    setPhase(Phase.READY);
+                }
+            }
+        }
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("Probing started")
+                .status(phase == Phase.WAITING_FOR_FIRST_SAMPLE || phase == Phase.READY)
+                .withData("phase", phase.name())
+                .build();
+    }
+}
@@ -1,83 +1,131 @@
 package io.spoud;
 
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.logging.Log;
 import io.quarkus.scheduler.Scheduled;
 import io.smallrye.common.annotation.Blocking;
-import io.smallrye.faulttolerance.api.ExponentialBackoff;
 import io.spoud.config.SynthClientConfig;
 import jakarta.enterprise.context.ApplicationScoped;
-import org.apache.commons.net.ntp.NTPUDPClient;
-import org.apache.commons.net.ntp.TimeInfo;
-import org.eclipse.microprofile.faulttolerance.Fallback;
-import org.eclipse.microprofile.faulttolerance.Retry;
 
-import java.io.IOException;
-import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.time.OffsetDateTime;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Provides the current time corrected by the offset of the local clock from an ensemble of NTP servers. All servers
+ * are queried in parallel, responses with a long round-trip delay are discarded, and the offset and drift of the local
+ * clock are estimated from the recent measurements (see {@link ClockDiscipline}). Between measurements, the correction
+ * follows the estimated drift and is slewed towards the estimate, so that the corrected time does not jump.
+ */
 @ApplicationScoped
 public class TimeService {
-    private final AtomicLong clockOffset = new AtomicLong(0);
-    private int timeServerIndex = 0;
-    private final String[] timeServers;
+    public static final String CLOCK_OFFSET_METER_NAME = "synth-client.clock.offset";
+    public static final String CLOCK_ERROR_METER_NAME = "synth-client.clock.error";
+    public static final String CLOCK_DRIFT_METER_NAME = "synth-client.clock.drift";
+
+    private final SynthClientConfig config;
+    private final List<InetSocketAddress> timeServers;
+    private final ClockDiscipline discipline;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile long measurementErrorNanos = 0;
 
     public TimeService(MeterRegistry meterRegistry, SynthClientConfig config) {
-        timeServers = config.timeServers().split("([,\\s])+");
-        meterRegistry.gauge("time.clockOffset", clockOffset, AtomicLong::get);
+        this.config = config;
+        this.timeServers = Arrays.stream(config.timeServers().split("([,\\s])+"))
+                .filter(s -> !s.isBlank())
+                .map(NtpQuery::parseServer)
+                .toList();
+        this.discipline = new ClockDiscipline(config.clock().maxSlewRate(), config.clock().stepThreshold().toNanos());
+        meterRegistry.gauge("time.clockOffset", this, TimeService::getClockOffset);
+        Gauge.builder(CLOCK_OFFSET_METER_NAME, this, s -> s.getClockOffsetNanos() / 1e6)
+                .tag(TAG_RACK, config.rack())
+                .baseUnit("ms")
+                .description("Offset applied to the local clock")
+                .register(meterRegistry);
+        Gauge.builder(CLOCK_ERROR_METER_NAME, this, s -> s.getClockErrorNanos() / 1e6)
+                .tag(TAG_RACK, config.rack())
+                .baseUnit("ms")
+                .description("Estimated maximum error of the corrected time")
+                .register(meterRegistry);
+        Gauge.builder(CLOCK_DRIFT_METER_NAME, discipline, ClockDiscipline::driftPpm)
+                .tag(TAG_RACK, config.rack())
+                .baseUnit("ppm")
+                .description("Estimated drift of the local clock")
+                .register(meterRegistry);
     }
 
     public long currentTimeMillis() {
-        return System.currentTimeMillis() + clockOffset.get();
+        return System.currentTimeMillis() + Math.floorDiv(getClockOffsetNanos(), 1_000_000L);
+    }
+
+    /**
+     * @return the corrected time in microseconds since the epoch, with the resolution of the system clock
+     */
+    public long currentTimeMicros() {
+        return Math.floorDiv(NtpQuery.wallClockNanos() + getClockOffsetNanos(), 1_000L);
     }
 
     public OffsetDateTime now() {
-        return OffsetDateTime.now().plusNanos(clockOffset.get() * 1_000_000);
+        return OffsetDateTime.now().plusNanos(getClockOffsetNanos());
     }
 
+    /**
+     * @return the offset applied to the local clock in milliseconds
+     */
     public long getClockOffset() {
-        return clockOffset.get();
+        return Math.floorDiv(getClockOffsetNanos(), 1_000_000L);
+    }
+
+    long getClockOffsetNanos() {
+        return discipline.offsetNanos(System.nanoTime());
+    }
+
+    /**
+     * @return estimated maximum error of the corrected time, NaN if no time server responded yet
+     */
+    double getClockErrorNanos() {
+        return measurementErrorNanos + discipline.errorNanos(System.nanoTime());
     }
 
     @Blocking
-    @Scheduled(every = "300s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    @Scheduled(every = "${synth-client.clock.sync-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
     void updateClockOffset() {
-        if (timeServers.length == 0) {
+        if (timeServers.isEmpty()) {
             Log.warn("No time servers configured. Will not update clock offset");
             return;
         }
-        try {
-            requestTime(timeServers[timeServerIndex % timeServers.length]);
-        } catch (IOException e) {
-            Log.error("Failed to update clock offset", e);
+        var timeout = config.clock().requestTimeout();
+        var requests = timeServers.stream()
+                .map(server -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return NtpQuery.query(server, timeout);
+                    } catch (Exception e) {
+                        Log.warnf("Failed to query time server %s: %s", server, e.getMessage());
+                        return null;
+                    }
+                }, executor))
+                .toList();
+        var samples = requests.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+        for (var sample : samples) {
+            Log.debugf("Time server %s: offset %.3fms, delay %.3fms", sample.server(), sample.offsetNanos() / 1e6, sample.delayNanos() / 1e6);
         }
-    }
-
-    void requestTimeFallback(String host) {
-        var nextTimeserver = timeServers[(++timeServerIndex) % timeServers.length];
-        Log.errorf("Failed to update clock offset using %s. Will try %s next time.", host, nextTimeserver);
-    }
-
-    /**
-     * Sends an SNTP request to the given host and calculates the offset between our clock and the server's clock.
-     *
-     * @param host    host name of the server.
-     */
-    @Retry(maxRetries = 3)
-    @ExponentialBackoff(maxDelay = 60_000)
-    @Fallback(fallbackMethod = "requestTimeFallback")
-    public void requestTime(String host) throws IOException {
-        Log.infof("Updating clock offset using %s NTP server", host);
-        try (NTPUDPClient client = new NTPUDPClient()) {
-            client.open();
-            InetAddress hostAddr = InetAddress.getByName(host);
-            TimeInfo info = client.getTime(hostAddr);
-            info.computeDetails();
-            long offset = info.getOffset();
-            clockOffset.set(offset);
-            var ourTime = System.currentTimeMillis();
-            Log.infof("Our time: %d, their time: %d. We are off by %dms.", ourTime, ourTime + offset, offset);
+        var estimate = NtpQuery.combine(samples, config.clock().maxRoundTripDelay());
+        if (estimate.isEmpty()) {
+            Log.errorf("None of the %d time servers returned a usable response, keeping the current clock offset", timeServers.size());
+            return;
         }
+        var stepped = discipline.update(System.nanoTime(), estimate.get().offsetNanos());
+        measurementErrorNanos = estimate.get().errorNanos();
+        Log.infof("Clock offset %.3fms (%s) from %d of %d time servers, drift %.1fppm, estimated error %.3fms",
+                estimate.get().offsetNanos() / 1e6, stepped ? "stepped" : "slewing", estimate.get().samples(),
+                timeServers.size(), discipline.driftPpm(), getClockErrorNanos() / 1e6);
     }
 }
@@ -0,0 +1,263 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import io.spoud.kafka.AdminCalls;
+import io.spoud.kafka.KafkaFactory;
+import io.spoud.kafka.MessageProducer;
+import io.spoud.kafka.PartitionRebalancer;
+import io.spoud.kafka.ProbeVariant;
+import io.spoud.kafka.VariantConsumer;
+import io.spoud.kafka.VariantProducer;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.errors.UnsupportedVersionException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static io.spoud.MetricService.TAG_BROKER;
+import static io.spoud.MetricService.TAG_BROKER_RACK;
+import static io.spoud.MetricService.TAG_FROM_RACK;
+import static io.spoud.MetricService.TAG_RACK;
+import static io.spoud.MetricService.TAG_TO_RACK;
+
+/**
+ * Measures what exactly-once applications wait for: a dedicated transactional producer sends a probe to one partition
+ * of each broker per transaction and commits it, and a dedicated `read_committed` consumer (see
+ * {@link VariantConsumer}) records the end-to-end latency until the probes become visible, i.e. until the commit
+ * markers advanced the last stable offset. Initializing and committing the transactions is attributed to the
+ * transaction coordinator, sending and consuming the probes to the partition leader.
+ */
+@ApplicationScoped
+public class TransactionProbeService {
+    public static final String TRANSACTION_INIT_METER_NAME = "synth-client.transaction.init.latency";
+    public static final String TRANSACTION_COMMIT_METER_NAME = "synth-client.transaction.commit.latency";
+    public static final String TRANSACTION_ACK_METER_NAME = "synth-client.transaction.ack.latency";
+    public static final String TRANSACTION_E2E_METER_NAME = "synth-client.transaction.e2e.latency";
+    public static final String TRANSACTION_FAILURES_METER_NAME = "synth-client.transaction.failures";
+
+    public static final String TAG_OPERATION = "operation";
+
+    static final String VARIANT_NAME = "transactional";
+
+    private static final String UNKNOWN_COORDINATOR = "unknown";
+
+    private final SynthClientConfig config;
+    private final MessageProducer messageProducer;
+    private final KafkaSynthClient kafkaSynthClient;
+    private final PartitionRebalancer partitionRebalancer;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final TimeService timeService;
+    private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
+    private final String kafkaClientId;
+    private final Map<MeterKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Map<Tags, Counter> failures = new ConcurrentHashMap<>();
+    private volatile String coordinator = UNKNOWN_COORDINATOR;
+    private ProbeVariant variant;
+    private VariantProducer producer;
+    private VariantConsumer consumer;
+
+    public TransactionProbeService(SynthClientConfig config,
+                                   MessageProducer messageProducer,
+                                   KafkaSynthClient kafkaSynthClient,
+                                   PartitionRebalancer partitionRebalancer,
+                                   KafkaFactory kafkaFactory,
+                                   AdminClient adminClient,
+                                   AdminCalls adminCalls,
+                                   TimeService timeService,
+                                   MetricService metricService,
+                                   MeterRegistry meterRegistry,
+                                   @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.messageProducer = messageProducer;
+        this.kafkaSynthClient = kafkaSynthClient;
+        this.partitionRebalancer = partitionRebalancer;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.timeService = timeService;
+        this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
+        this.kafkaClientId = kafkaClientId;
+    }
+
+    @Startup
+    synchronized void start() {
+        if (!config.transactions().enabled()) {
+            return;
+        }
+        Log.infof("Starting transactional probes with transactional id %s", config.transactions().transactionalId());
+        variant = new ProbeVariant(VARIANT_NAME, Map.of(
+                ProducerConfig.TRANSACTIONAL_ID_CONFIG, config.transactions().transactionalId(),
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+                ProducerConfig.ACKS_CONFIG, "all"), Tags.empty());
+        consumer = new VariantConsumer(config.topic(), variant, kafkaFactory.createConsumer(Map.of(
+                ConsumerConfig.CLIENT_ID_CONFIG, kafkaClientId + "-" + VARIANT_NAME,
+                ConsumerConfig.ISOLATION_LEVEL_CONFIG, IsolationLevel.READ_COMMITTED.toString(),
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false)),
+                timeService, this::recordE2eLatency);
+        Thread.ofPlatform().daemon().name("transaction-consumer").start(consumer);
+    }
+
+    @Shutdown
+    synchronized void stop() {
+        if (consumer != null) {
+            consumer.close();
+        }
+        closeProducer();
+    }
+
+    /**
+     * Runs one transaction. The probes are flushed before committing, so that the commit latency only covers ending
+     * the transaction and not sending the probes.
+     */
+    @Scheduled(every = "${synth-client.transactions.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    synchronized void runTransaction() {
+        if (variant == null || kafkaSynthClient.isPaused() || partitionRebalancer.isInitialRefreshPending()) {
+            return;
+        }
+        if (producer == null && !initProducer()) {
+            return;
+        }
+        var operation = "begin";
+        try {
+            producer.beginTransaction();
+            operation = "send";
+            var random = ThreadLocalRandom.current();
+            for (var partitions : partitionRebalancer.getPartitionsByBroker().values()) {
+                if (!partitions.isEmpty()) {
+                    producer.send(partitions.getFirst(), random.nextLong(), kafkaSynthClient.nextPayload(), this::onAck);
+                }
+            }
+            producer.flush();
+            operation = "commit";
+            var start = System.nanoTime();
+            producer.commitTransaction();
+            record(TRANSACTION_COMMIT_METER_NAME, Tags.of(TAG_BROKER, coordinator), (System.nanoTime() - start) / 1e6,
+                    "Latency of committing a transaction of the transactional probe producer");
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException | UnsupportedVersionException e) {
+            onFailure(operation, e);
+            // the producer cannot be used anymore, a new one is initialized for the next transaction
+            closeProducer();
+        } catch (KafkaException e) {
+            onFailure(operation, e);
+            abort();
+        }
+    }
+
+    private boolean initProducer() {
+        producer = messageProducer.createVariantProducer(variant);
+        try {
+            var start = System.nanoTime();
+            producer.initTransactions();
+            var latencyMs = (System.nanoTime() - start) / 1e6;
+            // the coordinator is known once the producer found it
+            refreshCoordinator().thenRun(() -> record(TRANSACTION_INIT_METER_NAME, Tags.of(TAG_BROKER, coordinator), latencyMs,
+                    "Latency of initializing the transactions of the transactional probe producer"));
+            return true;
+        } catch (KafkaException e) {
+            onFailure("init", e);
+            closeProducer();
+            return false;
+        }
+    }
+
+    private void abort() {
+        try {
+            producer.abortTransaction();
+        } catch (KafkaException e) {
+            Log.warnf("Failed to abort transaction, reinitializing the transactional producer: %s", e.getMessage());
+            closeProducer();
+        }
+    }
+
+    private void closeProducer() {
+        if (producer != null) {
+            producer.close();
+            producer = null;
+        }
+    }
+
+    /**
+     * Looks up the coordinator of the transactional id. Its result applies to the following measurements, as the
+     * coordinator only moves when the transactional id's partition of the transaction state topic gets a new leader.
+     */
+    private CompletableFuture<Void> refreshCoordinator() {
+        var transactionalId = config.transactions().transactionalId();
+        return adminCalls.call("describeTransactions", adminClient.describeTransactions(List.of(transactionalId)).description(transactionalId))
+                .handle((description, error) -> {
+                    if (error != null) {
+                        Log.warnf("Failed to get the coordinator of transactional id %s: %s", transactionalId,
+                                AdminCalls.unwrap(error).getMessage());
+                        coordinator = UNKNOWN_COORDINATOR;
+                    } else if (!String.valueOf(description.coordinatorId()).equals(coordinator)) {
+                        Log.infof("Transactional id %s is coordinated by broker %d", transactionalId, description.coordinatorId());
+                        coordinator = String.valueOf(description.coordinatorId());
+                    }
+                    return null;
+                });
+    }
+
+    private void onAck(RecordMetadata metadata, Exception exception, double ackLatencyMs) {
+        if (exception != null) {
+            // the transaction fails as well, which is handled when flushing or committing
+            Log.debugf(exception, "Failed to send transactional probe");
+            return;
+        }
+        var partition = metadata.partition();
+        record(TRANSACTION_ACK_METER_NAME, Tags.of(TAG_BROKER, metricService.getBrokerOfPartition(partition),
+                        TAG_BROKER_RACK, partitionRebalancer.getRackOfPartitionLeader(partition)),
+                ackLatencyMs, "Ack latency of the transactional probes");
+    }
+
+    private void recordE2eLatency(int partition, long latencyMs, String fromRack) {
+        record(TRANSACTION_E2E_METER_NAME, Tags.of(TAG_BROKER, metricService.getBrokerOfPartition(partition),
+                        TAG_BROKER_RACK, partitionRebalancer.getRackOfPartitionLeader(partition),
+                        TAG_TO_RACK, config.rack(), TAG_FROM_RACK, fromRack),
+                latencyMs, "End-to-end latency of the transactional probes until they are visible to read_committed consumers");
+    }
+
+    private void onFailure(String operation, Exception e) {
+        Log.warnf("Transactional probe %s failed for transactional id %s: %s", operation,
+                config.transactions().transactionalId(), e.getMessage());
+        failures.computeIfAbsent(Tags.of(TAG_BROKER, coordinator, TAG_OPERATION, operation, TAG_RACK, config.rack()),
+                        tags -> Counter.builder(TRANSACTION_FAILURES_METER_NAME)
+                                .tags(tags)
+                                .description("Number of failed transactions of the transactional probe producer, by the operation that failed")
+                                .register(meterRegistry))
+                .increment();
+        refreshCoordinator();
+    }
+
+    private void record(String name, Tags tags, double latencyMs, String description) {
+        summaries.computeIfAbsent(new MeterKey(name, tags.and(TAG_RACK, config.rack())),
+                        key -> metricService.newLatencySummary(key.name(), key.tags(), description))
+                .record(latencyMs);
+    }
+
+    private record MeterKey(String name, Tags tags) {
+    }
+}
@@ -8,6 +8,22 @@ import java.util.regex.Pattern;
 
 @ConfigMapping(prefix = "synth-client")
 public interface SynthClientConfig {
+    enum ConsumerMode {
+        /**
+         * Join a consumer group, the partitions are distributed by the group coordinator.
+         */
+        SUBSCRIBE,
+        /**
+         * Every consumer assigns all partitions to itself, without any group coordination.
+         */
+        ASSIGN_ALL,
+        /**
+         * The partitions are split deterministically across the consumers of this instance, without any group
+         * coordination.
+         */
+        ASSIGN_SPLIT
+    }
+
     String topic();
 
     Optional<Pattern> consumerTopicRegex();
@@ -16,14 +32,26 @@ public interface SynthClientConfig {
 
     int consumersCount();
 
+    /**
+     * @return how the consumers get their partitions
+     */
+    ConsumerMode consumerMode();
+
     String timeServers();
 
+    SynthClientConfigClock clock();
+
     SynthClientConfigMessages messages();
 
     boolean autoCreateTopic();
 
     int topicReplicationFactor();
 
+    /**
+     * @return how long to wait for a response to an admin request before giving up
+     */
+    Duration adminTimeout();
+
     Duration samplingTimeWindow();
 
     int minSamplesFirstWindow();
@@ -41,4 +69,36 @@ public interface SynthClientConfig {
     String contextPath();
 
     Optional<String> advertisedListener();
+
+    SynthClientConfigPauseDetection pauseDetection();
+
+    SynthClientConfigJfr jfr();
+
+    SynthClientConfigLoadTest loadTest();
+
+    SynthClientConfigCommands commands();
+
+    SynthClientConfigCodecMatrix codecMatrix();
+
+    SynthClientConfigAcksComparison acksComparison();
+
+    SynthClientConfigReplicaLatency replicaLatency();
+
+    SynthClientConfigPlacement placement();
+
+    SynthClientConfigLeaderChangeDetection leaderChangeDetection();
+
+    SynthClientConfigIncidents incidents();
+
+    SynthClientConfigEcho echo();
+
+    SynthClientConfigListenerProbes listenerProbes();
+
+    SynthClientConfigConnectionProbes connectionProbes();
+
+    SynthClientConfigGroupProbes groupProbes();
+
+    SynthClientConfigTransactions transactions();
+
+    SynthClientConfigFederation federation();
 }
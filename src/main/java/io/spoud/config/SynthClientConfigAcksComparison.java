@@ -0,0 +1,25 @@
+package io.spoud.config;
+
+import java.util.List;
+
+public interface SynthClientConfigAcksComparison {
+    /**
+     * Whether to send additional probes with different acks settings to the same partitions, each with a dedicated
+     * producer.
+     *
+     * @return true if the acks modes are compared
+     */
+    boolean enabled();
+
+    /**
+     * Acks modes to compare. Supported are `0`, `1`, `all` (without idempotence) and `all-idempotent`.
+     *
+     * @return list of acks modes
+     */
+    List<String> modes();
+
+    /**
+     * @return number of probes each mode sends per second to each broker
+     */
+    int messagesPerSecond();
+}
@@ -0,0 +1,33 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigClock {
+    /**
+     * @return how often all time servers are queried
+     */
+    Duration syncInterval();
+
+    /**
+     * @return how long to wait for the response of a time server
+     */
+    Duration requestTimeout();
+
+    /**
+     * Responses whose round-trip delay exceeds this value are discarded, as the error of the measured offset can be
+     * up to half of the delay.
+     *
+     * @return maximum round-trip delay of a usable response
+     */
+    Duration maxRoundTripDelay();
+
+    /**
+     * @return offset errors above this threshold are corrected at once instead of being slewed
+     */
+    Duration stepThreshold();
+
+    /**
+     * @return maximum rate at which the offset is corrected, e.g. 0.0005 for 0.5ms per second
+     */
+    double maxSlewRate();
+}
@@ -0,0 +1,33 @@
+package io.spoud.config;
+
+import java.util.List;
+
+public interface SynthClientConfigCodecMatrix {
+    /**
+     * Whether to send additional probes for every combination of the configured compression codecs, batch sizes and
+     * linger times, each with a dedicated producer.
+     *
+     * @return true if the codec matrix is probed
+     */
+    boolean enabled();
+
+    /**
+     * @return values of the producer property `compression.type` to probe
+     */
+    List<String> codecs();
+
+    /**
+     * @return values of the producer property `batch.size` to probe
+     */
+    List<Integer> batchSizes();
+
+    /**
+     * @return values of the producer property `linger.ms` to probe
+     */
+    List<Integer> lingerMs();
+
+    /**
+     * @return number of probes each combination sends per second
+     */
+    int messagesPerSecond();
+}
@@ -0,0 +1,16 @@
+package io.spoud.config;
+
+public interface SynthClientConfigCommands {
+    /**
+     * @return whether to listen for commands on the control topic
+     */
+    boolean enabled();
+
+    /**
+     * Topic over which commands are exchanged between the synth client instances of a fleet.
+     * Is created automatically if {@link SynthClientConfig#autoCreateTopic()} is enabled.
+     *
+     * @return name of the control topic
+     */
+    String topic();
+}
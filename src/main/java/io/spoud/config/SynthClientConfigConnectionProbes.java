@@ -0,0 +1,28 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigConnectionProbes {
+    /**
+     * Whether to periodically open a fresh connection to each broker and measure how long it takes to connect,
+     * authenticate and fetch metadata, like a newly started client would.
+     *
+     * @return true if connection setups are probed
+     */
+    boolean enabled();
+
+    /**
+     * @return time between two probes of the connection setup to each broker
+     */
+    Duration interval();
+
+    /**
+     * @return time after which a connection setup is aborted
+     */
+    Duration timeout();
+
+    /**
+     * @return maximum number of connection setups that are probed at the same time
+     */
+    int threads();
+}
@@ -0,0 +1,26 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigEcho {
+    /**
+     * Whether to send echo probes that the other synth clients reflect back, and to reflect the echo probes of the
+     * other synth clients. Must be enabled on both ends.
+     *
+     * @return true if echo probes are sent and reflected
+     */
+    boolean enabled();
+
+    /**
+     * Topic over which echo probes and their replies are exchanged between the synth client instances of a fleet.
+     * Is created automatically if {@link SynthClientConfig#autoCreateTopic()} is enabled.
+     *
+     * @return name of the echo topic
+     */
+    String topic();
+
+    /**
+     * @return time between two echo probes of this instance
+     */
+    Duration interval();
+}
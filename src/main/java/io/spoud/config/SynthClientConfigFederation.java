@@ -0,0 +1,35 @@
+package io.spoud.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface SynthClientConfigFederation {
+    /**
+     * @return time after which a query to another instance is given up, the global view is served without its data
+     */
+    Duration timeout();
+
+    /**
+     * Time for which the response of another instance is reused. Afterwards, it is revalidated with its ETag, and if
+     * the instance does not respond, the last response is served until it does again.
+     *
+     * @return time for which responses of other instances are cached
+     */
+    Duration cacheTtl();
+
+    /**
+     * @return base URL of the instances that are always part of the global view by rack, e.g.
+     * `http://synth-client.dc2:8081`
+     */
+    Map<String, String> peers();
+
+    /**
+     * Hosts whose advertised listeners are part of the global view. The advertised listeners are read from the probes,
+     * which any client that may write to the probe topic can send, so they are only queried if their host is listed.
+     *
+     * @return host names of the instances that are discovered via their advertised listeners, none if empty
+     */
+    Optional<List<String>> discoveryHosts();
+}
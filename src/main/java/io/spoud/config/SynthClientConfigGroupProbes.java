@@ -0,0 +1,35 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigGroupProbes {
+    /**
+     * Whether to run a consumer in a dedicated probe group that periodically commits and fetches offsets and
+     * rebalances, to measure the latency of the group coordinator.
+     *
+     * @return true if the group coordination is probed
+     */
+    boolean enabled();
+
+    /**
+     * Consumer group used for the probes. It should not be shared with other instances, as their rebalances would
+     * interfere with the measurements.
+     *
+     * @return id of the probe group
+     */
+    String groupId();
+
+    /**
+     * @return time between two offset commits and fetches
+     */
+    Duration interval();
+
+    /**
+     * Time between two rebalances that are triggered to measure how long joining and syncing the group takes. Should
+     * be longer than the window of the consumer's metrics (`metrics.sample.window.ms` times `metrics.num.samples`),
+     * so that the join and sync times are attributed to the right rebalance.
+     *
+     * @return time between two rebalances of the probe group
+     */
+    Duration rebalanceInterval();
+}
@@ -0,0 +1,26 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigIncidents {
+    /**
+     * Whether to correlate leader changes, failed sends and delayed probes into incidents per partition.
+     *
+     * @return true if incidents are recorded
+     */
+    boolean enabled();
+
+    /**
+     * Probes whose end-to-end latency exceeds this threshold are considered delayed, which opens an incident for
+     * their partition. An incident is closed by the first probe sent after its last problem that is consumed within
+     * this threshold.
+     *
+     * @return latency threshold for delayed probes
+     */
+    Duration latencyThreshold();
+
+    /**
+     * @return time after the last problem after which an incident is closed as unresolved if no probe arrived in time
+     */
+    Duration maxDuration();
+}
@@ -0,0 +1,20 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigJfr {
+    /**
+     * Whether the `/jfr` endpoints for starting and downloading flight recordings are available.
+     * Recordings may contain sensitive information about the environment, hence they are disabled by default.
+     *
+     * @return true if the endpoints are enabled
+     */
+    boolean endpointEnabled();
+
+    /**
+     * How much recorded data to keep around for a running recording.
+     *
+     * @return maximum age of the recorded events
+     */
+    Duration maxAge();
+}
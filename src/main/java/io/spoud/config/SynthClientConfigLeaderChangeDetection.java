@@ -0,0 +1,23 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigLeaderChangeDetection {
+    /**
+     * Whether to refresh the partition leaders as soon as the producer notices a leader change, instead of waiting
+     * for the next periodic partition refresh.
+     *
+     * @return true if leader changes are detected from the data path
+     */
+    boolean enabled();
+
+    /**
+     * @return how often the producer's metadata is compared with the known partition leaders
+     */
+    Duration checkInterval();
+
+    /**
+     * @return minimum time between two refreshes triggered by leader changes
+     */
+    Duration minRefreshInterval();
+}
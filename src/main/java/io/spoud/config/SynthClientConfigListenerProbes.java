@@ -0,0 +1,33 @@
+package io.spoud.config;
+
+import java.util.Map;
+
+public interface SynthClientConfigListenerProbes {
+    /**
+     * Additional network paths to the same cluster, e.g. an external listener, a PrivateLink endpoint or a TLS
+     * listener. Each path is probed with a dedicated producer and consumer, in parallel to the regular probes.
+     *
+     * @return listeners by name, the name is used as tag on the meters
+     */
+    Map<String, Listener> listeners();
+
+    /**
+     * @return number of probes each listener sends per second
+     */
+    int messagesPerSecond();
+
+    interface Listener {
+        /**
+         * @return bootstrap servers of the listener
+         */
+        String bootstrapServers();
+
+        /**
+         * Kafka client properties that are needed for the listener, e.g. `security.protocol` or `ssl.*`. They take
+         * precedence over the `kafka.*` configuration.
+         *
+         * @return Kafka client properties of the listener
+         */
+        Map<String, String> properties();
+    }
+}
@@ -0,0 +1,55 @@
+package io.spoud.config;
+
+import java.time.Duration;
+import java.util.List;
+
+public interface SynthClientConfigLoadTest {
+    /**
+     * Whether to start a load test with the configured schedule as soon as the application has started.
+     * A load test can also be started at any time via the `/load-test/start` endpoint.
+     *
+     * @return true if a load test should be started on startup
+     */
+    boolean startOnStartup();
+
+    /**
+     * Message rates (in addition to the regular probes) to step through. Each rate is combined with each of the
+     * configured {@link #messageSizeBytes() message sizes}.
+     *
+     * @return list of message rates per second
+     */
+    List<Integer> messagesPerSecond();
+
+    /**
+     * @return list of payload sizes to step through
+     */
+    List<Integer> messageSizeBytes();
+
+    /**
+     * @return how long each step lasts, including the warm-up
+     */
+    Duration stepDuration();
+
+    /**
+     * @return how long to wait at the beginning of each step before samples are taken into account
+     */
+    Duration stepWarmUp();
+
+    /**
+     * @return number of threads that produce the load in parallel, each with its own Kafka producer
+     */
+    int producerThreads();
+
+    /**
+     * A step is considered to be past the knee of the latency curve if its p99 end-to-end latency exceeds the
+     * p99 latency of the first step by this factor.
+     *
+     * @return factor by which the p99 latency must degrade
+     */
+    double kneeFactor();
+
+    /**
+     * @return whether to stop the load test as soon as the knee has been detected
+     */
+    boolean stopAtKnee();
+}
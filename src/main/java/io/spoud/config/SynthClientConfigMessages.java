@@ -18,4 +18,27 @@ public interface SynthClientConfigMessages {
      */
     @WithName("ignore-first-n-messages")
     int ignoreFirstNMessages();
+
+    /**
+     * Probes to a partition are skipped while this many probes to it are not acknowledged yet.
+     *
+     * @return maximum number of unacknowledged probes per partition
+     */
+    int maxInFlightPerPartition();
+
+    /**
+     * A probe that is not acknowledged within this time is counted as timed out, and no further probes are sent to
+     * its partition until it is acknowledged or fails.
+     *
+     * @return time after which an unacknowledged probe is considered timed out
+     */
+    Duration probeTimeout();
+
+    /**
+     * How the payloads of the messages are generated. The configured {@link #messageSizeBytes()} serves as the
+     * (median) size of the payloads.
+     *
+     * @return payload configuration
+     */
+    SynthClientConfigPayload payload();
 }
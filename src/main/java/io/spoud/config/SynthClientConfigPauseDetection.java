@@ -0,0 +1,27 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigPauseDetection {
+    /**
+     * Whether to run the pause detector. When enabled, latency samples whose flight window overlaps a pause of
+     * the local JVM (GC, safepoint, CPU throttling, ...) are additionally excluded from the pause-corrected meters.
+     *
+     * @return true if pause detection is enabled
+     */
+    boolean enabled();
+
+    /**
+     * How long the detector thread sleeps between two measurements.
+     *
+     * @return sleep interval of the detector thread
+     */
+    Duration resolution();
+
+    /**
+     * How much longer than {@link #resolution()} a sleep must take before it is considered a pause.
+     *
+     * @return minimum duration of a pause
+     */
+    Duration threshold();
+}
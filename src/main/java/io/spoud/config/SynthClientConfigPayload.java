@@ -0,0 +1,57 @@
+package io.spoud.config;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface SynthClientConfigPayload {
+    enum Distribution {
+        /** every payload has exactly the configured message size */
+        FIXED,
+        /** payload sizes are uniformly distributed between the min and max size */
+        UNIFORM,
+        /** payload sizes follow a log-normal distribution whose median is the configured message size */
+        LOGNORMAL,
+        /** payload sizes are replayed from the configured histogram */
+        HISTOGRAM
+    }
+
+    Distribution distribution();
+
+    /**
+     * @return lower bound of the payload size, used by the uniform and log-normal distributions
+     */
+    int minSizeBytes();
+
+    /**
+     * @return upper bound of the payload size, used by the uniform and log-normal distributions
+     */
+    int maxSizeBytes();
+
+    /**
+     * @return standard deviation of the logarithm of the payload size for the log-normal distribution
+     */
+    double lognormalSigma();
+
+    /**
+     * Histogram to replay for the histogram distribution, given as a list of `size:weight` pairs,
+     * e.g. `100:80,1000:15,100000:5`.
+     *
+     * @return list of size and weight pairs
+     */
+    Optional<List<String>> histogram();
+
+    /**
+     * Number of pre-generated payloads to pick from. The payloads are reused for every message, so a larger pool
+     * makes it less likely that the same payload appears twice in one (compressed) batch.
+     *
+     * @return number of payloads in the pool
+     */
+    int poolSize();
+
+    /**
+     * Fraction of each payload that consists of easily compressible data. The rest is random and incompressible.
+     *
+     * @return value between 0 (incompressible) and 1 (fully compressible)
+     */
+    double compressibleFraction();
+}
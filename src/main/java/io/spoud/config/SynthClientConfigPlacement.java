@@ -0,0 +1,31 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigPlacement {
+    /**
+     * Whether to rotate the followers of the probe topic's partitions, so that over time every broker replicates
+     * from every other broker and the latency of each (leader, follower) pair gets measured.
+     *
+     * @return true if the replica placement is rotated
+     */
+    boolean enabled();
+
+    /**
+     * @return number of partitions each broker should lead, more partitions cover more pairs at the same time
+     */
+    int partitionsPerBroker();
+
+    /**
+     * @return how often the placement is advanced
+     */
+    Duration rotationInterval();
+
+    /**
+     * Upper bound for the number of partitions that are reassigned at once, to limit the replication traffic caused
+     * by the rotation.
+     *
+     * @return maximum number of partitions to reassign per rotation
+     */
+    int maxReassignmentsPerRotation();
+}
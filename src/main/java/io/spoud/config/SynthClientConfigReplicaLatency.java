@@ -0,0 +1,23 @@
+package io.spoud.config;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface SynthClientConfigReplicaLatency {
+    /**
+     * Whether to additionally consume the probes from follower replicas (KIP-392) to measure the latency until a
+     * probe is visible on each replica. Requires the brokers to be configured with
+     * `replica.selector.class=org.apache.kafka.common.replica.RackAwareReplicaSelector`.
+     *
+     * @return true if replica latencies are measured
+     */
+    boolean enabled();
+
+    /**
+     * Racks for which a follower-fetching consumer is started. If not set, one consumer is started for each rack of
+     * the brokers in the cluster.
+     *
+     * @return list of broker racks
+     */
+    Optional<List<String>> racks();
+}
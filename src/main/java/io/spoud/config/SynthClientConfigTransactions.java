@@ -0,0 +1,25 @@
+package io.spoud.config;
+
+import java.time.Duration;
+
+public interface SynthClientConfigTransactions {
+    /**
+     * Whether to periodically send probes in a transaction with a dedicated transactional producer, and to read them
+     * with a dedicated `read_committed` consumer.
+     *
+     * @return true if transactional probes are sent
+     */
+    boolean enabled();
+
+    /**
+     * Transactional id of the probe producer. Must be unique per instance, or the instances fence each other.
+     *
+     * @return transactional id
+     */
+    String transactionalId();
+
+    /**
+     * @return time between two transactions
+     */
+    Duration interval();
+}
@@ -0,0 +1,133 @@
+package io.spoud.jfr;
+
+import io.quarkus.logging.Log;
+import io.spoud.config.SynthClientConfig;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Allows starting a JDK Flight Recorder recording at runtime and downloading its contents, so that the synth client
+ * can be profiled in production without attaching an agent. The recording contains the synth client's own events
+ * (see this package) in addition to the JVM events of the chosen settings.
+ */
+@Singleton
+@Path("/jfr")
+@Produces("application/json")
+public class FlightRecorderResource {
+    private final boolean enabled;
+    private final Duration maxAge;
+    private Recording recording;
+
+    public record RecordingStatus(boolean running, Instant startTime, Duration maxAge, String settings) {
+    }
+
+    public FlightRecorderResource(SynthClientConfig config) {
+        this.enabled = config.jfr().endpointEnabled();
+        this.maxAge = config.jfr().maxAge();
+    }
+
+    @GET
+    public synchronized RecordingStatus status() {
+        ensureEnabled();
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            return new RecordingStatus(false, null, maxAge, null);
+        }
+        return new RecordingStatus(true, recording.getStartTime(), recording.getMaxAge(), recording.getName());
+    }
+
+    /**
+     * Starts a new recording. An already running recording is stopped and discarded.
+     *
+     * @param settings name of the JFR settings to use, either "default" (low overhead) or "profile"
+     */
+    @POST
+    @Path("/start")
+    public synchronized RecordingStatus start(@QueryParam("settings") @DefaultValue("default") String settings) {
+        ensureEnabled();
+        closeRecording();
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+        } catch (ParseException | IOException e) {
+            throw new WebApplicationException("Unknown JFR settings: " + settings, e, Response.Status.BAD_REQUEST);
+        }
+        recording.setName(settings);
+        recording.setMaxAge(maxAge);
+        recording.setToDisk(true);
+        recording.start();
+        Log.infof("Started flight recording with settings '%s'", settings);
+        return status();
+    }
+
+    @POST
+    @Path("/stop")
+    public synchronized RecordingStatus stop() {
+        ensureEnabled();
+        closeRecording();
+        return status();
+    }
+
+    /**
+     * Dumps the data of the running recording. The recording keeps running. The dump is streamed from a temporary
+     * file that is deleted once it was sent, so that large recordings are not held in memory.
+     */
+    @GET
+    @Path("/dump")
+    @Produces("application/octet-stream")
+    public synchronized Response dump() throws IOException {
+        ensureEnabled();
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new NotFoundException("No recording is running");
+        }
+        var file = Files.createTempFile("synth-client-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        StreamingOutput body = output -> {
+            try {
+                Files.copy(file, output);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return Response.ok(body)
+                .header("Content-Disposition", "attachment; filename=\"synth-client-%d.jfr\"".formatted(Instant.now().getEpochSecond()))
+                .build();
+    }
+
+    @PreDestroy
+    synchronized void closeRecording() {
+        if (recording != null) {
+            Log.info("Closing flight recording");
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private void ensureEnabled() {
+        if (!enabled) {
+            throw new NotFoundException("JFR endpoint is disabled");
+        }
+    }
+}
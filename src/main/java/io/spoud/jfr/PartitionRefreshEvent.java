@@ -0,0 +1,24 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.spoud.synth.PartitionRefresh")
+@Label("Partition Refresh")
+@Category({"Kafka Synth Client", "Topology"})
+@Description("The partition to broker mapping was refreshed")
+public class PartitionRefreshEvent extends jdk.jfr.Event {
+    @Label("Brokers")
+    public int brokers;
+
+    @Label("Partitions")
+    public int partitions;
+
+    @Label("Reassigned Partitions")
+    public int reassignedPartitions;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
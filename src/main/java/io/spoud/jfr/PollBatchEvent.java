@@ -0,0 +1,18 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.spoud.synth.PollBatch")
+@Label("Poll Batch")
+@Category({"Kafka Synth Client", "Consumer"})
+@Description("A consumer poll returned and its records were processed")
+public class PollBatchEvent extends jdk.jfr.Event {
+    @Label("Consumer Index")
+    public int consumer;
+
+    @Label("Record Count")
+    public int recordCount;
+}
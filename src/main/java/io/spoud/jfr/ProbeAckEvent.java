@@ -0,0 +1,30 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("io.spoud.synth.ProbeAck")
+@Label("Probe Ack")
+@Category({"Kafka Synth Client", "Producer"})
+@Description("The producer callback of a probe message was invoked")
+public class ProbeAckEvent extends jdk.jfr.Event {
+    @Label("Topic")
+    public String topic;
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Broker")
+    @Description("ID of the partition leader or \"unknown\"")
+    public String broker;
+
+    @Label("Ack Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    public long latency;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,27 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.spoud.synth.ProbeSend")
+@Label("Probe Send")
+@Category({"Kafka Synth Client", "Producer"})
+@Description("A probe message was handed over to the Kafka producer")
+public class ProbeSendEvent extends jdk.jfr.Event {
+    @Label("Topic")
+    public String topic;
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Broker")
+    @Description("ID of the partition leader or \"unknown\"")
+    public String broker;
+
+    @Label("Payload Size")
+    @DataAmount
+    public long payloadSize;
+}
@@ -0,0 +1,30 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("io.spoud.synth.RecordProcessed")
+@Label("Record Processed")
+@Category({"Kafka Synth Client", "Consumer"})
+@Description("A consumed probe message was processed and its end-to-end latency recorded")
+public class RecordProcessedEvent extends jdk.jfr.Event {
+    @Label("Topic")
+    public String topic;
+
+    @Label("Partition")
+    public int partition;
+
+    @Label("Broker")
+    @Description("ID of the partition leader or \"unknown\"")
+    public String broker;
+
+    @Label("From Rack")
+    public String fromRack;
+
+    @Label("End-to-End Latency")
+    @Timespan(Timespan.MILLISECONDS)
+    public long latency;
+}
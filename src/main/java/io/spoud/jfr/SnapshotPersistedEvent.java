@@ -0,0 +1,18 @@
+package io.spoud.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.spoud.synth.SnapshotPersisted")
+@Label("Snapshot Persisted")
+@Category({"Kafka Synth Client", "History"})
+@Description("A snapshot of the latency meters was written to the history database")
+public class SnapshotPersistedEvent extends jdk.jfr.Event {
+    @Label("E2E Rows")
+    public int e2eRows;
+
+    @Label("Ack Rows")
+    public int ackRows;
+}
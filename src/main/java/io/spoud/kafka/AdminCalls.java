@@ -0,0 +1,82 @@
+package io.spoud.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.util.NamedThreadFactory;
+import io.quarkus.runtime.Shutdown;
+import io.spoud.config.SynthClientConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.common.KafkaFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static io.spoud.MetricService.TAG_RACK;
+
+/**
+ * Turns the futures of admin client calls into {@link CompletableFuture}s that time out and that complete on a
+ * dedicated thread, so that the stages composed on them never run on (or block) the admin client's I/O thread.
+ * The duration of each call is recorded per operation.
+ */
+@ApplicationScoped
+public class AdminCalls {
+    public static final String ADMIN_CALL_METER_NAME = "synth-client.admin.call.duration";
+
+    private final SynthClientConfig config;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("admin-pipeline"));
+
+    public AdminCalls(SynthClientConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param operation name of the admin operation, used as tag of the duration metric
+     * @param future    future returned by the admin client
+     * @return a future that completes with the result of the call, or exceptionally with a {@link TimeoutException}
+     * if the call does not complete within the configured admin timeout
+     */
+    public <T> CompletableFuture<T> call(String operation, KafkaFuture<T> future) {
+        var startNanos = System.nanoTime();
+        var result = new CompletableFuture<T>();
+        future.whenComplete((value, error) -> executor.execute(() -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }));
+        return result.orTimeout(config.adminTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((value, error) -> Timer.builder(ADMIN_CALL_METER_NAME)
+                        .tag(TAG_RACK, config.rack())
+                        .tag("operation", operation)
+                        .tag("outcome", outcome(error))
+                        .description("Duration of admin client calls")
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * @return the actual cause of a failed stage, without the {@link CompletionException} wrapping it
+     */
+    public static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static String outcome(Throwable error) {
+        if (error == null) {
+            return "success";
+        }
+        return unwrap(error) instanceof TimeoutException ? "timeout" : "failure";
+    }
+
+    @Shutdown
+    void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,132 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.spoud.config.SynthClientConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Transports binary-encoded commands via the control topic. Every instance reads all partitions of the control topic
+ * without joining a consumer group, so that each command reaches every instance of the fleet.
+ */
+@ApplicationScoped
+public class CommandChannel {
+    private static final Duration IDLE_SLEEP = Duration.ofSeconds(1);
+
+    private final SynthClientConfig config;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final String clientId;
+    private volatile boolean running = false;
+    private volatile KafkaProducer<byte[], byte[]> producer;
+    private volatile KafkaConsumer<byte[], byte[]> consumer;
+
+    public CommandChannel(SynthClientConfig config, KafkaFactory kafkaFactory, AdminClient adminClient, AdminCalls adminCalls,
+                          @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        // a client id of its own, so that the metrics and quotas of the control clients are separate from the probes
+        this.clientId = kafkaClientId + "-commands";
+    }
+
+    /**
+     * Starts consuming the control topic in the background. Commands issued before this method is called are not received.
+     *
+     * @param handler receives the raw bytes of each command
+     */
+    public void start(Consumer<byte[]> handler) {
+        running = true;
+        if (config.autoCreateTopic()) {
+            createTopic();
+        }
+        Thread.ofPlatform().daemon().name("command-channel").start(() -> consume(handler));
+    }
+
+    private void createTopic() {
+        adminCalls.call("describeCluster", adminClient.describeCluster().nodes())
+                .thenCompose(nodes -> {
+                    short replicationFactor = (short) Math.max(Math.min(config.topicReplicationFactor(), nodes.size()), 1);
+                    if (config.topicReplicationFactor() <= 0) {
+                        replicationFactor = (short) nodes.size();
+                    }
+                    var topic = new NewTopic(config.commands().topic(), 1, replicationFactor)
+                            .configs(Map.of(TopicConfig.RETENTION_MS_CONFIG, "3600000"));
+                    return adminCalls.call("createTopics", adminClient.createTopics(List.of(topic)).all());
+                })
+                .whenComplete((v, error) -> {
+                    if (error == null) {
+                        Log.infof("Control topic created %s", config.commands().topic());
+                    } else if (!(AdminCalls.unwrap(error) instanceof TopicExistsException)) {
+                        Log.errorf(AdminCalls.unwrap(error), "Failed to create control topic %s", config.commands().topic());
+                    }
+                });
+    }
+
+    private void consume(Consumer<byte[]> handler) {
+        try (var consumer = kafkaFactory.createBinaryConsumer(Map.of(ConsumerConfig.CLIENT_ID_CONFIG, clientId))) {
+            this.consumer = consumer;
+            var assignment = new TopicAssignment(consumer, config.commands().topic(), "command consumer");
+            while (running) {
+                if (!assignment.update()) {
+                    Thread.sleep(IDLE_SLEEP.toMillis());
+                    continue;
+                }
+                for (var record : consumer.poll(Duration.ofSeconds(1))) {
+                    handler.accept(record.value());
+                }
+            }
+        } catch (WakeupException | InterruptedException e) {
+            // shutting down
+        } catch (Exception e) {
+            Log.error("Error while consuming commands", e);
+        }
+    }
+
+    /**
+     * Publishes a binary-encoded command on the control topic.
+     */
+    public void publish(byte[] command) {
+        if (producer == null) {
+            synchronized (this) {
+                if (producer == null) {
+                    producer = kafkaFactory.createBinaryProducer(Map.of(ProducerConfig.CLIENT_ID_CONFIG, clientId));
+                }
+            }
+        }
+        producer.send(new ProducerRecord<>(config.commands().topic(), command), (metadata, exception) -> {
+            if (exception != null) {
+                Log.error("Failed to publish command", exception);
+            }
+        });
+    }
+
+    @Shutdown
+    void close() {
+        running = false;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+        if (producer != null) {
+            producer.close(Duration.ofSeconds(5));
+        }
+    }
+}
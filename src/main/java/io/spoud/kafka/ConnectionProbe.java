@@ -0,0 +1,310 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.common.config.SaslConfigs;
+import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.message.SaslAuthenticateRequestData;
+import org.apache.kafka.common.message.SaslHandshakeRequestData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.requests.AbstractRequest;
+import org.apache.kafka.common.requests.AbstractResponse;
+import org.apache.kafka.common.requests.ApiVersionsRequest;
+import org.apache.kafka.common.requests.ApiVersionsResponse;
+import org.apache.kafka.common.requests.MetadataRequest;
+import org.apache.kafka.common.requests.MetadataResponse;
+import org.apache.kafka.common.requests.RequestHeader;
+import org.apache.kafka.common.requests.SaslAuthenticateRequest;
+import org.apache.kafka.common.requests.SaslAuthenticateResponse;
+import org.apache.kafka.common.requests.SaslHandshakeRequest;
+import org.apache.kafka.common.requests.SaslHandshakeResponse;
+import org.apache.kafka.common.security.JaasContext;
+import org.apache.kafka.common.security.auth.SecurityProtocol;
+import org.apache.kafka.common.security.scram.internals.ScramSaslClientProvider;
+import org.apache.kafka.common.security.ssl.DefaultSslEngineFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import javax.security.sasl.SaslException;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Opens a fresh connection to a broker the way a newly started client does, and measures each step of the connection
+ * setup separately: the TCP connect, the TLS handshake, the ApiVersions request, the SASL authentication and a
+ * metadata request for the probe topic. The Kafka protocol is spoken over a plain blocking socket, using the request
+ * and response classes of the Kafka client. SASL is supported for the mechanisms `PLAIN` and `SCRAM-SHA-*` with the
+ * credentials of the `sasl.jaas.config`, other mechanisms end the probe after the ApiVersions request.
+ */
+public final class ConnectionProbe {
+    public static final Set<String> SUPPORTED_SASL_MECHANISMS = Set.of("PLAIN", "SCRAM-SHA-256", "SCRAM-SHA-512");
+
+    public enum Phase {
+        TCP("tcp"),
+        TLS("tls"),
+        API_VERSIONS("api-versions"),
+        SASL("sasl"),
+        METADATA("metadata");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    /**
+     * A connection setup that failed in the given phase.
+     */
+    public static class PhaseException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final Phase phase;
+
+        PhaseException(Phase phase, String message, Throwable cause) {
+            super(phase.tag() + ": " + message, cause);
+            this.phase = phase;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+    }
+
+    private final SecurityProtocol securityProtocol;
+    private final SSLContext sslContext;
+    private final String endpointIdentificationAlgorithm;
+    private final String saslMechanism;
+    private final String username;
+    private final String password;
+    private final String clientId;
+    private final String topic;
+    private final int timeoutMs;
+
+    /**
+     * @param kafkaConfig the common `kafka.*` configuration (see {@link KafkaFactory#getCommonConfig()})
+     */
+    public ConnectionProbe(Map<String, Object> kafkaConfig, String clientId, String topic, Duration timeout) {
+        var parsed = new AdminClientConfig(kafkaConfig).values();
+        this.securityProtocol = SecurityProtocol.forName((String) parsed.get(CommonClientConfigs.SECURITY_PROTOCOL_CONFIG));
+        this.clientId = clientId;
+        this.topic = topic;
+        this.timeoutMs = (int) timeout.toMillis();
+        if (securityProtocol == SecurityProtocol.SSL || securityProtocol == SecurityProtocol.SASL_SSL) {
+            try (var sslEngineFactory = new DefaultSslEngineFactory()) {
+                sslEngineFactory.configure(parsed);
+                this.sslContext = sslEngineFactory.sslContext();
+            }
+            this.endpointIdentificationAlgorithm = (String) parsed.get(SslConfigs.SSL_ENDPOINT_IDENTIFICATION_ALGORITHM_CONFIG);
+        } else {
+            this.sslContext = null;
+            this.endpointIdentificationAlgorithm = null;
+        }
+        if (securityProtocol == SecurityProtocol.SASL_PLAINTEXT || securityProtocol == SecurityProtocol.SASL_SSL) {
+            this.saslMechanism = (String) parsed.get(SaslConfigs.SASL_MECHANISM);
+            var options = JaasContext.loadClientContext(parsed).configurationEntries().getFirst().getOptions();
+            this.username = (String) options.get("username");
+            this.password = (String) options.get("password");
+            ScramSaslClientProvider.initialize();
+        } else {
+            this.saslMechanism = null;
+            this.username = null;
+            this.password = null;
+        }
+    }
+
+    /**
+     * @return the mechanism if SASL is used but not supported by the probe, else null
+     */
+    public String getUnsupportedSaslMechanism() {
+        return saslMechanism != null && !SUPPORTED_SASL_MECHANISMS.contains(saslMechanism) ? saslMechanism : null;
+    }
+
+    /**
+     * Connects to the given broker and measures the duration of each phase of the connection setup. Blocks until the
+     * setup is complete, failed or timed out.
+     *
+     * @return duration of each completed phase in nanoseconds, in the order of the phases
+     * @throws PhaseException if a phase failed or timed out
+     */
+    public Map<Phase, Long> probe(String host, int port) throws PhaseException {
+        var durations = new EnumMap<Phase, Long>(Phase.class);
+        var socket = new Socket();
+        try (socket) {
+            var start = System.nanoTime();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeoutMs);
+                socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            } catch (IOException e) {
+                throw new PhaseException(Phase.TCP, e.getMessage(), e);
+            }
+            durations.put(Phase.TCP, System.nanoTime() - start);
+
+            var connection = socket;
+            if (sslContext != null) {
+                start = System.nanoTime();
+                try {
+                    var sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, host, port, true);
+                    var parameters = sslSocket.getSSLParameters();
+                    if (endpointIdentificationAlgorithm != null && !endpointIdentificationAlgorithm.isEmpty()) {
+                        parameters.setEndpointIdentificationAlgorithm(endpointIdentificationAlgorithm);
+                    }
+                    sslSocket.setSSLParameters(parameters);
+                    sslSocket.startHandshake();
+                    connection = sslSocket;
+                } catch (IOException e) {
+                    throw new PhaseException(Phase.TLS, e.getMessage(), e);
+                }
+                durations.put(Phase.TLS, System.nanoTime() - start);
+            }
+
+            var channel = new Channel(connection);
+            start = System.nanoTime();
+            var apiVersions = channel.roundTrip(Phase.API_VERSIONS, new ApiVersionsRequest.Builder().build((short) 3),
+                    ApiVersionsResponse.class);
+            if (apiVersions.data().errorCode() != Errors.NONE.code()) {
+                throw new PhaseException(Phase.API_VERSIONS, Errors.forCode(apiVersions.data().errorCode()).message(), null);
+            }
+            durations.put(Phase.API_VERSIONS, System.nanoTime() - start);
+
+            if (saslMechanism != null) {
+                if (getUnsupportedSaslMechanism() != null) {
+                    return durations;
+                }
+                start = System.nanoTime();
+                authenticate(channel, apiVersions, host);
+                durations.put(Phase.SASL, System.nanoTime() - start);
+            }
+
+            start = System.nanoTime();
+            channel.roundTrip(Phase.METADATA, new MetadataRequest.Builder(List.of(topic), false)
+                    .build(version(apiVersions, ApiKeys.METADATA, Phase.METADATA)), MetadataResponse.class);
+            durations.put(Phase.METADATA, System.nanoTime() - start);
+        } catch (PhaseException e) {
+            throw e;
+        } catch (IOException e) {
+            // failed to close the socket
+        }
+        return durations;
+    }
+
+    private void authenticate(Channel channel, ApiVersionsResponse apiVersions, String host) throws PhaseException {
+        var handshake = channel.roundTrip(Phase.SASL, new SaslHandshakeRequest.Builder(
+                        new SaslHandshakeRequestData().setMechanism(saslMechanism))
+                .build(version(apiVersions, ApiKeys.SASL_HANDSHAKE, Phase.SASL)), SaslHandshakeResponse.class);
+        if (handshake.error() != Errors.NONE) {
+            throw new PhaseException(Phase.SASL, handshake.error().message(), null);
+        }
+        var authenticateVersion = version(apiVersions, ApiKeys.SASL_AUTHENTICATE, Phase.SASL);
+        SaslClient saslClient = null;
+        try {
+            saslClient = Sasl.createSaslClient(new String[]{saslMechanism}, null, "kafka", host, Map.of(),
+                    callbacks -> {
+                        for (var callback : callbacks) {
+                            if (callback instanceof NameCallback nameCallback) {
+                                nameCallback.setName(username);
+                            } else if (callback instanceof PasswordCallback passwordCallback) {
+                                passwordCallback.setPassword(password != null ? password.toCharArray() : null);
+                            }
+                            // other callbacks, e.g. for SCRAM extensions, keep their defaults
+                        }
+                    });
+            if (saslClient == null) {
+                throw new PhaseException(Phase.SASL, "no SASL client for mechanism " + saslMechanism, null);
+            }
+            var token = saslClient.hasInitialResponse() ? saslClient.evaluateChallenge(new byte[0]) : new byte[0];
+            while (true) {
+                var response = channel.roundTrip(Phase.SASL, new SaslAuthenticateRequest.Builder(
+                        new SaslAuthenticateRequestData().setAuthBytes(token)).build(authenticateVersion),
+                        SaslAuthenticateResponse.class);
+                if (response.error() != Errors.NONE) {
+                    throw new PhaseException(Phase.SASL, response.errorMessage(), null);
+                }
+                if (saslClient.isComplete()) {
+                    return;
+                }
+                token = saslClient.evaluateChallenge(response.saslAuthBytes());
+                if (saslClient.isComplete() && (token == null || token.length == 0)) {
+                    return;
+                }
+            }
+        } catch (SaslException e) {
+            throw new PhaseException(Phase.SASL, e.getMessage(), e);
+        } finally {
+            if (saslClient != null) {
+                try {
+                    saslClient.dispose();
+                } catch (SaslException e) {
+                    // nothing to clean up
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the latest version of the API that both the client and the broker support
+     */
+    private static short version(ApiVersionsResponse apiVersions, ApiKeys api, Phase phase) throws PhaseException {
+        var brokerVersions = apiVersions.apiVersion(api.id);
+        if (brokerVersions == null || brokerVersions.maxVersion() < api.oldestVersion()) {
+            throw new PhaseException(phase, "broker does not support " + api.name, null);
+        }
+        return (short) Math.min(api.latestVersion(), brokerVersions.maxVersion());
+    }
+
+    /**
+     * Sends size-delimited requests and reads the responses on a blocking connection.
+     */
+    private final class Channel {
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private int correlationId = 0;
+
+        private Channel(Socket socket) throws PhaseException {
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                this.in = new DataInputStream(socket.getInputStream());
+            } catch (IOException e) {
+                throw new PhaseException(Phase.API_VERSIONS, e.getMessage(), e);
+            }
+        }
+
+        private <T extends AbstractResponse> T roundTrip(Phase phase, AbstractRequest request, Class<T> responseType)
+                throws PhaseException {
+            var header = new RequestHeader(request.apiKey(), request.version(), clientId, correlationId++);
+            try {
+                var payload = request.serializeWithHeader(header);
+                var bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.flush();
+                var response = new byte[in.readInt()];
+                in.readFully(response);
+                return responseType.cast(AbstractResponse.parseResponse(ByteBuffer.wrap(response), header));
+            } catch (IOException | RuntimeException e) {
+                throw new PhaseException(phase, e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Shutdown;
+import io.spoud.config.SynthClientConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Transports echo probes and their replies via the echo topic. Like the {@link CommandChannel}, every instance reads
+ * all partitions of the echo topic without joining a consumer group, so that each probe reaches every instance.
+ */
+@ApplicationScoped
+public class EchoChannel {
+    private static final Duration IDLE_SLEEP = Duration.ofSeconds(1);
+
+    private final SynthClientConfig config;
+    private final KafkaFactory kafkaFactory;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    private final String clientId;
+    private volatile boolean running = false;
+    private volatile KafkaProducer<byte[], byte[]> producer;
+    private volatile KafkaConsumer<byte[], byte[]> consumer;
+
+    public EchoChannel(SynthClientConfig config, KafkaFactory kafkaFactory, AdminClient adminClient, AdminCalls adminCalls,
+                       @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
+        this.config = config;
+        this.kafkaFactory = kafkaFactory;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+        this.clientId = kafkaClientId + "-echo";
+    }
+
+    /**
+     * Starts consuming the echo topic in the background.
+     *
+     * @param handler receives the raw bytes of each echo probe or reply, on the consumer thread
+     */
+    public void start(Consumer<byte[]> handler) {
+        running = true;
+        producer = kafkaFactory.createBinaryProducer(Map.of(ProducerConfig.CLIENT_ID_CONFIG, clientId));
+        if (config.autoCreateTopic()) {
+            createTopic();
+        }
+        Thread.ofPlatform().daemon().name("echo-channel").start(() -> consume(handler));
+    }
+
+    private void createTopic() {
+        adminCalls.call("describeCluster", adminClient.describeCluster().nodes())
+                .thenCompose(nodes -> {
+                    short replicationFactor = (short) Math.max(Math.min(config.topicReplicationFactor(), nodes.size()), 1);
+                    if (config.topicReplicationFactor() <= 0) {
+                        replicationFactor = (short) nodes.size();
+                    }
+                    var topic = new NewTopic(config.echo().topic(), 1, replicationFactor)
+                            .configs(Map.of(TopicConfig.RETENTION_MS_CONFIG, "3600000"));
+                    return adminCalls.call("createTopics", adminClient.createTopics(List.of(topic)).all());
+                })
+                .whenComplete((v, error) -> {
+                    if (error == null) {
+                        Log.infof("Echo topic created %s", config.echo().topic());
+                    } else if (!(AdminCalls.unwrap(error) instanceof TopicExistsException)) {
+                        Log.errorf(AdminCalls.unwrap(error), "Failed to create echo topic %s", config.echo().topic());
+                    }
+                });
+    }
+
+    private void consume(Consumer<byte[]> handler) {
+        try (var consumer = kafkaFactory.createBinaryConsumer(Map.of(ConsumerConfig.CLIENT_ID_CONFIG, clientId))) {
+            this.consumer = consumer;
+            var assignment = new TopicAssignment(consumer, config.echo().topic(), "echo consumer");
+            while (running) {
+                if (!assignment.update()) {
+                    Thread.sleep(IDLE_SLEEP.toMillis());
+                    continue;
+                }
+                for (var record : consumer.poll(Duration.ofSeconds(1))) {
+                    handler.accept(record.value());
+                }
+            }
+        } catch (WakeupException | InterruptedException e) {
+            // shutting down
+        } catch (Exception e) {
+            Log.error("Error while consuming echo probes", e);
+        }
+    }
+
+    /**
+     * Publishes an echo probe or reply on the echo topic. Does nothing if the channel was not started.
+     */
+    public void publish(byte[] echo) {
+        var producer = this.producer;
+        if (producer == null) {
+            return;
+        }
+        producer.send(new ProducerRecord<>(config.echo().topic(), echo), (metadata, exception) -> {
+            if (exception != null) {
+                Log.warnf("Failed to publish echo probe: %s", exception.getMessage());
+            }
+        });
+    }
+
+    @Shutdown
+    void close() {
+        running = false;
+        if (consumer != null) {
+            consumer.wakeup();
+        }
+        if (producer != null) {
+            producer.close(Duration.ofSeconds(5));
+        }
+    }
+}
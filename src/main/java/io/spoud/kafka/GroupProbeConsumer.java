@@ -0,0 +1,158 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Member of a dedicated probe group that exercises the group coordinator: it periodically commits and fetches the
+ * offsets of its partitions and triggers a rebalance, and reports how long each of these took. The assigned
+ * partitions are paused right away, so the consumer never fetches any records.
+ */
+public class GroupProbeConsumer implements Runnable, AutoCloseable {
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+    private static final String COORDINATOR_METRICS_GROUP = "consumer-coordinator-metrics";
+    private static final String COMMIT_METADATA = "synth-client";
+
+    public interface Listener {
+        void onCommit(long durationNanos);
+
+        void onOffsetFetch(long durationNanos);
+
+        /**
+         * @param durationNanos time from triggering the rebalance until the partitions were assigned again
+         * @param joinTimeMs    time the consumer spent joining the group, as reported by the consumer, or NaN
+         * @param syncTimeMs    time the consumer spent syncing the group, as reported by the consumer, or NaN
+         */
+        void onRebalance(long durationNanos, double joinTimeMs, double syncTimeMs);
+
+        void onFailure(String operation, Exception e);
+    }
+
+    private final String topic;
+    private final KafkaConsumer<Long, byte[]> consumer;
+    private final long intervalNanos;
+    private final long rebalanceIntervalNanos;
+    private final Listener listener;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private Set<TopicPartition> assignment = Set.of();
+    private long rebalanceStartNanos;
+
+    public GroupProbeConsumer(String topic, KafkaConsumer<Long, byte[]> consumer, Duration interval,
+                              Duration rebalanceInterval, Listener listener) {
+        this.topic = topic;
+        this.consumer = consumer;
+        this.intervalNanos = interval.toNanos();
+        this.rebalanceIntervalNanos = rebalanceInterval.toNanos();
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        try {
+            rebalanceStartNanos = System.nanoTime();
+            consumer.subscribe(List.of(topic), new RebalanceListener());
+            var nextProbeNanos = System.nanoTime() + intervalNanos;
+            var nextRebalanceNanos = System.nanoTime() + rebalanceIntervalNanos;
+            while (running.get()) {
+                consumer.poll(POLL_TIMEOUT);
+                var now = System.nanoTime();
+                if (now - nextProbeNanos >= 0) {
+                    nextProbeNanos = now + intervalNanos;
+                    if (!assignment.isEmpty()) {
+                        commit();
+                        fetchOffsets();
+                    }
+                }
+                if (now - nextRebalanceNanos >= 0 && rebalanceStartNanos == 0) {
+                    nextRebalanceNanos = now + rebalanceIntervalNanos;
+                    rebalanceStartNanos = System.nanoTime();
+                    consumer.enforceRebalance("synth-client group probe");
+                }
+            }
+        } catch (WakeupException e) {
+            // shutting down
+        } catch (Exception e) {
+            Log.errorf(e, "Error in the consumer of probe group for topic %s", topic);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private void commit() {
+        // the committed offsets are never used, so they do not need to match the position
+        var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (var partition : assignment) {
+            offsets.put(partition, new OffsetAndMetadata(0, COMMIT_METADATA));
+        }
+        var start = System.nanoTime();
+        try {
+            consumer.commitSync(offsets);
+            listener.onCommit(System.nanoTime() - start);
+        } catch (WakeupException e) {
+            throw e;
+        } catch (Exception e) {
+            listener.onFailure("commit", e);
+        }
+    }
+
+    private void fetchOffsets() {
+        var start = System.nanoTime();
+        try {
+            consumer.committed(assignment);
+            listener.onOffsetFetch(System.nanoTime() - start);
+        } catch (WakeupException e) {
+            throw e;
+        } catch (Exception e) {
+            listener.onFailure("offset-fetch", e);
+        }
+    }
+
+    private double coordinatorMetric(String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+            if (entry.getKey().name().equals(name) && entry.getKey().group().equals(COORDINATOR_METRICS_GROUP)
+                    && entry.getValue().metricValue() instanceof Double value) {
+                return value;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        consumer.wakeup();
+    }
+
+    private class RebalanceListener implements ConsumerRebalanceListener {
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            // nothing to commit, the offsets are not used
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            assignment = Set.copyOf(consumer.assignment());
+            consumer.pause(assignment);
+            if (rebalanceStartNanos != 0) {
+                // the consumer only updates its metrics once the rebalance completed, i.e. before calling this listener
+                listener.onRebalance(System.nanoTime() - rebalanceStartNanos,
+                        coordinatorMetric("join-time-max"), coordinatorMetric("sync-time-max"));
+                rebalanceStartNanos = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.spoud.kafka;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Tracks the probes that were sent but not acknowledged yet, per partition and in the order they were sent. A
+ * partition accepts no further probes while it has the maximum number of probes in flight or while its oldest probe
+ * has been in flight for longer than the timeout, so that a stalled broker cannot fill up the producer's buffer and
+ * block the probes to all other brokers.
+ */
+final class InFlightProbes {
+
+    /**
+     * A probe in flight. Instances are reused once the probe was acknowledged or failed.
+     */
+    static class Probe {
+        private int partition;
+        private long sendNanos;
+        private boolean timedOut;
+
+        int partition() {
+            return partition;
+        }
+
+        long sendNanos() {
+            return sendNanos;
+        }
+    }
+
+    private final int maxPerPartition;
+    private final long timeoutNanos;
+    private final Map<Integer, ArrayDeque<Probe>> partitions = new ConcurrentHashMap<>();
+
+    InFlightProbes(int maxPerPartition, long timeoutNanos) {
+        this.maxPerPartition = Math.max(1, maxPerPartition);
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * Adds the probe unless the partition is at its limit or stalled.
+     *
+     * @param onTimeout called with the partition for each probe that is found to have timed out, once per probe
+     * @return true if the probe was added and should be sent
+     */
+    boolean tryAdd(Probe probe, int partition, long nowNanos, IntConsumer onTimeout) {
+        var queue = partitions.computeIfAbsent(partition, p -> new ArrayDeque<>());
+        synchronized (queue) {
+            for (var inFlight : queue) {
+                if (nowNanos - inFlight.sendNanos < timeoutNanos) {
+                    // the probes are ordered by send time
+                    break;
+                }
+                if (!inFlight.timedOut) {
+                    inFlight.timedOut = true;
+                    onTimeout.accept(partition);
+                }
+            }
+            if (queue.size() >= maxPerPartition || (!queue.isEmpty() && queue.peekFirst().timedOut)) {
+                return false;
+            }
+            probe.partition = partition;
+            probe.sendNanos = nowNanos;
+            probe.timedOut = false;
+            queue.addLast(probe);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a probe that was acknowledged or failed.
+     *
+     * @return true if the probe had timed out before
+     */
+    boolean remove(Probe probe) {
+        var queue = partitions.get(probe.partition);
+        if (queue != null) {
+            synchronized (queue) {
+                // usually the first one, as the acks of a partition arrive in order
+                queue.removeFirstOccurrence(probe);
+            }
+        }
+        return probe.timedOut;
+    }
+
+    /**
+     * @return partitions that probes were sent to
+     */
+    Set<Integer> partitions() {
+        return partitions.keySet();
+    }
+
+    /**
+     * @return number of probes in flight to the given partition
+     */
+    int count(int partition) {
+        var queue = partitions.get(partition);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+}
@@ -30,20 +30,66 @@ public class KafkaFactory {
         return KafkaAdminClient.create(getKafkaConfig(AdminClientConfig.configNames()));
     }
 
-    public KafkaConsumer<Long, String> createConsumer() {
+    public KafkaConsumer<Long, byte[]> createConsumer() {
+        return createConsumer(Map.of());
+    }
+
+    /**
+     * @param overrides consumer properties that take precedence over the `kafka.*` configuration
+     */
+    public KafkaConsumer<Long, byte[]> createConsumer(Map<String, Object> overrides) {
         Map<String, Object> config = getKafkaConfig(ConsumerConfig.configNames());
+        config.putAll(overrides);
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, LongDeserializer.class);
-        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
         return new KafkaConsumer<>(config);
     }
 
-    public KafkaProducer<Long, String> createProducer() {
+    public KafkaProducer<Long, byte[]> createProducer() {
+        return createProducer(Map.of());
+    }
+
+    /**
+     * @param overrides producer properties that take precedence over the `kafka.*` configuration
+     */
+    public KafkaProducer<Long, byte[]> createProducer(Map<String, Object> overrides) {
         Map<String, Object> config = getKafkaConfig(ProducerConfig.configNames());
+        config.putAll(overrides);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, LongSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new KafkaProducer<>(config);
+    }
+
+    /**
+     * @param overrides consumer properties that take precedence over the `kafka.*` configuration
+     */
+    public KafkaConsumer<byte[], byte[]> createBinaryConsumer(Map<String, Object> overrides) {
+        Map<String, Object> config = getKafkaConfig(ConsumerConfig.configNames());
+        config.putAll(overrides);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        return new KafkaConsumer<>(config);
+    }
+
+    /**
+     * @param overrides producer properties that take precedence over the `kafka.*` configuration
+     */
+    public KafkaProducer<byte[], byte[]> createBinaryProducer(Map<String, Object> overrides) {
+        Map<String, Object> config = getKafkaConfig(ProducerConfig.configNames());
+        config.putAll(overrides);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
         return new KafkaProducer<>(config);
     }
 
+    /**
+     * @return the `kafka.*` configuration that applies to all kinds of clients, e.g. the bootstrap servers and the
+     * security settings
+     */
+    public Map<String, Object> getCommonConfig() {
+        return getKafkaConfig(AdminClientConfig.configNames());
+    }
+
     Map<String, Object> getKafkaConfig(Set<String> keys) {
         Map<String, Object> copy = new HashMap<>();
         for (Map.Entry<String, String> entry : config.entrySet()) {
@@ -2,14 +2,21 @@ package io.spoud.kafka;
 
 import io.quarkus.logging.Log;
 import io.spoud.AdvertisedListenerRepository;
-import io.spoud.CommandService;
+import io.spoud.IncidentAnalyser;
+import io.spoud.LoadTestService;
 import io.spoud.MetricService;
+import io.spoud.ProbeVariantRegistry;
 import io.spoud.TimeService;
 import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfig.ConsumerMode;
+import io.spoud.jfr.PollBatchEvent;
+import io.spoud.jfr.RecordProcessedEvent;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
 import org.apache.kafka.common.header.Header;
@@ -20,21 +27,31 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
+    private static final Duration ASSIGNMENT_UPDATE_INTERVAL = Duration.ofSeconds(30);
+    static final Duration ASSIGNMENT_RETRY_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration IDLE_SLEEP = Duration.ofSeconds(1);
 
     private final int index;
     private final SynthClientConfig config;
-    private final KafkaConsumer<Long, String> consumer;
+    private final KafkaConsumer<Long, byte[]> consumer;
     private final AdvertisedListenerRepository advertisedListenerRepository;
     private final MetricService metricService;
     private final TimeService timeService;
-    private final CommandService commandService;
+    private final LoadTestService loadTestService;
+    private final ProbeVariantRegistry probeVariantRegistry;
+    private final IncidentAnalyser incidentAnalyser;
     private final AtomicBoolean running = new AtomicBoolean(true);
     private final AtomicReference<Instant> lastReport = new AtomicReference<>(Instant.now());
     private final AtomicLong counter = new AtomicLong(0);
@@ -45,14 +62,21 @@ public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
                            MetricService metricService,
                            TimeService timeService,
                            AdvertisedListenerRepository advertisedListenerRepository,
-                           CommandService commandService) {
+                           LoadTestService loadTestService,
+                           ProbeVariantRegistry probeVariantRegistry,
+                           IncidentAnalyser incidentAnalyser) {
         this.index = index;
         this.config = config;
         this.metricService = metricService;
         this.timeService = timeService;
         this.advertisedListenerRepository = advertisedListenerRepository;
-        this.commandService = commandService;
-        consumer = kafkaFactory.createConsumer();
+        this.loadTestService = loadTestService;
+        this.probeVariantRegistry = probeVariantRegistry;
+        this.incidentAnalyser = incidentAnalyser;
+        // offsets are not needed without a consumer group, as consumption starts at the end
+        consumer = config.consumerMode() == ConsumerMode.SUBSCRIBE
+                ? kafkaFactory.createConsumer()
+                : kafkaFactory.createConsumer(Map.of(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false));
     }
 
     @Override
@@ -65,10 +89,13 @@ public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
         }
     }
 
-    @Override
-    public void run() {
-        var topicPattern = config.consumerTopicRegex()
+    private Pattern getTopicPattern() {
+        return config.consumerTopicRegex()
                 .orElse(Pattern.compile("^%s$".formatted(Pattern.quote(config.topic()))));
+    }
+
+    private void subscribe() {
+        var topicPattern = getTopicPattern();
         Log.infov("Subscribing to topics matching {0}", topicPattern);
         consumer.subscribe(topicPattern, new ConsumerRebalanceListener() {
             @Override
@@ -85,14 +112,101 @@ public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
                 }
             }
         });
+    }
+
+    /**
+     * Assigns the partitions of the matching topics that this consumer is responsible for, and seeks newly assigned
+     * partitions to their end.
+     */
+    private void updateAssignment() {
+        var topicPattern = getTopicPattern();
+        Map<String, List<PartitionInfo>> topics;
+        try {
+            topics = consumer.listTopics(Duration.ofSeconds(10));
+        } catch (WakeupException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.warnv("Consumer {0}: failed to list topics, keeping the current assignment: {1}", index, e.getMessage());
+            return;
+        }
+        var consumers = config.consumerMode() == ConsumerMode.ASSIGN_SPLIT ? config.consumersCount() : 1;
+        var partitions = selectPartitions(topics, topicPattern, consumers, index);
+        var previous = consumer.assignment();
+        if (previous.equals(Set.copyOf(partitions))) {
+            return;
+        }
+        Log.infov("Consumer {0}: assigning partitions [{1}] {2}", index, partitions.size(), partitions);
+        consumer.assign(partitions);
+        consumer.seekToEnd(newlyAssigned(partitions, previous));
+    }
+
+    /**
+     * @param consumers number of consumers that split the partitions among each other round-robin, 1 to take all
+     * @param index     index of the consumer among them
+     * @return the partitions of the matching topics that the consumer is responsible for, ordered by topic and partition
+     */
+    static List<TopicPartition> selectPartitions(Map<String, List<PartitionInfo>> topics, Pattern topicPattern,
+                                                 int consumers, int index) {
+        var partitions = topics.entrySet().stream()
+                .filter(e -> topicPattern.matcher(e.getKey()).matches())
+                .flatMap(e -> e.getValue().stream())
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .sorted(Comparator.comparing(TopicPartition::topic).thenComparingInt(TopicPartition::partition))
+                .toList();
+        var split = Math.max(1, consumers);
+        return IntStream.range(0, partitions.size())
+                .filter(i -> i % split == index % split)
+                .mapToObj(partitions::get)
+                .toList();
+    }
+
+    /**
+     * @return the partitions that were not assigned before, which start at their end so that no old probes are consumed,
+     * while the partitions that stay assigned continue from their current position
+     */
+    static List<TopicPartition> newlyAssigned(List<TopicPartition> partitions, Set<TopicPartition> previous) {
+        return partitions.stream().filter(tp -> !previous.contains(tp)).toList();
+    }
+
+    /**
+     * @return how long to wait before the assignment is updated again, shorter while nothing is assigned, e.g. because
+     * the topic is not created yet
+     */
+    static Duration nextAssignmentUpdate(Set<TopicPartition> assignment) {
+        return assignment.isEmpty() ? ASSIGNMENT_RETRY_INTERVAL : ASSIGNMENT_UPDATE_INTERVAL;
+    }
+
+    @Override
+    public void run() {
+        var assignMode = config.consumerMode() != ConsumerMode.SUBSCRIBE;
+        var nextAssignmentUpdate = System.nanoTime();
+        if (!assignMode) {
+            subscribe();
+        }
 
         try {
             while (running.get()) {
-                ConsumerRecords<Long, String> records = consumer.poll(Duration.ofSeconds(1));
-                for (ConsumerRecord<Long, String> message : records) {
-                    if (message.value() != null && message.value().startsWith("{")) {
-                        commandService.maybeHandleCommand(message.value());
+                if (assignMode && System.nanoTime() - nextAssignmentUpdate >= 0) {
+                    // pick up partitions that were added in the meantime
+                    updateAssignment();
+                    nextAssignmentUpdate = System.nanoTime() + nextAssignmentUpdate(consumer.assignment()).toNanos();
+                }
+                if (assignMode && consumer.assignment().isEmpty()) {
+                    // poll fails without any assigned partitions, this consumer is idle but not broken
+                    lastReport.set(Instant.now());
+                    Thread.sleep(IDLE_SLEEP.toMillis());
+                    continue;
+                }
+                ConsumerRecords<Long, byte[]> records = consumer.poll(Duration.ofSeconds(1));
+                var batchEvent = new PollBatchEvent();
+                batchEvent.begin();
+                for (ConsumerRecord<Long, byte[]> message : records) {
+                    if (message.headers().lastHeader(MessageProducer.HEADER_WARM_UP) != null) {
+                        // only sent to establish the connections
+                        continue;
                     }
+                    var recordEvent = new RecordProcessedEvent();
+                    recordEvent.begin();
                     long produceTime = message.timestamp();
                     long consumeTime = timeService.currentTimeMillis();
                     String fromRack = Optional.of(message)
@@ -108,7 +222,19 @@ public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
                             .map(String::new)
                             .orElse(null);
                     metricService.recordConsumptionTime();
-                    metricService.recordLatency(message.topic(), message.partition(), consumeTime - produceTime, fromRack);
+                    var loadStep = message.headers().lastHeader(LoadTestService.HEADER_LOAD_STEP);
+                    var variant = message.headers().lastHeader(MessageProducer.HEADER_VARIANT);
+                    if (loadStep != null) {
+                        // load test messages must not distort the regular latency metrics
+                        loadTestService.recordE2eLatency(new String(loadStep.value()), consumeTime - produceTime);
+                    } else if (variant != null) {
+                        // neither must probes that were sent with different producer settings
+                        probeVariantRegistry.recordE2eLatency(new String(variant.value()), message.partition(), consumeTime - produceTime, fromRack);
+                    } else {
+                        metricService.recordLatency(message.topic(), message.partition(), consumeTime - produceTime, fromRack);
+                        incidentAnalyser.onProbeConsumed(message.partition(), produceTime, consumeTime - produceTime,
+                                metricService.getBrokerOfPartition(message.partition()));
+                    }
                     advertisedListenerRepository.mapRackToUrl(fromRack, advertisedListener);
                     lastReport.updateAndGet(last -> {
                         if (Duration.between(last, Instant.now()).getSeconds() > 10) {
@@ -118,10 +244,25 @@ public class MessageConsumer implements Runnable, HealthCheck, AutoCloseable {
                         return last;
                     });
                     counter.incrementAndGet();
+                    if (recordEvent.shouldCommit()) {
+                        recordEvent.topic = message.topic();
+                        recordEvent.partition = message.partition();
+                        recordEvent.broker = metricService.getBrokerOfPartition(message.partition());
+                        recordEvent.fromRack = fromRack;
+                        recordEvent.latency = consumeTime - produceTime;
+                        recordEvent.commit();
+                    }
+                }
+                if (!records.isEmpty() && batchEvent.shouldCommit()) {
+                    batchEvent.consumer = index;
+                    batchEvent.recordCount = records.count();
+                    batchEvent.commit();
                 }
             }
         } catch (WakeupException e) {
             // Ignore
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             Log.error("Error while consuming messages", e);
         } finally {
@@ -1,27 +1,42 @@
 package io.spoud.kafka;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tags;
 import io.quarkus.logging.Log;
+import io.spoud.IncidentAnalyser;
 import io.spoud.MetricService;
 import io.spoud.TimeService;
 import io.spoud.config.SynthClientConfig;
+import io.spoud.jfr.ProbeAckEvent;
+import io.spoud.jfr.ProbeSendEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Default;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.errors.InvalidMetadataException;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.health.HealthCheck;
 import org.eclipse.microprofile.health.HealthCheckResponse;
 import org.eclipse.microprofile.health.Liveness;
 
-import java.time.Duration;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+import static io.spoud.MetricService.TAG_BROKER;
 import static io.spoud.MetricService.TAG_RACK;
 
 @Liveness
@@ -29,26 +44,52 @@ import static io.spoud.MetricService.TAG_RACK;
 @ApplicationScoped
 public class MessageProducer implements HealthCheck {
     public static final String PRODUCE_ERROR_RATE_METER_NAME = "synth-client.producer.error-rate";
+    public static final String PROBES_IN_FLIGHT_METER_NAME = "synth-client.producer.probes-in-flight";
+    public static final String PROBES_SKIPPED_METER_NAME = "synth-client.producer.probes-skipped";
+    public static final String PROBES_TIMED_OUT_METER_NAME = "synth-client.producer.probes-timed-out";
+
+    // upper bound of idle callbacks kept for reuse, covers the probes in flight at common rates
+    private static final int CALLBACK_POOL_SIZE = 1024;
 
     private final KafkaFactory kafkaFactory;
     private final MetricService metricService;
+    private final MeterRegistry meterRegistry;
     private final TimeService timeService;
     private final SynthClientConfig config;
-    private final AtomicReference<Instant> lastMessage = new AtomicReference<>(Instant.now());
+    private final PartitionRebalancer partitionRebalancer;
+    private final IncidentAnalyser incidentAnalyser;
+    private final ArrayBlockingQueue<AckCallback> callbackPool = new ArrayBlockingQueue<>(CALLBACK_POOL_SIZE);
+    private final InFlightProbes inFlightProbes;
+    private final Map<String, BrokerMeters> brokerMeters = new ConcurrentHashMap<>();
+    private final byte[] rackHeader;
+    private final byte[] advertisedListenerHeader;
+    private volatile long lastAckNanos = System.nanoTime();
     private final String clientId;
-    private KafkaProducer<Long, String> producer;
+    // swapped by recreateProducer() while probes are being sent
+    private volatile KafkaProducer<Long, byte[]> producer;
 
     public static final String HEADER_RACK = "rack";
     public static final String HEADER_ADVERTISED_LISTENER = "listener";
+    public static final String HEADER_VARIANT = "variant";
+    public static final String HEADER_WARM_UP = "warm-up";
 
     public MessageProducer(KafkaFactory kafkaFactory, SynthClientConfig config,
-                           MetricService metricService, TimeService timeService,
+                           MetricService metricService, MeterRegistry meterRegistry, TimeService timeService,
+                           PartitionRebalancer partitionRebalancer,
+                           IncidentAnalyser incidentAnalyser,
                            @ConfigProperty(name = "kafka.client.id") String kafkaClientId) {
         this.kafkaFactory = kafkaFactory;
+        this.partitionRebalancer = partitionRebalancer;
+        this.incidentAnalyser = incidentAnalyser;
         this.config = config;
         this.metricService = metricService;
+        this.meterRegistry = meterRegistry;
         this.timeService = timeService;
+        this.inFlightProbes = new InFlightProbes(config.messages().maxInFlightPerPartition(),
+                config.messages().probeTimeout().toNanos());
         this.clientId = kafkaClientId;
+        this.rackHeader = config.rack().getBytes();
+        this.advertisedListenerHeader = config.advertisedListener().orElse("").getBytes();
         producer = kafkaFactory.createProducer();
         metricService.addGauge(PRODUCE_ERROR_RATE_METER_NAME, Tags.of(TAG_RACK, config.rack()), this, MessageProducer::getSendErrorRate);
     }
@@ -70,6 +111,60 @@ public class MessageProducer implements HealthCheck {
                 });
     }
 
+    /**
+     * @return the leader of each partition of the probe topic according to the producer's cached metadata
+     */
+    public Map<Integer, Integer> getPartitionLeaders() {
+        var leaders = new HashMap<Integer, Integer>();
+        for (var info : producer.partitionsFor(config.topic())) {
+            if (info.leader() != null) {
+                leaders.put(info.partition(), info.leader().id());
+            }
+        }
+        return leaders;
+    }
+
+    /**
+     * @return the partitions of the probe topic according to the producer's cached metadata
+     */
+    public List<Integer> getPartitions() {
+        return producer.partitionsFor(config.topic()).stream().map(PartitionInfo::partition).toList();
+    }
+
+    /**
+     * Fetches the metadata of the probe topic and sends an empty warm-up record to each partition, so that the
+     * connections to all leaders are established before the first probe is sent. Warm-up records are ignored by the
+     * consumers. Failures are logged only, as they do not prevent probing.
+     *
+     * @return a stage that completes once all warm-up records were acknowledged, failed or timed out
+     */
+    public CompletableFuture<Void> warmUp() {
+        return CompletableFuture.supplyAsync(() -> producer.partitionsFor(config.topic()))
+                .thenCompose(partitions -> {
+                    var acks = new ArrayList<CompletableFuture<Void>>();
+                    for (var info : partitions) {
+                        var record = newRecord(info.partition(), 0L, new byte[0]);
+                        record.headers().add(HEADER_WARM_UP, new byte[0]);
+                        var ack = new CompletableFuture<Void>();
+                        producer.send(record, (metadata, exception) -> {
+                            if (exception != null) {
+                                ack.completeExceptionally(exception);
+                            } else {
+                                ack.complete(null);
+                            }
+                        });
+                        acks.add(ack);
+                    }
+                    Log.infof("Sent warm-up records to %d partitions", acks.size());
+                    return CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new));
+                })
+                .orTimeout(config.adminTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(error -> {
+                    Log.warn("Failed to warm up the producer", error);
+                    return null;
+                });
+    }
+
     public void recreateProducer() {
         Log.info("Recreating Kafka producer");
         var oldProducer = producer;
@@ -77,27 +172,172 @@ public class MessageProducer implements HealthCheck {
         oldProducer.close();
     }
 
-    public void send(Long key, String value) {
-        Instant send = Instant.now();
-        var record = new ProducerRecord<>(config.topic(), null, timeService.currentTimeMillis(), key, value);
-        record.headers().add(HEADER_RACK, config.rack().getBytes());
-        record.headers().add(HEADER_ADVERTISED_LISTENER, config.advertisedListener().orElse("").getBytes());
-        producer.send(record, (metadata, exception) -> {
-            if (exception != null) {
-                Log.error("Failed to send message", exception);
-                metricService.recordProducedFailure();
-            } else {
-                Instant ack = Instant.now();
-                lastMessage.set(ack);
-                metricService.recordAckLatency(metadata.topic(), metadata.partition(), Duration.between(send, ack));
-                metricService.recordProducedSuccess();
+    /**
+     * Creates a dedicated producer for the given variant. The caller is responsible for closing it.
+     */
+    public VariantProducer createVariantProducer(ProbeVariant variant) {
+        var variantClientId = clientId + "-" + variant.name();
+        var overrides = new HashMap<>(variant.producerConfig());
+        overrides.put(ProducerConfig.CLIENT_ID_CONFIG, variantClientId);
+        return new VariantProducer(variant, this, kafkaFactory.createProducer(overrides), variantClientId);
+    }
+
+    /**
+     * Creates a dedicated producer for load tests, so that the load neither shares the sender thread, the connections
+     * nor the buffer memory with the probes. The caller is responsible for closing it.
+     *
+     * @param index index of the producer among the ones that produce the load in parallel
+     */
+    public KafkaProducer<Long, byte[]> createLoadProducer(int index) {
+        return kafkaFactory.createProducer(Map.of(ProducerConfig.CLIENT_ID_CONFIG, clientId + "-load-" + index));
+    }
+
+    /**
+     * Creates a record for the synth client topic that carries the current time and the headers identifying this client.
+     *
+     * @param partition target partition or null to let the partitioner decide
+     */
+    public ProducerRecord<Long, byte[]> newRecord(Integer partition, Long key, byte[] value) {
+        var record = new ProducerRecord<>(config.topic(), partition, timeService.currentTimeMillis(), key, value);
+        record.headers().add(HEADER_RACK, rackHeader);
+        record.headers().add(HEADER_ADVERTISED_LISTENER, advertisedListenerHeader);
+        return record;
+    }
+
+    /**
+     * Sends a probe to the given partition and records its ack latency. The latency is measured with the monotonic
+     * clock, so that it is not affected by adjustments of the wall clock, and the callbacks are reused, so that sending
+     * does not allocate anything but the record itself. The probe is skipped if the partition has too many probes in
+     * flight or is stalled (see {@link InFlightProbes}), so that a stalled broker cannot block the probes to the others.
+     *
+     * @return false if the probe was skipped or could not be sent
+     */
+    public boolean send(int partition, Long key, byte[] value) {
+        var callback = callbackPool.poll();
+        if (callback == null) {
+            callback = new AckCallback();
+        }
+        if (!inFlightProbes.tryAdd(callback, partition, System.nanoTime(), this::onTimeout)) {
+            callbackPool.offer(callback);
+            brokerMeters(metricService.getBrokerOfPartition(partition)).skipped.increment();
+            return false;
+        }
+        var sendEvent = new ProbeSendEvent();
+        sendEvent.begin();
+        try {
+            producer.send(newRecord(partition, key, value), callback);
+        } catch (RuntimeException e) {
+            // the callback is not invoked, e.g. if the producer was closed by recreateProducer() concurrently, so the
+            // probe has to be released here, else it would stall its partition once it timed out
+            inFlightProbes.remove(callback);
+            callbackPool.offer(callback);
+            Log.warnf("Failed to send probe to partition %d: %s", partition, e.getMessage());
+            metricService.recordProducedFailure();
+            return false;
+        }
+        if (sendEvent.shouldCommit()) {
+            sendEvent.topic = config.topic();
+            sendEvent.partition = partition;
+            sendEvent.broker = metricService.getBrokerOfPartition(partition);
+            sendEvent.payloadSize = value.length;
+            sendEvent.commit();
+        }
+        return true;
+    }
+
+    private void onTimeout(int partition) {
+        var broker = metricService.getBrokerOfPartition(partition);
+        Log.warnf("Probe to partition %d (broker %s) not acknowledged within %s", partition, broker,
+                config.messages().probeTimeout());
+        brokerMeters(broker).timedOut.increment();
+    }
+
+    private BrokerMeters brokerMeters(String broker) {
+        return brokerMeters.computeIfAbsent(broker, BrokerMeters::new);
+    }
+
+    /**
+     * @return number of probes in flight to the partitions currently led by the given broker
+     */
+    int getProbesInFlight(String broker) {
+        return inFlightProbes.partitions().stream()
+                .filter(partition -> broker.equals(metricService.getBrokerOfPartition(partition)))
+                .mapToInt(inFlightProbes::count)
+                .sum();
+    }
+
+    private void onAck(int partition, RecordMetadata metadata, Exception exception, long latencyNanos) {
+        // microsecond precision is plenty, the rest is noise
+        var latencyMs = (latencyNanos / 1_000) / 1_000.0;
+        if (exception != null) {
+            Log.error("Failed to send message", exception);
+            metricService.recordProducedFailure();
+            if (exception instanceof InvalidMetadataException) {
+                // e.g. NOT_LEADER_OR_FOLLOWER, the leader of the partition has most likely moved
+                partitionRebalancer.requestRefresh(exception.getClass().getSimpleName());
             }
-        });
+            incidentAnalyser.onSendFailure(partition, metricService.getBrokerOfPartition(partition));
+        } else {
+            lastAckNanos = System.nanoTime();
+            metricService.recordAckLatency(metadata.topic(), partition, latencyMs);
+            incidentAnalyser.onAck(partition, latencyMs);
+            metricService.recordProducedSuccess();
+        }
+        var ackEvent = new ProbeAckEvent();
+        if (ackEvent.isEnabled()) {
+            ackEvent.topic = config.topic();
+            ackEvent.partition = partition;
+            ackEvent.broker = metricService.getBrokerOfPartition(ackEvent.partition);
+            ackEvent.latency = latencyNanos;
+            ackEvent.succeeded = exception == null;
+            ackEvent.commit();
+        }
+    }
+
+    /**
+     * Callback of a single probe that returns itself to the pool once the probe was acknowledged or failed.
+     */
+    private final class AckCallback extends InFlightProbes.Probe implements Callback {
+
+        @Override
+        public void onCompletion(RecordMetadata metadata, Exception exception) {
+            var latencyNanos = System.nanoTime() - sendNanos();
+            inFlightProbes.remove(this);
+            try {
+                onAck(partition(), metadata, exception, latencyNanos);
+            } finally {
+                callbackPool.offer(this);
+            }
+        }
+    }
+
+    /**
+     * Counters of the probes to the partitions of a broker, and a gauge of the probes in flight to them.
+     */
+    private final class BrokerMeters {
+        private final Counter skipped;
+        private final Counter timedOut;
+
+        private BrokerMeters(String broker) {
+            var tags = Tags.of(TAG_RACK, config.rack(), TAG_BROKER, broker);
+            skipped = Counter.builder(PROBES_SKIPPED_METER_NAME)
+                    .tags(tags)
+                    .description("Number of probes that were not sent because their partition had too many probes in flight or was stalled")
+                    .register(meterRegistry);
+            timedOut = Counter.builder(PROBES_TIMED_OUT_METER_NAME)
+                    .tags(tags)
+                    .description("Number of probes that were not acknowledged within the probe timeout")
+                    .register(meterRegistry);
+            Gauge.builder(PROBES_IN_FLIGHT_METER_NAME, MessageProducer.this, p -> p.getProbesInFlight(broker))
+                    .tags(tags)
+                    .description("Number of probes that were sent but not acknowledged yet")
+                    .register(meterRegistry);
+        }
     }
 
     @Override
     public HealthCheckResponse call() {
-        return lastMessage.get().isAfter(Instant.now().minus(1, ChronoUnit.MINUTES))
+        return System.nanoTime() - lastAckNanos < TimeUnit.MINUTES.toNanos(1)
                 ? HealthCheckResponse.up("Producer is running")
                 : HealthCheckResponse.down("Producer is not running");
     }
@@ -1,10 +1,14 @@
 package io.spoud.kafka;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.logging.Log;
 import io.quarkus.scheduler.Scheduled;
 import io.smallrye.faulttolerance.api.ExponentialBackoff;
+import io.spoud.IncidentAnalyser;
 import io.spoud.config.SynthClientConfig;
-import jakarta.annotation.PostConstruct;
+import io.spoud.jfr.PartitionRefreshEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.apache.kafka.clients.admin.AdminClient;
@@ -21,13 +25,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
+
+import static io.spoud.MetricService.TAG_RACK;
 
 @ApplicationScoped
 public class PartitionRebalancer {
@@ -41,15 +49,58 @@ public class PartitionRebalancer {
     @Inject
     MessageProducer producer;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    IncidentAnalyser incidentAnalyser;
+
+    @Inject
+    AdminCalls adminCalls;
+
+    // the client proxy of this bean, so that the retries and the fallback of refreshPartitions() apply to own calls
+    @Inject
+    PartitionRebalancer self;
+
+    public static final String REFRESH_DURATION_METER_NAME = "synth-client.partition-refresh.duration";
+    public static final String TOPOLOGY_CHANGES_METER_NAME = "synth-client.partition-refresh.topology-changes";
+
     private boolean refreshPartitionsEnabled = true;
     private final AtomicBoolean initialRefreshDone = new AtomicBoolean(false);
+    private final CompletableFuture<Void> initialRefresh = new CompletableFuture<>();
     private final Map<Integer, List<Integer>> partitionsByBroker = new ConcurrentHashMap<>();
     private final Map<Integer, String> rackByPartition = new ConcurrentHashMap<>();
+    private volatile Topology topology = Topology.EMPTY;
+    private volatile Collection<Node> nodes = List.of();
+    private final AtomicBoolean leaderRefreshRequested = new AtomicBoolean(false);
+    private volatile long lastLeaderRefreshNanos = 0;
 
     public boolean isInitialRefreshPending() {
         return !initialRefreshDone.get();
     }
 
+    /**
+     * Starts a refresh right away instead of waiting for the scheduled one, e.g. as soon as the topic exists.
+     *
+     * @return a stage that completes once the initial refresh is done (or was given up)
+     */
+    public CompletionStage<Void> refreshNow() {
+        self.refreshPartitions();
+        return initialRefresh;
+    }
+
+    /**
+     * Refreshes the partitions periodically once the initial refresh started by {@link #refreshNow()} is done, so
+     * that the two never run concurrently and submit the same reassignments twice.
+     */
+    @Scheduled(every = "60s", delay = 60L, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    CompletionStage<Void> refreshPeriodically() {
+        if (isInitialRefreshPending()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return self.refreshPartitions();
+    }
+
     NewPartitionReassignment genReassignment(Node leader, int replicationFactor, Collection<Node> nodes) {
         var replicaCandidates = nodes.stream()
                 .filter(n -> n.id() != leader.id())
@@ -65,44 +116,91 @@ public class PartitionRebalancer {
     }
 
     public Optional<Integer> getBrokerIdForPartition(int partition) {
-        for (var entry : getPartitionsByBroker().entrySet()) {
-            var brokerId = entry.getKey();
-            var partitions = entry.getValue();
-            if (partitions.contains(partition)) {
-                return Optional.of(brokerId);
-            }
-        }
+        return Optional.ofNullable(topology.leaderByPartition().get(partition));
+    }
 
-        return Optional.empty();
+    /**
+     * @return IDs of the brokers that hold a replica of the given partition, leader first, as of the last refresh
+     */
+    public List<Integer> getReplicasOfPartition(int partition) {
+        return topology.replicasByPartition().getOrDefault(partition, List.of());
     }
 
     public String getRackOfPartitionLeader(int partition) {
         return rackByPartition.getOrDefault(partition, "unknown");
     }
 
-    private void recalculateRacksByPartition() {
-        try {
-            adminClient.describeCluster()
-                .nodes().whenComplete(
-                    (nodes, throwable) -> {
-                        if (throwable != null) {
-                            Log.error("Failed to get nodes", throwable);
-                            throw new RuntimeException("Failed to get nodes", throwable);
-                        }
-                        var nodeRacks = nodes.stream().collect(Collectors.toMap(Node::id, n -> Optional.ofNullable(n.rack())));
-                        for (var entry : partitionsByBroker.entrySet()) {
-                            var broker = entry.getKey();
-                            var partitions = entry.getValue();
-                            var rack = nodeRacks.get(broker).orElse("unknown");
-                            for (var partition : partitions) {
-                                rackByPartition.put(partition, rack);
-                            }
-                        }
-                    }
-                );
-        } catch (Exception e) {
-            Log.warn("Failed to get racks of partition leaders.", e);
+    /**
+     * Replaces the current topology with the given one, updating only the index entries of the partitions and
+     * brokers that changed.
+     */
+    Topology.Diff applyTopology(Topology next) {
+        var previous = topology;
+        var diff = next.diff(previous);
+        for (var partition : diff.leaderChanged()) {
+            var oldLeader = previous.leaderByPartition().get(partition);
+            var newLeader = next.leaderByPartition().get(partition);
+            if (previous.replicasByPartition().containsKey(partition) && next.replicasByPartition().containsKey(partition)) {
+                // neither a new nor a removed partition
+                incidentAnalyser.onLeaderChange(partition, oldLeader, newLeader);
+            }
+            if (oldLeader != null) {
+                partitionsByBroker.computeIfPresent(oldLeader, (broker, partitions) -> {
+                    var remaining = partitions.stream().filter(p -> !p.equals(partition)).toList();
+                    return remaining.isEmpty() ? null : remaining;
+                });
+            }
+            if (newLeader != null) {
+                partitionsByBroker.compute(newLeader, (broker, partitions) -> {
+                    var updated = new ArrayList<>(partitions != null ? partitions : List.of());
+                    updated.add(partition);
+                    updated.sort(Comparator.naturalOrder());
+                    return List.copyOf(updated);
+                });
+            }
+        }
+        for (var entry : next.leaderByPartition().entrySet()) {
+            if (diff.leaderChanged().contains(entry.getKey()) || diff.brokersChanged().contains(entry.getValue())) {
+                rackByPartition.put(entry.getKey(), next.rackByBroker().getOrDefault(entry.getValue(), "unknown"));
+            }
+        }
+        for (var partition : diff.leaderChanged()) {
+            if (!next.leaderByPartition().containsKey(partition)) {
+                rackByPartition.remove(partition);
+            }
         }
+        topology = next;
+        return diff;
+    }
+
+    private void recordTopologyChanges(Topology.Diff diff) {
+        if (diff.isEmpty()) {
+            Log.debug("Topology of the probe topic did not change");
+            return;
+        }
+        Log.infov("Topology changed: leaders of partitions {0}, replicas of partitions {1}, brokers {2}",
+                diff.leaderChanged(), diff.replicasChanged(), diff.brokersChanged());
+        topologyChangeCounter("leader").increment(diff.leaderChanged().size());
+        topologyChangeCounter("replicas").increment(diff.replicasChanged().size());
+        topologyChangeCounter("broker").increment(diff.brokersChanged().size());
+    }
+
+    private Counter topologyChangeCounter(String type) {
+        return Counter.builder(TOPOLOGY_CHANGES_METER_NAME)
+                .tag(TAG_RACK, config.rack())
+                .tag("type", type)
+                .description("Number of partitions or brokers whose placement changed between two partition refreshes")
+                .register(meterRegistry);
+    }
+
+    private void recordRefreshDuration(long startNanos, String type, boolean succeeded) {
+        Timer.builder(REFRESH_DURATION_METER_NAME)
+                .tag(TAG_RACK, config.rack())
+                .tag("type", type)
+                .tag("outcome", succeeded ? "success" : "failure")
+                .description("Duration of refreshing the partition to broker mapping")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     }
 
     int getTopicReplicationFactor(TopicDescription topicDescription) {
@@ -113,7 +211,14 @@ public class PartitionRebalancer {
         return Collections.unmodifiableMap(partitionsByBroker);
     }
 
-    void reassignPartitionsToBrokers(TopicDescription topicDescription, Collection<Node> nodes) {
+    /**
+     * Plans the reassignments needed so that each broker is the leader of at least one partition. Does not update the
+     * index of partitions by broker, as that is maintained via {@link #applyTopology(Topology)}.
+     *
+     * @return the reassignments to submit, empty if each broker already leads a partition
+     */
+    Map<TopicPartition, Optional<NewPartitionReassignment>> planLeaderReassignments(TopicDescription topicDescription, Collection<Node> nodes) {
+        var reassignments = new LinkedHashMap<TopicPartition, Optional<NewPartitionReassignment>>();
         // build a map of broker -> list of partitions
         var brokers = new ArrayList<>(nodes);
         final var newPartitionAssignment = new HashMap<Integer, List<Integer>>();
@@ -136,8 +241,7 @@ public class PartitionRebalancer {
         if (!newPartitionAssignment.get(brokers.get(i).id()).isEmpty()) {
             // each broker has at least one partition, nothing to do
             Log.debug("Each broker has at least one partition. Will not reassign partitions");
-            partitionsByBroker.putAll(newPartitionAssignment);
-            return;
+            return reassignments;
         }
         while (i < j) {
             var poorBroker = brokers.get(i);
@@ -149,14 +253,7 @@ public class PartitionRebalancer {
             var partitionToGive = newPartitionAssignment.get(richBroker.id()).removeFirst();
             newPartitionAssignment.get(poorBroker.id()).add(partitionToGive);
             var tp = new TopicPartition(config.topic(), partitionToGive);
-
-            var assignment = genReassignment(poorBroker, getTopicReplicationFactor(topicDescription), nodes);
-            try {
-                adminClient.alterPartitionReassignments(Map.of(tp, Optional.of(assignment))).all().getNow(null);
-            } catch (Exception e) {
-                Log.errorv(e, "Failed to reassign partition {0} to broker {1}", partitionToGive, poorBroker.id());
-                break;
-            }
+            reassignments.put(tp, Optional.of(genReassignment(poorBroker, getTopicReplicationFactor(topicDescription), nodes)));
 
             if (newPartitionAssignment.get(richBroker.id()).size() < 2) {
                 j--;
@@ -166,62 +263,168 @@ public class PartitionRebalancer {
         for (var entry : newPartitionAssignment.entrySet()) {
             Log.infov("New assignment: Broker {0} has partitions {1}", entry.getKey(), entry.getValue());
         }
-        partitionsByBroker.putAll(newPartitionAssignment);
-        producer.recreateProducer(); // recreate the producer to make sure that it is aware of the new partitions
+        return reassignments;
+    }
+
+    /**
+     * Submits all reassignments in a single request. Failures are logged but do not fail the refresh, e.g. if the
+     * client is not allowed to alter the cluster. The index is updated from the actual leaders with the next refresh,
+     * and the producer learns about the new leaders by itself when it gets a NOT_LEADER_OR_FOLLOWER error or its
+     * metadata expires.
+     *
+     * @return number of partitions that were reassigned
+     */
+    private CompletableFuture<Integer> submitReassignments(Map<TopicPartition, Optional<NewPartitionReassignment>> reassignments) {
+        if (reassignments.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return adminCalls.call("alterPartitionReassignments", adminClient.alterPartitionReassignments(reassignments).all())
+                .handle((v, error) -> {
+                    if (error != null) {
+                        Log.errorv(AdminCalls.unwrap(error), "Failed to reassign partitions {0}", reassignments.keySet());
+                        return 0;
+                    }
+                    return reassignments.size();
+                });
     }
 
-    @PostConstruct
-    void init() {
-        refreshPartitions();
+    /**
+     * Makes sure that the topic has at least as many partitions as there are brokers.
+     *
+     * @return true if partitions were created
+     */
+    private CompletableFuture<Boolean> createMissingPartitions(TopicDescription topicDescr, int brokers) {
+        if (topicDescr.partitions().size() >= brokers) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Log.infov("Will create {0} additional partitions", brokers - topicDescr.partitions().size());
+        return adminCalls.call("createPartitions",
+                        adminClient.createPartitions(Map.of(config.topic(), NewPartitions.increaseTo(brokers))).all())
+                .thenApply(v -> true);
     }
 
-    void refreshPartitionsFallback() {
+    /**
+     * Requests a refresh of the partition leaders, e.g. because sending a probe failed with a NOT_LEADER_OR_FOLLOWER
+     * error. Requests are coalesced and executed by {@link #detectLeaderChanges()}.
+     */
+    public void requestRefresh(String reason) {
+        if (leaderRefreshRequested.compareAndSet(false, true)) {
+            Log.infof("Refresh of partition leaders requested: %s", reason);
+        }
+    }
+
+    /**
+     * Compares the leaders in the producer's metadata with the known leaders, and refreshes the leaders if they
+     * differ or if a refresh was requested. The producer updates its metadata as soon as it notices a leader change,
+     * so this detects leader changes within seconds, without any requests to the cluster in steady state.
+     */
+    @Scheduled(every = "${synth-client.leader-change-detection.check-interval}", delay = 10L, delayUnit = TimeUnit.SECONDS,
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void detectLeaderChanges() {
+        if (!config.leaderChangeDetection().enabled() || isInitialRefreshPending()) {
+            return;
+        }
+        if (!leaderRefreshRequested.get()) {
+            try {
+                var known = topology.leaderByPartition();
+                var current = producer.getPartitionLeaders();
+                for (var entry : current.entrySet()) {
+                    if (!entry.getValue().equals(known.get(entry.getKey()))) {
+                        requestRefresh("producer metadata shows broker " + entry.getValue() + " as leader of partition " + entry.getKey());
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                Log.debug("Failed to get partition leaders from producer metadata", e);
+            }
+        }
+        var minInterval = config.leaderChangeDetection().minRefreshInterval().toNanos();
+        if (leaderRefreshRequested.get() && System.nanoTime() - lastLeaderRefreshNanos >= minInterval) {
+            leaderRefreshRequested.set(false);
+            lastLeaderRefreshNanos = System.nanoTime();
+            refreshLeaders();
+        }
+    }
+
+    /**
+     * Refreshes the leaders and replicas of the probe topic only, without checking the number of partitions or
+     * reassigning partitions.
+     */
+    private void refreshLeaders() {
+        var startNanos = System.nanoTime();
+        adminCalls.call("describeTopics", adminClient.describeTopics(List.of(config.topic())).allTopicNames()).whenComplete((topics, throwable) -> {
+            if (throwable != null) {
+                Log.warn("Failed to refresh partition leaders", AdminCalls.unwrap(throwable));
+                recordRefreshDuration(startNanos, "leaders", false);
+                leaderRefreshRequested.set(true);
+                return;
+            }
+            recordTopologyChanges(applyTopology(Topology.of(topics.get(config.topic()), nodes)));
+            recordRefreshDuration(startNanos, "leaders", true);
+        });
+    }
+
+    CompletionStage<Void> refreshPartitionsFallback() {
         Log.error("Failed to refresh partitions after 3 retries, disabling rebalancing feature");
         refreshPartitionsEnabled = false;
         initialRefreshDone.set(true);
+        initialRefresh.complete(null);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private record ClusterState(Collection<Node> nodes, TopicDescription topic) {
     }
 
+    /**
+     * Refreshes the topology and makes sure that each broker leads a partition of the probe topic. The admin calls
+     * are composed asynchronously, so the returned stage fails if any of them fails or times out, which triggers the
+     * retries.
+     */
     @Fallback(fallbackMethod = "refreshPartitionsFallback")
     @ExponentialBackoff(maxDelay = 30000)
     @Retry(maxRetries = 3)
-    @Scheduled(every = "60s", delay = 5L, delayUnit = TimeUnit.SECONDS, concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
-    void refreshPartitions() {
+    CompletionStage<Void> refreshPartitions() {
         if (!refreshPartitionsEnabled) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         Log.info("Rebalancing partitions to make sure that the E2E test hits each node");
-        // figure out how many brokers there are
-        var cluster = adminClient.describeCluster();
-        cluster.nodes().whenComplete((nodes, throwable) -> {
-            if (throwable != null) {
-                Log.error("Failed to get cluster nodes", throwable);
-                throw new RuntimeException("Failed to get cluster nodes", throwable);
-            }
-            Log.info("Cluster has " + nodes.size() + " nodes");
-            // make sure that the topic has at least as many partitions as there are brokers
-            var description = adminClient.describeTopics(List.of(config.topic()));
-            description.allTopicNames().whenComplete((topics, throwable1) -> {
-                if (throwable1 != null) {
-                    throw new RuntimeException("Failed to get topic names", throwable1);
-                }
-                var topicDescr = topics.get(config.topic());
-                Log.infov("Topic {0} has {1} partitions", config.topic(), topicDescr.partitions().size());
-                if (topicDescr.partitions().size() < nodes.size()) {
-                    var partitionsToCreate = nodes.size() - topicDescr.partitions().size();
-                    Log.infov("Will create {0} additional partitions", partitionsToCreate);
-                    try {
-                        adminClient.createPartitions(Map.of(config.topic(), NewPartitions.increaseTo(nodes.size()))).all().getNow(null);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Failed to create partitions", e);
+        var refreshEvent = new PartitionRefreshEvent();
+        refreshEvent.begin();
+        var startNanos = System.nanoTime();
+        // the brokers and the topic are described concurrently
+        var nodesFuture = adminCalls.call("describeCluster", adminClient.describeCluster().nodes());
+        var topicFuture = adminCalls.call("describeTopics", adminClient.describeTopics(List.of(config.topic())).allTopicNames())
+                .thenApply(topics -> topics.get(config.topic()));
+        return nodesFuture.thenCombine(topicFuture, ClusterState::new)
+                .thenCompose(state -> {
+                    Log.infov("Cluster has {0} nodes, topic {1} has {2} partitions",
+                            state.nodes().size(), config.topic(), state.topic().partitions().size());
+                    refreshEvent.brokers = state.nodes().size();
+                    refreshEvent.partitions = Math.max(state.topic().partitions().size(), state.nodes().size());
+                    return createMissingPartitions(state.topic(), state.nodes().size()).thenCompose(partitionsCreated -> {
+                        this.nodes = List.copyOf(state.nodes());
+                        recordTopologyChanges(applyTopology(Topology.of(state.topic(), state.nodes())));
+                        // make sure that each broker is a leader for at least one partition
+                        return submitReassignments(planLeaderReassignments(state.topic(), state.nodes())).thenAccept(reassigned -> {
+                            refreshEvent.reassignedPartitions = reassigned;
+                            if (partitionsCreated) {
+                                // the producer would only pick up the new partitions once its metadata expires
+                                producer.recreateProducer();
+                            }
+                        });
+                    });
+                })
+                .whenComplete((v, error) -> {
+                    recordRefreshDuration(startNanos, "full", error == null);
+                    refreshEvent.succeeded = error == null;
+                    refreshEvent.commit();
+                    if (error != null) {
+                        Log.warn("Failed to refresh partitions", AdminCalls.unwrap(error));
+                        return;
                     }
-                }
-
-                // make sure that each broker is a leader for at least one partition
-                reassignPartitionsToBrokers(topicDescr, nodes);
-                recalculateRacksByPartition();
-                Log.debugv("Partition refresh done");
-                initialRefreshDone.set(true);
-            });
-        });
+                    Log.debugv("Partition refresh done");
+                    initialRefreshDone.set(true);
+                    initialRefresh.complete(null);
+                });
     }
 }
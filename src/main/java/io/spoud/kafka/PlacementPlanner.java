@@ -0,0 +1,145 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import io.spoud.config.SynthClientConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewPartitionReassignment;
+import org.apache.kafka.clients.admin.NewPartitions;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotates the followers of the probe topic's partitions, so that over time every broker replicates from every other
+ * broker. Together with the ack latencies (which with `acks=all` include the replication to the followers) and the
+ * replica latencies, this yields a latency for every (leader, follower) broker pair. The leaders are kept in place,
+ * and at most {@link io.spoud.config.SynthClientConfigPlacement#maxReassignmentsPerRotation()} partitions are moved
+ * per rotation. A rotation is skipped while a reassignment of the probe topic is still in progress.
+ * <p>
+ * Only one instance of a fleet should have the rotation enabled, otherwise the instances work against each other.
+ */
+@ApplicationScoped
+public class PlacementPlanner {
+    private final SynthClientConfig config;
+    private final AdminClient adminClient;
+    private final AdminCalls adminCalls;
+    // only advanced by one rotation at a time
+    private volatile int round = 0;
+
+    public PlacementPlanner(SynthClientConfig config, AdminClient adminClient, AdminCalls adminCalls) {
+        this.config = config;
+        this.adminClient = adminClient;
+        this.adminCalls = adminCalls;
+    }
+
+    /**
+     * @param leader            ID of the partition leader, stays the first replica
+     * @param brokerIds         IDs of all brokers of the cluster
+     * @param replicationFactor number of replicas of the partition
+     * @param slot              the higher the slot, the further the followers are shifted through the other brokers
+     * @return IDs of the brokers that should hold a replica, leader first
+     */
+    static List<Integer> plannedReplicas(int leader, List<Integer> brokerIds, int replicationFactor, int slot) {
+        var others = brokerIds.stream().filter(id -> id != leader).sorted().toList();
+        var replicas = new ArrayList<Integer>();
+        replicas.add(leader);
+        var followers = Math.min(replicationFactor - 1, others.size());
+        for (int i = 0; i < followers; i++) {
+            replicas.add(others.get((slot * followers + i) % others.size()));
+        }
+        return replicas;
+    }
+
+    /**
+     * @return the reassignments that are needed to reach the placement of the given round
+     */
+    static Map<TopicPartition, List<Integer>> plan(TopicDescription topic, List<Integer> brokerIds, int replicationFactor, int round) {
+        var partitionsByLeader = new TreeMap<Integer, List<TopicPartitionInfo>>();
+        for (var partition : topic.partitions()) {
+            if (partition.leader() != null) {
+                partitionsByLeader.computeIfAbsent(partition.leader().id(), k -> new ArrayList<>()).add(partition);
+            }
+        }
+        var plan = new LinkedHashMap<TopicPartition, List<Integer>>();
+        for (var entry : partitionsByLeader.entrySet()) {
+            var partitions = entry.getValue();
+            for (int j = 0; j < partitions.size(); j++) {
+                var partition = partitions.get(j);
+                var target = plannedReplicas(entry.getKey(), brokerIds, replicationFactor, round * partitions.size() + j);
+                var current = partition.replicas().stream().map(Node::id).toList();
+                if (!new HashSet<>(current).equals(new HashSet<>(target))) {
+                    plan.put(new TopicPartition(topic.name(), partition.partition()), target);
+                }
+            }
+        }
+        return plan;
+    }
+
+    @Scheduled(every = "${synth-client.placement.rotation-interval}", delay = 60, delayUnit = TimeUnit.SECONDS,
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    CompletionStage<Void> rotate() {
+        if (!config.placement().enabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return adminCalls.call("listPartitionReassignments", adminClient.listPartitionReassignments().reassignments())
+                .thenCompose(ongoing -> {
+                    if (ongoing.keySet().stream().anyMatch(tp -> tp.topic().equals(config.topic()))) {
+                        Log.infof("Reassignment of %s still in progress, skipping rotation", config.topic());
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    var brokerIdsFuture = adminCalls.call("describeCluster", adminClient.describeCluster().nodes())
+                            .thenApply(nodes -> nodes.stream().map(Node::id).sorted().toList());
+                    var topicFuture = adminCalls.call("describeTopics", adminClient.describeTopics(List.of(config.topic())).allTopicNames())
+                            .thenApply(topics -> topics.get(config.topic()));
+                    return brokerIdsFuture.thenCombine(topicFuture, (brokerIds, topic) -> rotate(brokerIds, topic))
+                            .thenCompose(rotation -> rotation);
+                })
+                .exceptionally(error -> {
+                    Log.warn("Failed to rotate the replica placement", AdminCalls.unwrap(error));
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> rotate(List<Integer> brokerIds, TopicDescription topic) {
+        var targetPartitions = brokerIds.size() * Math.max(1, config.placement().partitionsPerBroker());
+        if (topic.partitions().size() < targetPartitions) {
+            Log.infof("Increasing partitions of %s to %d to cover more broker pairs", config.topic(), targetPartitions);
+            return adminCalls.call("createPartitions",
+                    adminClient.createPartitions(Map.of(config.topic(), NewPartitions.increaseTo(targetPartitions))).all());
+        }
+        var replicationFactor = topic.partitions().getFirst().replicas().size();
+        var plan = plan(topic, brokerIds, replicationFactor, round);
+        if (plan.isEmpty()) {
+            round++;
+            plan = plan(topic, brokerIds, replicationFactor, round);
+            Log.infof("Replica placement round %d reached, advancing to round %d", round - 1, round);
+        }
+        var reassignments = new LinkedHashMap<TopicPartition, Optional<NewPartitionReassignment>>();
+        for (var entry : plan.entrySet()) {
+            if (reassignments.size() >= Math.max(1, config.placement().maxReassignmentsPerRotation())) {
+                break;
+            }
+            reassignments.put(entry.getKey(), Optional.of(new NewPartitionReassignment(entry.getValue())));
+        }
+        if (reassignments.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Log.infof("Rotating replicas: %s", plan.entrySet().stream()
+                .filter(e -> reassignments.containsKey(e.getKey())).toList());
+        return adminCalls.call("alterPartitionReassignments", adminClient.alterPartitionReassignments(reassignments).all());
+    }
+}
@@ -0,0 +1,15 @@
+package io.spoud.kafka;
+
+import io.micrometer.core.instrument.Tags;
+
+import java.util.Map;
+
+/**
+ * A stream of probes that is sent with producer settings that differ from the default producer.
+ *
+ * @param name           unique name of the variant, sent along with each probe in the {@link MessageProducer#HEADER_VARIANT} header
+ * @param producerConfig producer properties that override the `kafka.*` configuration
+ * @param tags           tags that identify the variant on its meters
+ */
+public record ProbeVariant(String name, Map<String, Object> producerConfig, Tags tags) {
+}
@@ -0,0 +1,108 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import io.spoud.LoadTestService;
+import io.spoud.TimeService;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads all partitions of the probe topic, including the ones added later, with a consumer that has `client.rack` set
+ * to a broker rack, so that the brokers let it fetch from the replica in that rack instead of the leader (KIP-392).
+ * The replica that served each record is taken from the consumer's `preferred-read-replica` metric.
+ */
+public class ReplicaConsumer implements Runnable, AutoCloseable {
+    static final String PREFERRED_READ_REPLICA_METRIC = "preferred-read-replica";
+    private static final Duration IDLE_SLEEP = Duration.ofSeconds(1);
+
+    @FunctionalInterface
+    public interface LatencyListener {
+        /**
+         * @param replica ID of the broker that served the record or -1 if it was served by the leader
+         */
+        void recordLatency(int partition, int replica, long latencyMs);
+    }
+
+    private final String rack;
+    private final String topic;
+    private final KafkaConsumer<Long, byte[]> consumer;
+    private final TopicAssignment assignment;
+    private final TimeService timeService;
+    private final LatencyListener listener;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public ReplicaConsumer(String rack, String topic, KafkaConsumer<Long, byte[]> consumer, TimeService timeService,
+                           LatencyListener listener) {
+        this.rack = rack;
+        this.topic = topic;
+        this.consumer = consumer;
+        this.assignment = new TopicAssignment(consumer, topic, "consumer of the replicas in rack " + rack);
+        this.timeService = timeService;
+        this.listener = listener;
+    }
+
+    public String getRack() {
+        return rack;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running.get()) {
+                if (!assignment.update()) {
+                    Thread.sleep(IDLE_SLEEP.toMillis());
+                    continue;
+                }
+                var records = consumer.poll(Duration.ofSeconds(1));
+                if (records.isEmpty()) {
+                    continue;
+                }
+                var consumeTime = timeService.currentTimeMillis();
+                var replicas = getPreferredReadReplicas();
+                for (var record : records) {
+                    if (record.headers().lastHeader(LoadTestService.HEADER_LOAD_STEP) != null
+                            || record.headers().lastHeader(MessageProducer.HEADER_VARIANT) != null
+                            || record.headers().lastHeader(MessageProducer.HEADER_WARM_UP) != null) {
+                        continue;
+                    }
+                    listener.recordLatency(record.partition(), replicas.getOrDefault(record.partition(), -1),
+                            consumeTime - record.timestamp());
+                }
+            }
+        } catch (WakeupException | InterruptedException e) {
+            // shutting down
+        } catch (Exception e) {
+            Log.errorf(e, "Error while consuming from replicas in rack %s", rack);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    /**
+     * @return ID of the replica that the consumer currently fetches each partition from, -1 for the leader
+     */
+    private Map<Integer, Integer> getPreferredReadReplicas() {
+        var replicas = new HashMap<Integer, Integer>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+            var name = entry.getKey();
+            if (name.name().equals(PREFERRED_READ_REPLICA_METRIC) && topic.equals(name.tags().get("topic"))
+                    && entry.getValue().metricValue() instanceof Number replica) {
+                replicas.put(Integer.parseInt(name.tags().get("partition")), replica.intValue());
+            }
+        }
+        return replicas;
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        consumer.wakeup();
+    }
+}
@@ -0,0 +1,84 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps a consumer assigned to all partitions of a topic without joining a consumer group. The partitions are checked
+ * periodically, so that partitions added later, e.g. by {@link PartitionRebalancer} or {@link PlacementPlanner}, are
+ * consumed too. Newly assigned partitions start at their end, so that no old records are consumed.
+ * <p>
+ * Not thread-safe, must be used by the thread that polls the consumer.
+ */
+class TopicAssignment {
+    static final Duration UPDATE_INTERVAL = Duration.ofSeconds(30);
+    static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
+    private final Consumer<?, ?> consumer;
+    private final String topic;
+    private final String consumerName;
+    private long nextUpdateNanos = System.nanoTime();
+
+    /**
+     * @param consumerName describes the consumer in log messages, e.g. "command consumer"
+     */
+    TopicAssignment(Consumer<?, ?> consumer, String topic, String consumerName) {
+        this.consumer = consumer;
+        this.topic = topic;
+        this.consumerName = consumerName;
+    }
+
+    /**
+     * Updates the assignment if it is due, more often while nothing is assigned yet, e.g. because the topic does not
+     * exist yet or the brokers are not reachable.
+     *
+     * @return true if partitions are assigned, i.e. the consumer can be polled
+     */
+    boolean update() {
+        if (System.nanoTime() - nextUpdateNanos >= 0) {
+            refresh();
+            var assigned = !consumer.assignment().isEmpty();
+            nextUpdateNanos = System.nanoTime() + (assigned ? UPDATE_INTERVAL : RETRY_INTERVAL).toNanos();
+            return assigned;
+        }
+        return !consumer.assignment().isEmpty();
+    }
+
+    private void refresh() {
+        List<PartitionInfo> infos;
+        try {
+            infos = consumer.partitionsFor(topic);
+        } catch (WakeupException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.warnf("Failed to get the partitions of topic %s for the %s, keeping the current assignment: %s",
+                    topic, consumerName, e.getMessage());
+            return;
+        }
+        if (infos == null || infos.isEmpty()) {
+            if (consumer.assignment().isEmpty()) {
+                Log.infof("Topic %s does not exist (yet), the %s will retry in %s", topic, consumerName, RETRY_INTERVAL);
+            }
+            return;
+        }
+        var partitions = infos.stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .sorted(Comparator.comparingInt(TopicPartition::partition))
+                .toList();
+        var previous = consumer.assignment();
+        if (previous.equals(Set.copyOf(partitions))) {
+            return;
+        }
+        Log.infov("Assigning partitions [{0}] {1} to the {2}", partitions.size(), partitions, consumerName);
+        consumer.assign(partitions);
+        consumer.seekToEnd(MessageConsumer.newlyAssigned(partitions, previous));
+    }
+}
@@ -0,0 +1,89 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Snapshot of the leaders and replicas of the probe topic's partitions and of the racks of the brokers.
+ *
+ * @param leaderByPartition   ID of the leader of each partition, partitions without leader are missing
+ * @param replicasByPartition IDs of the replicas of each partition, leader first
+ * @param rackByBroker        rack of each broker, "unknown" if the broker has no rack configured
+ */
+record Topology(Map<Integer, Integer> leaderByPartition,
+                Map<Integer, List<Integer>> replicasByPartition,
+                Map<Integer, String> rackByBroker) {
+    static final Topology EMPTY = new Topology(Map.of(), Map.of(), Map.of());
+
+    static Topology of(TopicDescription topic, Collection<Node> nodes) {
+        var leaders = new HashMap<Integer, Integer>();
+        var replicas = new HashMap<Integer, List<Integer>>();
+        for (var partition : topic.partitions()) {
+            var partitionReplicas = new ArrayList<Integer>();
+            if (partition.leader() != null) {
+                leaders.put(partition.partition(), partition.leader().id());
+                partitionReplicas.add(partition.leader().id());
+            }
+            partition.replicas().stream()
+                    .map(Node::id)
+                    .filter(id -> !partitionReplicas.contains(id))
+                    .forEach(partitionReplicas::add);
+            replicas.put(partition.partition(), List.copyOf(partitionReplicas));
+        }
+        var racks = new HashMap<Integer, String>();
+        for (var node : nodes) {
+            racks.put(node.id(), node.rack() != null ? node.rack() : "unknown");
+        }
+        return new Topology(Map.copyOf(leaders), Map.copyOf(replicas), Map.copyOf(racks));
+    }
+
+    /**
+     * @return the changes from the given previous topology to this one
+     */
+    Diff diff(Topology previous) {
+        var leaderChanged = new HashSet<Integer>();
+        var replicasChanged = new HashSet<Integer>();
+        var partitions = new HashSet<>(replicasByPartition.keySet());
+        partitions.addAll(previous.replicasByPartition.keySet());
+        for (var partition : partitions) {
+            if (!Objects.equals(leaderByPartition.get(partition), previous.leaderByPartition.get(partition))) {
+                leaderChanged.add(partition);
+            }
+            if (!Objects.equals(replicasByPartition.get(partition), previous.replicasByPartition.get(partition))) {
+                replicasChanged.add(partition);
+            }
+        }
+        var brokersChanged = new HashSet<Integer>();
+        var brokers = new HashSet<>(rackByBroker.keySet());
+        brokers.addAll(previous.rackByBroker.keySet());
+        for (var broker : brokers) {
+            if (!Objects.equals(rackByBroker.get(broker), previous.rackByBroker.get(broker))) {
+                brokersChanged.add(broker);
+            }
+        }
+        return new Diff(leaderChanged, replicasChanged, brokersChanged,
+                replicasByPartition.size() - previous.replicasByPartition.size());
+    }
+
+    /**
+     * @param leaderChanged        partitions whose leader changed (including new and removed partitions)
+     * @param replicasChanged      partitions whose replicas changed (including new and removed partitions)
+     * @param brokersChanged       brokers that were added, removed or whose rack changed
+     * @param partitionCountChange number of partitions that were added
+     */
+    record Diff(Set<Integer> leaderChanged, Set<Integer> replicasChanged, Set<Integer> brokersChanged,
+                int partitionCountChange) {
+        boolean isEmpty() {
+            return leaderChanged.isEmpty() && replicasChanged.isEmpty() && brokersChanged.isEmpty();
+        }
+    }
+}
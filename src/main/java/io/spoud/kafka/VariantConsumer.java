@@ -0,0 +1,83 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import io.spoud.TimeService;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads all partitions of the probe topic, including the ones added later, with a dedicated consumer, without joining
+ * a consumer group, and reports the end-to-end latencies of the probes of the given variant only, e.g. of the probes
+ * that were sent via the same additional listener, or that were sent transactionally and are read with
+ * `read_committed`.
+ */
+public class VariantConsumer implements Runnable, AutoCloseable {
+    private static final Duration IDLE_SLEEP = Duration.ofSeconds(1);
+
+    @FunctionalInterface
+    public interface LatencyListener {
+        void recordLatency(int partition, long latencyMs, String fromRack);
+    }
+
+    private final String topic;
+    private final String variantName;
+    private final byte[] variant;
+    private final KafkaConsumer<Long, byte[]> consumer;
+    private final TopicAssignment assignment;
+    private final TimeService timeService;
+    private final LatencyListener latencyListener;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public VariantConsumer(String topic, ProbeVariant variant, KafkaConsumer<Long, byte[]> consumer,
+                           TimeService timeService, LatencyListener latencyListener) {
+        this.topic = topic;
+        this.variantName = variant.name();
+        this.variant = variant.name().getBytes();
+        this.consumer = consumer;
+        this.assignment = new TopicAssignment(consumer, topic, "consumer of probe variant " + variant.name());
+        this.timeService = timeService;
+        this.latencyListener = latencyListener;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running.get()) {
+                if (!assignment.update()) {
+                    Thread.sleep(IDLE_SLEEP.toMillis());
+                    continue;
+                }
+                var records = consumer.poll(Duration.ofSeconds(1));
+                if (records.isEmpty()) {
+                    continue;
+                }
+                var consumeTime = timeService.currentTimeMillis();
+                for (var record : records) {
+                    var header = record.headers().lastHeader(MessageProducer.HEADER_VARIANT);
+                    if (header == null || !Arrays.equals(header.value(), variant)) {
+                        continue;
+                    }
+                    var rack = record.headers().lastHeader(MessageProducer.HEADER_RACK);
+                    latencyListener.recordLatency(record.partition(), consumeTime - record.timestamp(),
+                            rack != null ? new String(rack.value()) : "unknown");
+                }
+            }
+        } catch (WakeupException | InterruptedException e) {
+            // shutting down
+        } catch (Exception e) {
+            Log.errorf(e, "Error while consuming probe variant %s", variantName);
+        } finally {
+            consumer.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        running.set(false);
+        consumer.wakeup();
+    }
+}
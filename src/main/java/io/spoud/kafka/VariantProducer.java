@@ -0,0 +1,135 @@
+package io.spoud.kafka;
+
+import io.quarkus.logging.Log;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the probes of a single {@link ProbeVariant} with a dedicated producer. Besides the ack latency, it keeps track
+ * of the CPU time that is spent for sending: on the calling thread (serialization, appending to the batch) and on the
+ * I/O thread of the producer (compression of closed batches, network).
+ */
+public class VariantProducer implements AutoCloseable {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final ProbeVariant variant;
+    private final MessageProducer messageProducer;
+    private final KafkaProducer<Long, byte[]> producer;
+    private final String clientId;
+    private final byte[] variantHeader;
+    private final AtomicLong callerCpuNanos = new AtomicLong();
+    private volatile long ioThreadId = -1;
+
+    @FunctionalInterface
+    public interface AckListener {
+        /**
+         * @param metadata   metadata of the acknowledged record, may be null if sending failed
+         * @param exception  the error if sending failed, else null
+         * @param ackLatencyMs time between sending and the acknowledgement in milliseconds
+         */
+        void onAck(RecordMetadata metadata, Exception exception, double ackLatencyMs);
+    }
+
+    VariantProducer(ProbeVariant variant, MessageProducer messageProducer, KafkaProducer<Long, byte[]> producer, String clientId) {
+        this.variant = variant;
+        this.messageProducer = messageProducer;
+        this.producer = producer;
+        this.clientId = clientId;
+        this.variantHeader = variant.name().getBytes();
+    }
+
+    public ProbeVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Sends a probe of this variant.
+     *
+     * @param partition target partition or null to let the partitioner decide
+     */
+    public void send(Integer partition, Long key, byte[] payload, AckListener listener) {
+        var record = messageProducer.newRecord(partition, key, payload);
+        record.headers().add(MessageProducer.HEADER_VARIANT, variantHeader);
+        var cpuBefore = THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        var sendNanos = System.nanoTime();
+        try {
+            producer.send(record, (metadata, exception) ->
+                    listener.onAck(metadata, exception, (System.nanoTime() - sendNanos) / 1_000_000.0));
+        } finally {
+            callerCpuNanos.addAndGet(THREAD_MX_BEAN.getCurrentThreadCpuTime() - cpuBefore);
+        }
+    }
+
+    /**
+     * Initializes the transactions of the producer, see {@link KafkaProducer#initTransactions()}. Only for variants
+     * with a `transactional.id`, as are the other transaction methods.
+     */
+    public void initTransactions() {
+        producer.initTransactions();
+    }
+
+    public void beginTransaction() {
+        producer.beginTransaction();
+    }
+
+    /**
+     * Blocks until all probes sent so far are acknowledged.
+     */
+    public void flush() {
+        producer.flush();
+    }
+
+    public void commitTransaction() {
+        producer.commitTransaction();
+    }
+
+    public void abortTransaction() {
+        producer.abortTransaction();
+    }
+
+    /**
+     * @return CPU time in nanoseconds spent by the sending threads and the I/O thread of the producer
+     */
+    public long getCpuTimeNanos() {
+        return callerCpuNanos.get() + Math.max(0, getIoThreadCpuTimeNanos());
+    }
+
+    private long getIoThreadCpuTimeNanos() {
+        if (ioThreadId < 0) {
+            var ioThreadName = "kafka-producer-network-thread | " + clientId;
+            Thread.getAllStackTraces().keySet().stream()
+                    .filter(t -> t.getName().equals(ioThreadName))
+                    .findFirst()
+                    .ifPresent(t -> ioThreadId = t.threadId());
+        }
+        return ioThreadId < 0 ? -1 : THREAD_MX_BEAN.getThreadCpuTime(ioThreadId);
+    }
+
+    /**
+     * @return average ratio of compressed to uncompressed batch size as reported by the producer, NaN if not known yet
+     */
+    public double getCompressionRatio() {
+        return producer.metrics().entrySet().stream()
+                .filter(e -> e.getKey().name().equals("compression-rate-avg") && e.getKey().group().equals("producer-metrics"))
+                .map(e -> e.getValue().metricValue())
+                .filter(Number.class::isInstance)
+                .mapToDouble(v -> ((Number) v).doubleValue())
+                .findFirst()
+                .orElse(Double.NaN);
+    }
+
+    @Override
+    public void close() {
+        try {
+            producer.close(Duration.ofSeconds(5));
+        } catch (Exception e) {
+            Log.warnf(e, "Failed to close producer of variant %s", variant.name());
+        }
+    }
+
+}
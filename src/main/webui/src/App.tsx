@@ -17,8 +17,10 @@ import { AppShell } from "./components/AppShell";
 import { MessagePathsDashboard } from "./components/MessagePathsDashboard";
 import { E2ELatencyDashboard } from "./components/E2ELatencyDashboard";
 import { AckLatencyDashboard } from "./components/AckLatencyDashboard";
+import { BrokerMatrixDashboard } from "./components/BrokerMatrixDashboard";
 import { loadMessagePaths } from "./loaders/messagePathsLoader";
 import { loadE2ELatencies, loadAckLatencies } from "./loaders/latencyLoaders";
+import { loadBrokerMatrix } from "./loaders/brokerMatrixLoader";
 import { withBaseURI } from "./utils/baseUtil.ts";
 import { attachListenersToContext } from "./loaders/rackUrls.ts";
 
@@ -79,6 +81,11 @@ let router = createBrowserRouter([
         element: <AckLatencyDashboard />,
         loader: (params) => loadAckLatencies(params),
       },
+      {
+        path: "broker-matrix",
+        element: <BrokerMatrixDashboard />,
+        loader: loadBrokerMatrix,
+      },
     ],
   },
 ]);
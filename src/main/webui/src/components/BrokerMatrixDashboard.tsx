@@ -0,0 +1,114 @@
+import { useLoaderData, useSearchParams } from "react-router";
+import {
+  Alert,
+  SegmentedControl,
+  Stack,
+  Table,
+  Text,
+  Title,
+  Tooltip,
+  Group,
+} from "@mantine/core";
+import { IconAlertCircle } from "@tabler/icons-react";
+import { loadBrokerMatrix } from "../loaders/brokerMatrixLoader.ts";
+import { DateRangeSelector } from "./DateRangeSelector";
+
+// Maps a latency relative to the range of the matrix to a color from green (fastest) to red (slowest)
+function heatColor(latency: number, min: number, max: number): string {
+  const ratio = max > min ? (latency - min) / (max - min) : 0;
+  const hue = Math.round(120 * (1 - ratio));
+  return `hsl(${hue}, 70%, 45%)`;
+}
+
+export function BrokerMatrixDashboard() {
+  const { source, matrix, error } =
+    useLoaderData<Awaited<ReturnType<typeof loadBrokerMatrix>>>();
+  const [searchParams, setSearchParams] = useSearchParams();
+
+  const latencies = new Map(
+    matrix.pairs.map((p) => [`${p.leader}->${p.follower}`, p]),
+  );
+  const values = matrix.pairs.map((p) => p.p99Latency);
+  const min = Math.min(...values);
+  const max = Math.max(...values);
+
+  return (
+    <Stack gap="lg">
+      <Group justify={"space-between"}>
+        <Title order={2}>Broker Matrix</Title>
+        <SegmentedControl
+          value={source}
+          onChange={(value) => {
+            searchParams.set("source", value);
+            setSearchParams(searchParams);
+          }}
+          data={[
+            { label: "Ack latency", value: "ack" },
+            { label: "Replica latency", value: "replica" },
+          ]}
+        />
+      </Group>
+      <Text size="lg" fw={500} c="dimmed">
+        Median p99 latency per leader (rows) and follower (columns)
+      </Text>
+
+      <DateRangeSelector />
+
+      {error && (
+        <Alert
+          icon={<IconAlertCircle size="1rem" />}
+          title="Failed to fetch the broker matrix"
+          color="red"
+        >
+          {error}
+        </Alert>
+      )}
+
+      {matrix.brokers.length === 0 ? (
+        <Text c="dimmed">No broker pair latencies recorded yet.</Text>
+      ) : (
+        <Table withTableBorder withColumnBorders>
+          <Table.Thead>
+            <Table.Tr>
+              <Table.Th>Leader \ Follower</Table.Th>
+              {matrix.brokers.map((follower) => (
+                <Table.Th key={follower}>{follower}</Table.Th>
+              ))}
+            </Table.Tr>
+          </Table.Thead>
+          <Table.Tbody>
+            {matrix.brokers.map((leader) => (
+              <Table.Tr key={leader}>
+                <Table.Th>{leader}</Table.Th>
+                {matrix.brokers.map((follower) => {
+                  const pair = latencies.get(`${leader}->${follower}`);
+                  if (!pair) {
+                    return <Table.Td key={follower} />;
+                  }
+                  return (
+                    <Tooltip
+                      key={follower}
+                      label={`${pair.samples} snapshots`}
+                      withArrow
+                    >
+                      <Table.Td
+                        aria-label={`Latency from broker ${leader} to broker ${follower}`}
+                        style={{
+                          backgroundColor: heatColor(pair.p99Latency, min, max),
+                          color: "white",
+                          textAlign: "center",
+                        }}
+                      >
+                        {Math.round(pair.p99Latency)} ms
+                      </Table.Td>
+                    </Tooltip>
+                  );
+                })}
+              </Table.Tr>
+            ))}
+          </Table.Tbody>
+        </Table>
+      )}
+    </Stack>
+  );
+}
@@ -233,6 +233,13 @@ export function MessagePathsDashboard() {
         </div>
       )}
 
+      <Link
+        to={withBaseURI("/broker-matrix")}
+        style={{ fontSize: "var(--mantine-font-size-sm)" }}
+      >
+        Latencies between brokers
+      </Link>
+
       {messagePaths.length > 0 && lastUpdated && (
         <Text size="xs" c="dimmed" style={{ textAlign: "left" }}>
           Last updated at: {dayjs(lastUpdated).format("YYYY-MM-DD HH:mm:ss")}
@@ -0,0 +1,37 @@
+// Loader for the broker x broker latency heatmap
+import type { LoaderFunctionArgs } from "react-router";
+import { withBaseURI } from "../utils/baseUtil.ts";
+import type { BrokerMatrix } from "../types.ts";
+
+export type BrokerMatrixSource = "ack" | "replica";
+
+export async function loadBrokerMatrix({ request }: LoaderFunctionArgs) {
+  const url = new URL(request.url);
+  const source: BrokerMatrixSource =
+    url.searchParams.get("source") === "replica" ? "replica" : "ack";
+  const query = new URLSearchParams({ source });
+  const intervalStart = url.searchParams.get("interval_start");
+  const intervalEnd = url.searchParams.get("interval_end");
+  if (intervalStart) {
+    query.set("interval_start", intervalStart);
+  }
+  if (intervalEnd) {
+    query.set("interval_end", intervalEnd);
+  }
+  try {
+    const response = await fetch(
+      withBaseURI(`/history/broker-matrix?${query.toString()}`),
+    );
+    if (!response.ok) {
+      throw new Error(`HTTP error! status: ${response.status}`);
+    }
+    return { source, matrix: (await response.json()) as BrokerMatrix };
+  } catch (error) {
+    console.error("Failed to fetch broker matrix:", error);
+    return {
+      source,
+      matrix: { brokers: [], pairs: [] } as BrokerMatrix,
+      error: error instanceof Error ? error.message : "Unknown error",
+    };
+  }
+}
@@ -1,9 +1,6 @@
 // Shared loader for message paths data
 import { withBaseURI } from "../utils/baseUtil.ts";
-import type { MessagePath } from "../types.ts";
-import { rackUrlContext } from "./rackUrls.ts";
-import type { LoaderFunctionArgs } from "react-router";
-import { joinUrl } from "../utils/baseUtil.ts";
+import type { GlobalTopology, MessagePath } from "../types.ts";
 
 type MessagePathsLoaderData = {
   fetchFailures: string[];
@@ -11,78 +8,45 @@ type MessagePathsLoaderData = {
   lastUpdated: string;
 };
 
-const loadMessagePathsFromEndpoint = async (
-  rackUrl: string,
-  suffix: string,
-): Promise<MessagePathsLoaderData> => {
+// The instance combines the topologies of all racks, so a single request is enough. It is revalidated via its ETag.
+const suffix = "/history/global/topology";
+
+export async function loadMessagePaths(): Promise<MessagePathsLoaderData> {
   try {
-    const response = await fetch(withBaseURI(rackUrl));
+    const response = await fetch(withBaseURI(suffix), { cache: "no-cache" });
     if (!response.ok) {
-      const failure = `Failed to fetch data from ${rackUrl}: server responded with status ${response.statusText}`;
       return {
         messagePaths: [],
-        fetchFailures: [failure],
+        fetchFailures: [
+          `Failed to fetch data from ${suffix}: server responded with status ${response.statusText}`,
+        ],
         lastUpdated: new Date().toISOString(),
       };
     }
-    const data = ((await response.json()) as MessagePath[]).map((mp) => {
-      mp.queryUrl = rackUrl.replace(suffix, "");
-      return mp;
-    });
+    const topology = (await response.json()) as GlobalTopology;
     return {
-      messagePaths: data,
-      fetchFailures: [],
+      // paths are sorted by the server
+      messagePaths: topology.paths
+        .filter((path) => path.p99Latency != null)
+        .map(
+          (path): MessagePath => ({
+            fromRack: path.fromRack,
+            toRack: path.toRack,
+            viaBrokerRack: path.viaBrokerRack,
+            latestP99latency: path.p99Latency ?? 0,
+            latestP99AckLatency: path.p99AckLatency ?? undefined,
+          }),
+        ),
+      fetchFailures: Object.entries(topology.failures).map(
+        ([rack, failure]) => `Failed to fetch data of rack ${rack}: ${failure}`,
+      ),
       lastUpdated: new Date().toISOString(),
     };
   } catch (error) {
-    const failure = `Failed to fetch data from ${rackUrl}: ${error}`;
     return {
       messagePaths: [],
-      fetchFailures: [failure],
+      fetchFailures: [`Failed to fetch data from ${suffix}: ${error}`],
       lastUpdated: new Date().toISOString(),
     };
   }
-};
-
-function pathToSortKey(p: MessagePath): string {
-  return `${p.fromRack}->${p.viaBrokerRack}->${p.toRack}`;
-}
-
-export async function loadMessagePaths({
-  context,
-}: LoaderFunctionArgs): Promise<MessagePathsLoaderData> {
-  const rackCtx = context.get(rackUrlContext);
-  if (rackCtx?.error) {
-    return {
-      messagePaths: [],
-      fetchFailures: [rackCtx.error],
-      lastUpdated: new Date().toISOString(),
-    };
-  }
-  const listenersData = rackCtx?.rackUrls ?? {};
-  const suffix = "/history/message-paths";
-  const rackUrls = [
-    ...new Set(
-      Object.values(listenersData).map((url) => joinUrl(url as string, suffix)),
-    ),
-  ];
-  rackUrls.push(suffix);
-  const messagePaths: MessagePath[] = [];
-  const fetchFailures: string[] = [];
-  (
-    await Promise.all(
-      rackUrls.map((url) => loadMessagePathsFromEndpoint(url, suffix)),
-    )
-  ).forEach((loaderData) => {
-    messagePaths.push(...loaderData.messagePaths);
-    fetchFailures.push(...loaderData.fetchFailures);
-  });
-
-  return {
-    fetchFailures,
-    messagePaths: messagePaths.sort((a, b) =>
-      pathToSortKey(a).localeCompare(pathToSortKey(b)),
-    ),
-    lastUpdated: new Date().toISOString(),
-  };
 }
@@ -9,6 +9,27 @@ export interface MessagePath {
   latestP99AckLatency?: number;
 }
 
+export interface TopologyPath {
+  fromRack: string;
+  viaBrokerRack: string;
+  toRack: string;
+  p50Latency: number | null;
+  p99Latency: number | null;
+  p50AckLatency: number | null;
+  p99AckLatency: number | null;
+}
+
+export interface RackTopology {
+  rack: string;
+  paths: TopologyPath[];
+}
+
+export interface GlobalTopology {
+  racks: Record<string, RackTopology>;
+  paths: TopologyPath[];
+  failures: Record<string, string>;
+}
+
 export interface LatencySummary {
   timestamps: number[];
   percentiles: Record<string, number[]>;
@@ -27,3 +48,15 @@ export interface ApiError {
   message: string;
   status?: number;
 }
+
+export interface BrokerPairLatency {
+  leader: string;
+  follower: string;
+  p99Latency: number;
+  samples: number;
+}
+
+export interface BrokerMatrix {
+  brokers: string[];
+  pairs: BrokerPairLatency[];
+}
@@ -1,14 +1,20 @@
 import { expect, test, type Page } from "@playwright/test";
 
-const messagePaths = [
-  {
-    fromRack: "dc1",
-    viaBrokerRack: "broker-a",
-    toRack: "dc2",
-    latestP99latency: 42,
-    latestP99AckLatency: 12,
-  },
-];
+const path = {
+  fromRack: "dc1",
+  viaBrokerRack: "broker-a",
+  toRack: "dc2",
+  p50Latency: 20,
+  p99Latency: 42,
+  p50AckLatency: 5,
+  p99AckLatency: 12,
+};
+
+const globalTopology = {
+  racks: { dc2: { rack: "dc2", paths: [path] } },
+  paths: [path],
+  failures: {},
+};
 
 const latencySummary = {
   timestamps: [
@@ -24,13 +30,21 @@ const latencySummary = {
   },
 };
 
+const brokerMatrix = {
+  brokers: ["1", "2"],
+  pairs: [
+    { leader: "1", follower: "2", p99Latency: 7, samples: 4 },
+    { leader: "2", follower: "1", p99Latency: 21, samples: 4 },
+  ],
+};
+
 async function mockApi(page: Page) {
   await page.route("**/history/other-racks**", async (route) => {
     await route.fulfill({ json: {} });
   });
 
-  await page.route("**/history/message-paths**", async (route) => {
-    await route.fulfill({ json: messagePaths });
+  await page.route("**/history/global/topology**", async (route) => {
+    await route.fulfill({ json: globalTopology, headers: { ETag: '"1a2b"' } });
   });
 
   await page.route("**/history/e2e-latencies/**", async (route) => {
@@ -40,6 +54,10 @@ async function mockApi(page: Page) {
   await page.route("**/history/ack-latencies/**", async (route) => {
     await route.fulfill({ json: latencySummary });
   });
+
+  await page.route("**/history/broker-matrix**", async (route) => {
+    await route.fulfill({ json: brokerMatrix });
+  });
 }
 
 test.beforeEach(async ({ page }) => {
@@ -96,3 +114,16 @@ test("renders the ack latency detail page directly", async ({ page }) => {
   await expect(page.getByText("Percentiles")).toBeVisible();
   await expect(page.getByText("Log Scale")).toBeVisible();
 });
+
+test("renders the broker matrix heatmap", async ({ page }) => {
+  await page.goto("/");
+  await page.getByRole("link", { name: "Latencies between brokers" }).click();
+
+  await expect(page).toHaveURL("/broker-matrix");
+  await expect(
+    page.getByRole("heading", { name: "Broker Matrix" }),
+  ).toBeVisible();
+  await expect(
+    page.getByLabel("Latency from broker 2 to broker 1"),
+  ).toHaveText("21 ms");
+});
@@ -0,0 +1,55 @@
+package io.spoud;
+
+import io.spoud.CommandService.CommandEnvelope;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommandCodecTest {
+
+    @Test
+    @DisplayName("Commands survive an encode/decode round trip")
+    void roundTrip() {
+        var now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        var commands = new CommandService.Command[]{
+                new CommandService.SetRateCommand(42),
+                new CommandService.AdjustPayloadSizeCommand(1024),
+                new CommandService.PauseCommand(),
+                new CommandService.ResumeCommand(),
+                new CommandService.StartLoadStepCommand(1000, 512, Duration.ofSeconds(30)),
+                new CommandService.SnapshotNowCommand()
+        };
+        for (var command : commands) {
+            var envelope = new CommandEnvelope(UUID.randomUUID(), now, Set.of("dc1", "dc2"), command);
+            assertThat(CommandCodec.decode(CommandCodec.encode(envelope))).isEqualTo(envelope);
+        }
+    }
+
+    @Test
+    @DisplayName("Envelope without target racks targets every rack")
+    void targetsAllRacks() {
+        var envelope = new CommandEnvelope(UUID.randomUUID(), Instant.now(), Set.of(), new CommandService.PauseCommand());
+        assertThat(CommandCodec.decode(CommandCodec.encode(envelope)).targets("any")).isTrue();
+        var targeted = new CommandEnvelope(UUID.randomUUID(), Instant.now(), Set.of("dc1"), new CommandService.PauseCommand());
+        assertThat(targeted.targets("dc1")).isTrue();
+        assertThat(targeted.targets("dc2")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Arbitrary bytes are rejected")
+    void rejectsGarbage() {
+        assertThatThrownBy(() -> CommandCodec.decode("{\"adjustPayloadSize\":{}}".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CommandCodec.decode(new byte[]{'S', 1, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,37 @@
+package io.spoud;
+
+import io.spoud.EchoService.Probe;
+import io.spoud.EchoService.Reply;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EchoServiceTest {
+
+    @Test
+    @DisplayName("Echo probes and replies survive an encode/decode round trip")
+    void roundTrip() {
+        var probe = new Probe(42L, "dc1", 123_456_789L, 1_700_000_000_000_000L);
+        var reply = new Reply(probe, -7L, "dc2", 1_700_000_000_005_000L);
+        assertThat(EchoService.decode(EchoService.encode(probe))).isEqualTo(probe);
+        assertThat(EchoService.decode(EchoService.encode(reply))).isEqualTo(reply);
+        assertThatThrownBy(() -> EchoService.decode(new byte[]{'S', 1, 1}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Round trip is measured with the local clock and the peer's clock offset is derived from the asymmetry")
+    void measure() {
+        // 4ms there, 6ms back, and the peer's clock is 100ms ahead
+        var sentNanos = 1_000_000_000L;
+        var sentMicros = 1_700_000_000_000_000L;
+        var probe = new Probe(1L, "dc1", sentNanos, sentMicros);
+        var reply = new Reply(probe, 2L, "dc2", sentMicros + 4_000 + 100_000);
+        var measurement = EchoService.measure(reply, sentNanos + 10_000_000L, sentMicros + 10_000);
+        assertThat(measurement.roundTripNanos()).isEqualTo(10_000_000L);
+        // the asymmetry of the two directions shows up as an error of half their difference
+        assertThat(measurement.peerOffsetNanos()).isEqualTo(99_000_000L);
+    }
+}
@@ -0,0 +1,131 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.spoud.config.SynthClientConfigIncidents;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncidentAnalyserTest {
+    private static final long THRESHOLD_MS = 100;
+    private static final long MAX_DURATION_MS = 60_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final IncidentAnalyser analyser = new IncidentAnalyser(new SynthClientConfigIncidents() {
+        @Override
+        public boolean enabled() {
+            return true;
+        }
+
+        @Override
+        public Duration latencyThreshold() {
+            return Duration.ofMillis(THRESHOLD_MS);
+        }
+
+        @Override
+        public Duration maxDuration() {
+            return Duration.ofMillis(MAX_DURATION_MS);
+        }
+    }, "rack0", now::get, new SimpleMeterRegistry());
+
+    @Test
+    @DisplayName("A send failure opens an incident that the first healthy probe sent afterwards closes")
+    void sendFailure() {
+        analyser.onSendFailure(3, "1");
+        analyser.onAck(3, 250.0);
+        now.addAndGet(500);
+        analyser.onSendFailure(3, "1");
+        var lastProblemMs = now.get();
+
+        // sent before the last problem, so the partition may not have recovered yet
+        analyser.onProbeConsumed(3, lastProblemMs - 10, 20, "1");
+        assertThat(analyser.drainClosedIncidents()).isEmpty();
+
+        analyser.onProbeConsumed(3, lastProblemMs + 10, 20, "2");
+        assertThat(analyser.drainClosedIncidents()).containsExactly(new IncidentAnalyser.Incident(3, "1", "2",
+                Instant.ofEpochMilli(lastProblemMs - 500), Instant.ofEpochMilli(lastProblemMs + 30), 530, 250.0,
+                2, 0, List.of(IncidentAnalyser.CAUSE_SEND_ERROR), true));
+    }
+
+    @Test
+    @DisplayName("A leader change opens an incident that records the old and the new leader")
+    void leaderChange() {
+        var startedMs = now.get();
+        analyser.onLeaderChange(1, 1, null);
+        now.addAndGet(200);
+        analyser.onLeaderChange(1, null, 2);
+        analyser.onProbeConsumed(1, now.get() + 1, 5, "2");
+
+        var incident = analyser.drainClosedIncidents().getFirst();
+        assertThat(incident.leaderBefore()).isEqualTo("1");
+        assertThat(incident.leaderAfter()).isEqualTo("2");
+        assertThat(incident.started()).isEqualTo(Instant.ofEpochMilli(startedMs));
+        assertThat(incident.causes()).containsExactly(IncidentAnalyser.CAUSE_LEADER_CHANGE);
+    }
+
+    @Test
+    @DisplayName("A delayed probe opens an incident that starts when the probe was sent")
+    void delayedProbe() {
+        var sentMs = now.get() - 400;
+        analyser.onProbeConsumed(0, sentMs, 400, "1");
+        analyser.onProbeConsumed(0, now.get() + 10, THRESHOLD_MS, "1");
+
+        var incident = analyser.drainClosedIncidents().getFirst();
+        assertThat(incident.started()).isEqualTo(Instant.ofEpochMilli(sentMs));
+        assertThat(incident.unavailableMs()).isEqualTo(400 + 10 + THRESHOLD_MS);
+        assertThat(incident.maxLatencyMs()).isEqualTo(400.0);
+        assertThat(incident.probesDelayed()).isEqualTo(1);
+        assertThat(incident.causes()).containsExactly(IncidentAnalyser.CAUSE_DELAYED_PROBE);
+    }
+
+    @Test
+    @DisplayName("Healthy probes do not open incidents")
+    void steadyState() {
+        analyser.onAck(0, 5.0);
+        analyser.onProbeConsumed(0, now.get(), THRESHOLD_MS, "1");
+        analyser.closeStaleIncidents();
+
+        assertThat(analyser.drainClosedIncidents()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Incidents without a healthy probe within the maximum duration are closed as unresolved")
+    void staleIncident() {
+        analyser.onSendFailure(2, "1");
+        var lastProblemMs = now.get();
+        now.addAndGet(MAX_DURATION_MS);
+        analyser.closeStaleIncidents();
+        assertThat(analyser.drainClosedIncidents()).isEmpty();
+
+        now.addAndGet(1);
+        analyser.closeStaleIncidents();
+        var incident = analyser.drainClosedIncidents().getFirst();
+        assertThat(incident.resolved()).isFalse();
+        assertThat(incident.ended()).isEqualTo(Instant.ofEpochMilli(lastProblemMs));
+
+        // a probe that arrives later does not close anything anymore
+        analyser.onProbeConsumed(2, now.get(), 5, "1");
+        assertThat(analyser.drainClosedIncidents()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Only the most recent closed incidents are kept until they are drained")
+    void maxPendingIncidents() {
+        var incidents = IncidentAnalyser.MAX_PENDING_INCIDENTS + 10;
+        for (int partition = 0; partition < incidents; partition++) {
+            analyser.onSendFailure(partition, "1");
+            analyser.onProbeConsumed(partition, now.get() + 1, 5, "1");
+        }
+
+        var drained = analyser.drainClosedIncidents();
+        assertThat(drained).hasSize(IncidentAnalyser.MAX_PENDING_INCIDENTS);
+        assertThat(drained.getFirst().partition()).isEqualTo(10);
+        assertThat(drained.getLast().partition()).isEqualTo(incidents - 1);
+    }
+}
@@ -15,6 +15,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
@@ -166,7 +169,8 @@ public class KafkaSynthClientTest {
     public void testCommandReconfiguresPayloadSize() {
         kafkaSynthClient.setPayloadSize(8);
         assertThat(kafkaSynthClient.getPayloadSize()).isEqualTo(8);
-        commandService.maybeHandleCommand("{\"adjustPayloadSize\":{\"newSize\":10}}");
+        commandService.maybeHandleCommand(CommandCodec.encode(new CommandService.CommandEnvelope(UUID.randomUUID(),
+                Instant.now(), Set.of(), new CommandService.AdjustPayloadSizeCommand(10))));
         assertThat(kafkaSynthClient.getPayloadSize()).isEqualTo(10);
     }
 
@@ -0,0 +1,79 @@
+package io.spoud;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadTestServiceTest {
+
+    @Test
+    @DisplayName("Percentiles are taken from the sorted samples")
+    void percentiles() {
+        var reservoir = new LoadTestService.LatencyReservoir(1000);
+        for (int i = 100; i >= 1; i--) {
+            reservoir.add(i);
+        }
+        var samples = reservoir.snapshot();
+
+        assertThat(samples).hasSize(100).isSorted();
+        assertThat(LoadTestService.percentile(samples, 0.5)).isEqualTo(50.0);
+        assertThat(LoadTestService.percentile(samples, 0.99)).isEqualTo(99.0);
+        assertThat(LoadTestService.percentile(samples, 1.0)).isEqualTo(100.0);
+        assertThat(LoadTestService.percentile(samples, 0.0)).isEqualTo(1.0);
+        assertThat(LoadTestService.percentile(new double[0], 0.99)).isNaN();
+    }
+
+    @Test
+    @DisplayName("The reservoir keeps a uniform sample once it is full")
+    void reservoirSampling() {
+        var reservoir = new LoadTestService.LatencyReservoir(1000);
+        for (int i = 0; i < 100_000; i++) {
+            reservoir.add(i % 100);
+        }
+        var samples = reservoir.snapshot();
+
+        assertThat(samples).hasSize(1000);
+        // the expected median is 49.5, a biased sample (e.g. only the first or the last values) would be far off
+        assertThat(LoadTestService.percentile(samples, 0.5)).isBetween(40.0, 60.0);
+        assertThat(LoadTestService.percentile(samples, 0.99)).isGreaterThanOrEqualTo(95.0);
+
+        reservoir.clear();
+        assertThat(reservoir.snapshot()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("The knee is the first step whose p99 exceeds the first step's p99 by more than the knee factor")
+    void knee() {
+        var detector = new LoadTestService.KneeDetector(2.0, false);
+
+        // a step without any messages sent is not the baseline
+        assertThat(detector.isKnee(0, 0, Double.NaN)).isFalse();
+        assertThat(detector.isKnee(1000, 0, 10.0)).isFalse();
+        assertThat(detector.isKnee(2000, 0, 20.0)).isFalse();
+        assertThat(detector.isKnee(4000, 0, 20.1)).isTrue();
+    }
+
+    @Test
+    @DisplayName("A step that fails to send more than 1% of its messages is the knee")
+    void kneeByFailures() {
+        var detector = new LoadTestService.KneeDetector(2.0, false);
+
+        assertThat(detector.isKnee(1000, 10, 10.0)).isFalse();
+        assertThat(detector.isKnee(1000, 11, 10.0)).isTrue();
+    }
+
+    @Test
+    @DisplayName("The load test only stops at the knee if configured to")
+    void stopAtKnee() {
+        assertThat(new LoadTestService.KneeDetector(2.0, true).shouldStop(result(true))).isTrue();
+        assertThat(new LoadTestService.KneeDetector(2.0, true).shouldStop(result(false))).isFalse();
+        assertThat(new LoadTestService.KneeDetector(2.0, false).shouldStop(result(true))).isFalse();
+    }
+
+    private static LoadTestService.StepResult result(boolean knee) {
+        return new LoadTestService.StepResult("run", 0, Instant.EPOCH, 1000, 100, 1000, 0, 5.0, 10.0, 2.0, 4.0, knee);
+    }
+}
@@ -0,0 +1,73 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.spoud.config.SynthClientConfigPauseDetection;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PauseDetectorTest {
+    private static final long MS = 1_000_000;
+
+    private final PauseDetector detector = new PauseDetector(new SynthClientConfigPauseDetection() {
+        @Override
+        public boolean enabled() {
+            return true;
+        }
+
+        @Override
+        public Duration resolution() {
+            return Duration.ofMillis(1);
+        }
+
+        @Override
+        public Duration threshold() {
+            return Duration.ofMillis(5);
+        }
+    }, "rack0", Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    @Test
+    @DisplayName("Windows overlap a pause if they share any point in time with it")
+    void overlapsPause() {
+        var base = System.nanoTime();
+        assertThat(detector.overlapsPause(base, base + 100 * MS)).isFalse();
+
+        detector.recordPause(base + 10 * MS, base + 20 * MS);
+
+        assertThat(detector.overlapsPause(base, base + 15 * MS)).isTrue();
+        assertThat(detector.overlapsPause(base + 12 * MS, base + 18 * MS)).isTrue();
+        assertThat(detector.overlapsPause(base + 15 * MS, base + 30 * MS)).isTrue();
+        assertThat(detector.overlapsPause(base, base + 30 * MS)).isTrue();
+        assertThat(detector.overlapsPause(base, base + 10 * MS)).isFalse();
+        assertThat(detector.overlapsPause(base + 20 * MS, base + 30 * MS)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Only the most recent pauses are kept")
+    void ringBuffer() {
+        var base = System.nanoTime();
+        detector.recordPause(base, base + MS);
+        for (int i = 1; i <= PauseDetector.HISTORY_SIZE; i++) {
+            detector.recordPause(base + i * 10 * MS, base + i * 10 * MS + MS);
+        }
+
+        // the first pause was overwritten by the last one
+        assertThat(detector.overlapsPause(base, base + MS / 2)).isFalse();
+        assertThat(detector.overlapsPause(base + 10 * MS, base + 10 * MS + MS / 2)).isTrue();
+        assertThat(detector.overlapsPause(base + PauseDetector.HISTORY_SIZE * 10 * MS, base + PauseDetector.HISTORY_SIZE * 10 * MS + MS / 2)).isTrue();
+    }
+
+    @Test
+    @DisplayName("A sample is affected by a pause that happened within its latency")
+    void pausedWithinLast() {
+        var now = System.nanoTime();
+        detector.recordPause(now - 2000 * MS, now - 1000 * MS);
+
+        assertThat(detector.pausedWithinLast(5000)).isTrue();
+        assertThat(detector.pausedWithinLast(1500)).isTrue();
+        assertThat(detector.pausedWithinLast(500)).isFalse();
+    }
+}
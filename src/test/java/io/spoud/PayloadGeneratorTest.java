@@ -0,0 +1,49 @@
+package io.spoud;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayloadGeneratorTest {
+
+    @Test
+    @DisplayName("Fixed payloads have the requested size and do not compress")
+    void fixedPayloadsAreIncompressible() throws IOException {
+        var generator = PayloadGenerator.fixed(10_000, 4, 0.0);
+        var payload = generator.next();
+        assertThat(payload).hasSize(10_000);
+        assertThat(generator.getBaseSize()).isEqualTo(10_000);
+        assertThat(gzip(payload).length).isGreaterThan(9_900);
+    }
+
+    @Test
+    @DisplayName("Compressible fraction makes payloads compressible")
+    void compressibleFraction() throws IOException {
+        var payload = PayloadGenerator.fixed(10_000, 1, 0.5).next();
+        assertThat(gzip(payload).length).isLessThan(6_000);
+    }
+
+    @Test
+    @DisplayName("Histogram buckets are represented according to their weights")
+    void histogram() {
+        var sizes = PayloadGenerator.sizesFromHistogram(List.of("100:3", "1000:1"), 8);
+        assertThat(sizes).containsExactly(100, 100, 100, 100, 100, 100, 1000, 1000);
+        assertThatThrownBy(() -> PayloadGenerator.sizesFromHistogram(List.of("100"), 8))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new GZIPOutputStream(bytes)) {
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+}
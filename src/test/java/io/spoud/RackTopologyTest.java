@@ -0,0 +1,73 @@
+package io.spoud;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RackTopologyTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Partitions of the same broker are merged and only paths from the own rack get the ack latency")
+    void topology() {
+        var e2e = List.of(
+                e2e("0", "1", "dc1", 10),
+                e2e("1", "1", "dc1", 40),
+                e2e("2", "1", "dc2", 20));
+        var ack = List.of(ack("0", "1", 5), ack("1", "1", 8));
+
+        var topology = RackTopology.of("dc1", e2e, ack);
+
+        assertThat(topology.rack()).isEqualTo("dc1");
+        assertThat(topology.paths()).extracting(RackTopology.Path::fromRack).containsExactly("dc1", "dc2");
+        var own = topology.paths().getFirst();
+        assertThat(own.viaBrokerRack()).isEqualTo("b1 (ID 1)");
+        assertThat(own.toRack()).isEqualTo("dc1");
+        // the slower partition of the broker wins
+        assertThat(own.p99Latency()).isCloseTo(40, Offset.offset(2.0));
+        assertThat(own.p99AckLatency()).isCloseTo(8, Offset.offset(0.5));
+        var other = topology.paths().get(1);
+        assertThat(other.p50Latency()).isCloseTo(20, Offset.offset(1.0));
+        assertThat(other.p50AckLatency()).isNull();
+        assertThat(other.p99AckLatency()).isNull();
+    }
+
+    @Test
+    @DisplayName("Equal topologies have equal hash codes, so that they get the same ETag")
+    void stableHashCode() {
+        var e2e = List.of(e2e("0", "1", "dc2", 12));
+        assertThat(RackTopology.of("dc1", e2e, List.of()).hashCode())
+                .isEqualTo(RackTopology.of("dc1", e2e, List.of()).hashCode());
+    }
+
+    private MetricService.WrappedDistributionSummary e2e(String partition, String broker, String fromRack, double latencyMs) {
+        return record(DistributionSummary.builder(MetricService.E2E_METER_NAME)
+                .tag(MetricService.TAG_PARTITION, partition)
+                .tag(MetricService.TAG_BROKER, broker)
+                .tag(MetricService.TAG_FROM_RACK, fromRack)
+                .tag(MetricService.TAG_TO_RACK, "dc1")
+                .tag(MetricService.TAG_BROKER_RACK, "b" + broker), broker, latencyMs);
+    }
+
+    private MetricService.WrappedDistributionSummary ack(String partition, String broker, double latencyMs) {
+        return record(DistributionSummary.builder(MetricService.ACK_METER_NAME)
+                .tag(MetricService.TAG_PARTITION, partition)
+                .tag(MetricService.TAG_BROKER, broker)
+                .tag(MetricService.TAG_RACK, "dc1")
+                .tag(MetricService.TAG_BROKER_RACK, "b" + broker), broker, latencyMs);
+    }
+
+    private MetricService.WrappedDistributionSummary record(DistributionSummary.Builder builder, String broker, double latencyMs) {
+        var summary = builder.publishPercentiles(0.5, 0.99).register(registry);
+        for (int i = 0; i < 100; i++) {
+            summary.record(latencyMs);
+        }
+        return new MetricService.WrappedDistributionSummary(summary, null, broker);
+    }
+}
@@ -3,11 +3,35 @@ package io.spoud;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.quarkus.logging.Log;
 import io.spoud.config.SynthClientConfig;
+import io.spoud.config.SynthClientConfigAcksComparison;
+import io.spoud.config.SynthClientConfigClock;
+import io.spoud.config.SynthClientConfigCodecMatrix;
+import io.spoud.config.SynthClientConfigCommands;
+import io.spoud.config.SynthClientConfigConnectionProbes;
+import io.spoud.config.SynthClientConfigEcho;
+import io.spoud.config.SynthClientConfigFederation;
+import io.spoud.config.SynthClientConfigGroupProbes;
+import io.spoud.config.SynthClientConfigIncidents;
+import io.spoud.config.SynthClientConfigJfr;
+import io.spoud.config.SynthClientConfigLeaderChangeDetection;
+import io.spoud.config.SynthClientConfigListenerProbes;
+import io.spoud.config.SynthClientConfigLoadTest;
 import io.spoud.config.SynthClientConfigMessages;
+import io.spoud.config.SynthClientConfigPauseDetection;
+import io.spoud.config.SynthClientConfigPlacement;
+import io.spoud.config.SynthClientConfigReplicaLatency;
+import io.spoud.config.SynthClientConfigTransactions;
+import org.apache.commons.net.ntp.NtpV3Impl;
+import org.apache.commons.net.ntp.NtpV3Packet;
+import org.apache.commons.net.ntp.TimeStamp;
 import org.assertj.core.data.Offset;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.regex.Pattern;
@@ -19,7 +43,86 @@ class TimeServiceTest {
     @Test
     @DisplayName("Current time is adjusted by the clock offset")
     void currentTimeMillis() {
-        TimeService timeService = new TimeService(new SimpleMeterRegistry(), new SynthClientConfig() {
+        TimeService timeService = new TimeService(new SimpleMeterRegistry(), config("time.google.com,time.cloudflare.com"));
+
+        timeService.updateClockOffset(); // make sure that this even works without exceptions
+
+        var offset = timeService.getClockOffset();
+        Log.infov("Clock offset: {0} ms", offset);
+
+        // 1ms difference is acceptable since running these commands can also take a miniscule amount of time
+        long currentTimeMillis = timeService.currentTimeMillis();
+        long expected = System.currentTimeMillis() + offset;
+        assertThat(currentTimeMillis).isCloseTo(expected, Offset.offset(1L));
+    }
+
+    @Test
+    @DisplayName("Offset is the median of the servers with the shortest delay")
+    void ensemble() throws Exception {
+        try (var server1 = new FakeNtpServer(250); var server2 = new FakeNtpServer(252); var falseticker = new FakeNtpServer(5_000)) {
+            var timeService = new TimeService(new SimpleMeterRegistry(),
+                    config(server1.address() + ", " + server2.address() + ", " + falseticker.address() + ", localhost:1"));
+            timeService.updateClockOffset();
+            assertThat(timeService.getClockOffset()).isBetween(248L, 254L);
+            assertThat(timeService.getClockErrorNanos()).isLessThan(10_000_000);
+            assertThat(timeService.currentTimeMicros() / 1000).isCloseTo(System.currentTimeMillis() + 250, Offset.offset(10L));
+        }
+    }
+
+    @Test
+    @DisplayName("Time servers can be given with port")
+    void parseServer() {
+        assertThat(NtpQuery.parseServer("time.google.com").getPort()).isEqualTo(123);
+        assertThat(NtpQuery.parseServer("localhost:10123").getHostString()).isEqualTo("localhost");
+        assertThat(NtpQuery.parseServer("localhost:10123").getPort()).isEqualTo(10123);
+        assertThat(NtpQuery.parseServer("[::1]:10123").getHostString()).isEqualTo("::1");
+        assertThat(NtpQuery.parseServer("::1").getPort()).isEqualTo(123);
+    }
+
+    /**
+     * Answers SNTP requests with its clock shifted by a fixed offset.
+     */
+    private static class FakeNtpServer implements AutoCloseable {
+        private final DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        FakeNtpServer(long offsetMillis) throws IOException {
+            Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        var request = new NtpV3Impl();
+                        var packet = new DatagramPacket(new byte[48], 48);
+                        socket.receive(packet);
+                        request.setDatagramPacket(packet);
+                        var received = new TimeStamp(NtpQuery.toNtp(NtpQuery.wallClockNanos() + offsetMillis * 1_000_000));
+                        var response = new NtpV3Impl();
+                        response.setMode(NtpV3Packet.MODE_SERVER);
+                        response.setVersion(NtpV3Packet.VERSION_4);
+                        response.setStratum(1);
+                        response.setOriginateTimeStamp(request.getTransmitTimeStamp());
+                        response.setReceiveTimeStamp(received);
+                        response.setTransmitTime(new TimeStamp(NtpQuery.toNtp(NtpQuery.wallClockNanos() + offsetMillis * 1_000_000)));
+                        var responsePacket = response.getDatagramPacket();
+                        responsePacket.setSocketAddress(packet.getSocketAddress());
+                        socket.send(responsePacket);
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            });
+        }
+
+        String address() {
+            return "127.0.0.1:" + socket.getLocalPort();
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+
+    private static SynthClientConfig config(String timeServers) {
+        return new SynthClientConfig() {
             @Override
             public String topic() {
                 return null;
@@ -42,7 +145,7 @@ class TimeServiceTest {
 
             @Override
             public String rack() {
-                return null;
+                return "rack0";
             }
 
             @Override
@@ -50,9 +153,44 @@ class TimeServiceTest {
                 return 0;
             }
 
+            @Override
+            public ConsumerMode consumerMode() {
+                return ConsumerMode.SUBSCRIBE;
+            }
+
             @Override
             public String timeServers() {
-                return "time.google.com,time.cloudflare.com";
+                return timeServers;
+            }
+
+            @Override
+            public SynthClientConfigClock clock() {
+                return new SynthClientConfigClock() {
+                    @Override
+                    public Duration syncInterval() {
+                        return Duration.ofSeconds(64);
+                    }
+
+                    @Override
+                    public Duration requestTimeout() {
+                        return Duration.ofSeconds(2);
+                    }
+
+                    @Override
+                    public Duration maxRoundTripDelay() {
+                        return Duration.ofMillis(100);
+                    }
+
+                    @Override
+                    public Duration stepThreshold() {
+                        return Duration.ofMillis(128);
+                    }
+
+                    @Override
+                    public double maxSlewRate() {
+                        return 0.0005;
+                    }
+                };
             }
 
             @Override
@@ -70,6 +208,11 @@ class TimeServiceTest {
                 return 1;
             }
 
+            @Override
+            public Duration adminTimeout() {
+                return Duration.ofSeconds(30);
+            }
+
             @Override
             public Duration samplingTimeWindow() {
                 return null;
@@ -104,16 +247,86 @@ class TimeServiceTest {
             public Duration historyRetentionPeriod() {
                 return Duration.ofSeconds(30);
             }
-        });
 
-        timeService.updateClockOffset(); // make sure that this even works without exceptions
+            @Override
+            public SynthClientConfigPauseDetection pauseDetection() {
+                return null;
+            }
 
-        var offset = timeService.getClockOffset();
-        Log.infov("Clock offset: {0} ms", offset);
+            @Override
+            public SynthClientConfigJfr jfr() {
+                return null;
+            }
 
-        // 1ms difference is acceptable since running these commands can also take a miniscule amount of time
-        long currentTimeMillis = timeService.currentTimeMillis();
-        long expected = System.currentTimeMillis() + offset;
-        assertThat(currentTimeMillis).isCloseTo(expected, Offset.offset(1L));
+            @Override
+            public SynthClientConfigLoadTest loadTest() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigCommands commands() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigCodecMatrix codecMatrix() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigAcksComparison acksComparison() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigReplicaLatency replicaLatency() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigPlacement placement() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigLeaderChangeDetection leaderChangeDetection() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigIncidents incidents() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigEcho echo() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigListenerProbes listenerProbes() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigConnectionProbes connectionProbes() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigGroupProbes groupProbes() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigTransactions transactions() {
+                return null;
+            }
+
+            @Override
+            public SynthClientConfigFederation federation() {
+                return null;
+            }
+        };
     }
 }
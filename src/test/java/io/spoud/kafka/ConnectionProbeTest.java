@@ -0,0 +1,51 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConnectionProbeTest {
+
+    private static ConnectionProbe plaintextProbe() {
+        return new ConnectionProbe(Map.of(CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092"),
+                "test", "probes", Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("A refused connection fails in the TCP phase")
+    void refused() throws IOException {
+        int port;
+        try (var server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = server.getLocalPort();
+        }
+        assertThatThrownBy(() -> plaintextProbe().probe("127.0.0.1", port))
+                .isInstanceOfSatisfying(ConnectionProbe.PhaseException.class,
+                        e -> assertThat(e.getPhase()).isEqualTo(ConnectionProbe.Phase.TCP));
+    }
+
+    @Test
+    @DisplayName("A broker that closes the connection fails the ApiVersions phase")
+    void closedAfterConnect() throws IOException {
+        try (var server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread.ofVirtual().start(() -> {
+                try (var socket = server.accept()) {
+                    socket.getInputStream().read();
+                } catch (IOException e) {
+                    // test is over
+                }
+            });
+            assertThatThrownBy(() -> plaintextProbe().probe("127.0.0.1", server.getLocalPort()))
+                    .isInstanceOfSatisfying(ConnectionProbe.PhaseException.class,
+                            e -> assertThat(e.getPhase()).isEqualTo(ConnectionProbe.Phase.API_VERSIONS));
+        }
+    }
+}
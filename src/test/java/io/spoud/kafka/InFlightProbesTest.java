@@ -0,0 +1,43 @@
+package io.spoud.kafka;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightProbesTest {
+    private static final long TIMEOUT = 1_000;
+
+    @Test
+    @DisplayName("A partition at its limit is skipped while the others accept probes")
+    void limitPerPartition() {
+        var inFlight = new InFlightProbes(2, TIMEOUT);
+        var first = new InFlightProbes.Probe();
+        assertThat(inFlight.tryAdd(first, 0, 0, p -> {})).isTrue();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 0, 1, p -> {})).isTrue();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 0, 2, p -> {})).isFalse();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 1, 2, p -> {})).isTrue();
+        assertThat(inFlight.count(0)).isEqualTo(2);
+
+        assertThat(inFlight.remove(first)).isFalse();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 0, 3, p -> {})).isTrue();
+    }
+
+    @Test
+    @DisplayName("Timed out probes are reported once and stall their partition until they complete")
+    void timeout() {
+        var inFlight = new InFlightProbes(100, TIMEOUT);
+        var timedOut = new ArrayList<Integer>();
+        var stuck = new InFlightProbes.Probe();
+        inFlight.tryAdd(stuck, 3, 0, timedOut::add);
+
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 3, TIMEOUT, timedOut::add)).isFalse();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 3, TIMEOUT + 1, timedOut::add)).isFalse();
+        assertThat(timedOut).containsExactly(3);
+
+        assertThat(inFlight.remove(stuck)).isTrue();
+        assertThat(inFlight.tryAdd(new InFlightProbes.Probe(), 3, TIMEOUT + 2, timedOut::add)).isTrue();
+    }
+}
@@ -0,0 +1,76 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageConsumerTest {
+    private static final Map<String, List<PartitionInfo>> TOPICS = Map.of(
+            "synth", partitions("synth", 4),
+            "synth-dc2", partitions("synth-dc2", 3),
+            "other", partitions("other", 2));
+    private static final Pattern PATTERN = Pattern.compile("synth.*");
+
+    @Test
+    @DisplayName("A single consumer takes all partitions of the matching topics in order")
+    void selectAll() {
+        assertThat(MessageConsumer.selectPartitions(TOPICS, PATTERN, 1, 0)).containsExactly(
+                tp("synth", 0), tp("synth", 1), tp("synth", 2), tp("synth", 3),
+                tp("synth-dc2", 0), tp("synth-dc2", 1), tp("synth-dc2", 2));
+    }
+
+    @Test
+    @DisplayName("Split consumers take the partitions round-robin, each partition exactly once")
+    void selectSplit() {
+        assertThat(MessageConsumer.selectPartitions(TOPICS, PATTERN, 3, 0))
+                .containsExactly(tp("synth", 0), tp("synth", 3), tp("synth-dc2", 2));
+        assertThat(MessageConsumer.selectPartitions(TOPICS, PATTERN, 3, 1))
+                .containsExactly(tp("synth", 1), tp("synth-dc2", 0));
+        assertThat(MessageConsumer.selectPartitions(TOPICS, PATTERN, 3, 2))
+                .containsExactly(tp("synth", 2), tp("synth-dc2", 1));
+        // more consumers than partitions leaves some of them idle
+        assertThat(MessageConsumer.selectPartitions(TOPICS, PATTERN, 8, 7)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Without matching partitions nothing is selected and the assignment is retried sooner")
+    void selectNone() {
+        // the topic is created asynchronously and may not exist yet when the consumers start
+        var selected = MessageConsumer.selectPartitions(Map.of("other", partitions("other", 2)), PATTERN, 1, 0);
+
+        assertThat(selected).isEmpty();
+        assertThat(MessageConsumer.nextAssignmentUpdate(Set.copyOf(selected)))
+                .isEqualTo(MessageConsumer.ASSIGNMENT_RETRY_INTERVAL)
+                .isLessThan(MessageConsumer.nextAssignmentUpdate(Set.of(tp("synth", 0))));
+    }
+
+    @Test
+    @DisplayName("Only the partitions that were not assigned before are sought to their end")
+    void newlyAssigned() {
+        var partitions = List.of(tp("synth", 0), tp("synth", 1), tp("synth", 2));
+
+        assertThat(MessageConsumer.newlyAssigned(partitions, Set.of())).isEqualTo(partitions);
+        assertThat(MessageConsumer.newlyAssigned(partitions, Set.of(tp("synth", 0), tp("synth", 1), tp("other", 0))))
+                .containsExactly(tp("synth", 2));
+        assertThat(MessageConsumer.newlyAssigned(partitions, Set.copyOf(partitions))).isEmpty();
+    }
+
+    private static List<PartitionInfo> partitions(String topic, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(p -> new PartitionInfo(topic, p, null, null, null))
+                .toList();
+    }
+
+    private static TopicPartition tp(String topic, int partition) {
+        return new TopicPartition(topic, partition);
+    }
+}
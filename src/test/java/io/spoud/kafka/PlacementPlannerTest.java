@@ -0,0 +1,35 @@
+package io.spoud.kafka;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlacementPlannerTest {
+
+    @Test
+    @DisplayName("Rotating the slots covers every leader/follower pair")
+    void coversAllPairs() {
+        var brokers = List.of(1, 2, 3, 4, 5, 6);
+        var pairs = new HashSet<List<Integer>>();
+        // with replication factor 3, each slot covers 2 followers, so 3 slots are needed for the 5 other brokers
+        for (var leader : brokers) {
+            for (int slot = 0; slot < 3; slot++) {
+                var replicas = PlacementPlanner.plannedReplicas(leader, brokers, 3, slot);
+                assertThat(replicas).hasSize(3).doesNotHaveDuplicates().startsWith(leader);
+                replicas.stream().skip(1).forEach(follower -> pairs.add(List.of(leader, follower)));
+            }
+        }
+        assertThat(pairs).hasSize(brokers.size() * (brokers.size() - 1));
+    }
+
+    @Test
+    @DisplayName("Replication factor larger than the cluster is capped")
+    void smallCluster() {
+        assertThat(PlacementPlanner.plannedReplicas(2, List.of(1, 2), 3, 7)).containsExactly(2, 1);
+        assertThat(PlacementPlanner.plannedReplicas(1, List.of(1), 3, 0)).containsExactly(1);
+    }
+}
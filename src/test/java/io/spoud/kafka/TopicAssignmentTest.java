@@ -0,0 +1,72 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopicAssignmentTest {
+    private static final String TOPIC = "synth";
+
+    private final MockConsumer<Long, byte[]> consumer = new MockConsumer<>("latest");
+
+    @Test
+    @DisplayName("All partitions of the topic are assigned and start at their end")
+    void assignAll() {
+        consumer.updatePartitions(TOPIC, partitions(2));
+        consumer.updateEndOffsets(Map.of(tp(0), 10L, tp(1), 20L));
+
+        assertThat(new TopicAssignment(consumer, TOPIC, "test consumer").update()).isTrue();
+        assertThat(consumer.assignment()).containsExactlyInAnyOrder(tp(0), tp(1));
+        assertThat(consumer.position(tp(0))).isEqualTo(10L);
+        assertThat(consumer.position(tp(1))).isEqualTo(20L);
+    }
+
+    @Test
+    @DisplayName("Nothing is assigned while the topic does not exist, and it is assigned on the next try")
+    void missingTopic() {
+        var assignment = new TopicAssignment(consumer, TOPIC, "test consumer");
+
+        assertThat(assignment.update()).isFalse();
+        assertThat(consumer.assignment()).isEmpty();
+
+        consumer.updatePartitions(TOPIC, partitions(1));
+        consumer.updateEndOffsets(Map.of(tp(0), 0L));
+        // the retry is not due yet
+        assertThat(assignment.update()).isFalse();
+        assertThat(new TopicAssignment(consumer, TOPIC, "test consumer").update()).isTrue();
+    }
+
+    @Test
+    @DisplayName("A failure to get the partitions keeps the current assignment")
+    void failure() {
+        var failing = new MockConsumer<Long, byte[]>("latest") {
+            @Override
+            public synchronized List<PartitionInfo> partitionsFor(String topic) {
+                throw new TimeoutException("Timeout expired while fetching topic metadata");
+            }
+        };
+        failing.assign(List.of(tp(0)));
+
+        assertThat(new TopicAssignment(failing, TOPIC, "test consumer").update()).isTrue();
+        assertThat(failing.assignment()).containsExactly(tp(0));
+    }
+
+    private static List<PartitionInfo> partitions(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(p -> new PartitionInfo(TOPIC, p, null, null, null))
+                .toList();
+    }
+
+    private static TopicPartition tp(int partition) {
+        return new TopicPartition(TOPIC, partition);
+    }
+}
@@ -0,0 +1,47 @@
+package io.spoud.kafka;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TopologyTest {
+    private static final Node BROKER_1 = new Node(1, "broker1", 9092, "rack1");
+    private static final Node BROKER_2 = new Node(2, "broker2", 9092, "rack2");
+    private static final Node BROKER_3 = new Node(3, "broker3", 9092, null);
+    private static final List<Node> NODES = List.of(BROKER_1, BROKER_2, BROKER_3);
+
+    private static TopicDescription topic(TopicPartitionInfo... partitions) {
+        return new TopicDescription("probes", false, List.of(partitions));
+    }
+
+    private static TopicPartitionInfo partition(int partition, Node leader, Node... replicas) {
+        return new TopicPartitionInfo(partition, leader, List.of(replicas), List.of(replicas));
+    }
+
+    @Test
+    @DisplayName("Only changed partitions show up in the diff")
+    void diffContainsOnlyChanges() {
+        var before = Topology.of(topic(
+                partition(0, BROKER_1, BROKER_1, BROKER_2),
+                partition(1, BROKER_2, BROKER_2, BROKER_3)), NODES);
+        var after = Topology.of(topic(
+                partition(0, BROKER_1, BROKER_1, BROKER_3),
+                partition(1, BROKER_3, BROKER_2, BROKER_3),
+                partition(2, BROKER_3, BROKER_3, BROKER_1)), NODES);
+
+        assertThat(before.diff(before).isEmpty()).isTrue();
+        var diff = after.diff(before);
+        assertThat(diff.leaderChanged()).containsExactlyInAnyOrder(1, 2);
+        assertThat(diff.replicasChanged()).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(diff.brokersChanged()).isEmpty();
+        assertThat(diff.partitionCountChange()).isEqualTo(1);
+        assertThat(after.replicasByPartition().get(1)).containsExactly(3, 2);
+        assertThat(after.rackByBroker()).containsEntry(3, "unknown");
+    }
+}